@@ -233,7 +233,7 @@ public class BlockingIOAdapter {
      */
     public static class NestedEnd implements ParserToken {
 
-        private NestedEnd(){}
+        NestedEnd(){}
 
         /**
          * {@inheritDoc}
@@ -252,7 +252,7 @@ public class BlockingIOAdapter {
 
         final Map<String, List<String>> headers;
 
-        private NestedStart(final Map<String, List<String>> headers) {
+        NestedStart(final Map<String, List<String>> headers) {
             this.headers = headers;
         }
 
@@ -283,7 +283,7 @@ public class BlockingIOAdapter {
         final Map<String, List<String>> headers;
         final StreamStorage partBodyStreamStorage;
 
-        private Part(final Map<String, List<String>> headers, final StreamStorage partBodyStreamStorage) {
+        Part(final Map<String, List<String>> headers, final StreamStorage partBodyStreamStorage) {
             this.headers = headers;
             this.partBodyStreamStorage = partBodyStreamStorage;
         }
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.FileStreamStorage;
+import org.synchronoss.cloud.nio.stream.storage.NameAwarePurgableFileInputStream;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * <p> A {@code FileStreamStorage} writing directly to a file through a {@code FileChannel}, which is the only handle open on the file while writing.
+ *     In addition to the {@code OutputStream} methods, the storage can be filled straight from a {@code ReadableByteChannel}
+ *     via {@link #transferFrom(ReadableByteChannel, long)}, which uses {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.
+ *     Depending on the source channel and on the operating system, the data is then copied by the kernel without going through the JVM heap.
+ *
+ * <p> The {@link NioMultipartParser} uses the transfer for the body of the parts having a trusted {@code Content-Length}
+ *     when the data is read via {@link NioMultipartParser#readFrom(ReadableByteChannel, ByteBuffer)}.
+ *
+ * @author Silvano Riz.
+ */
+public class ChannelFileStreamStorage extends FileStreamStorage implements Movable, Transferable {
+
+    final File file;
+    volatile FileChannel fileChannel;
+    volatile boolean closed = false;
+    volatile boolean disposed = false;
+    volatile boolean deleteFilesOnClose = false;
+    volatile boolean deleteFilesOnDispose = false;
+    volatile TempFileReaper tempFileReaper;
+    volatile boolean moved = false;
+    volatile long expectedLength = 0;
+
+    /**
+     * <p> Constructor. The file is created (or truncated if it exists) when the first data is written or when the storage is closed.
+     *
+     * @param file The file where the data is stored.
+     */
+    public ChannelFileStreamStorage(final File file) {
+        // With a positive threshold the FileStreamStorage does not open the file: the channel is the only handle
+        super(file, 1, false);
+        this.file = file;
+    }
+
+    /**
+     * <p> Constructor for a subclass providing a file that is already open. The data is written through the given channel.
+     *
+     * @param file The file where the data is stored.
+     * @param fileChannel The open channel of the file, positioned where the data must be written.
+     */
+    protected ChannelFileStreamStorage(final File file, final FileChannel fileChannel) {
+        super(file, 1, false);
+        this.file = file;
+        this.fileChannel = fileChannel;
+    }
+
+    /**
+     * <p> Deletes the file when the {@code InputStream} is closed.
+     *
+     * @return the storage itself.
+     */
+    @Override
+    public ChannelFileStreamStorage deleteFilesOnClose() {
+        this.deleteFilesOnClose = true;
+        return this;
+    }
+
+    /**
+     * <p> Deletes the file when the storage is disposed.
+     *
+     * @return the storage itself.
+     */
+    @Override
+    public ChannelFileStreamStorage deleteFilesOnDispose() {
+        this.deleteFilesOnDispose = true;
+        return this;
+    }
+
+    /**
+     * <p> Deletes the file via a {@code TempFileReaper} when the {@code InputStream} is closed and when the storage is disposed.
+     *     Use it instead of {@link #deleteFilesOnClose()} and {@link #deleteFilesOnDispose()} to delete the file in background.
+     *
+     * @param tempFileReaper The {@code TempFileReaper} deleting the file
+     * @return the storage itself.
+     */
+    public ChannelFileStreamStorage deleteFilesWith(final TempFileReaper tempFileReaper) {
+        this.tempFileReaper = tempFileReaper;
+        return this;
+    }
+
+    /**
+     * <p> Preallocates the file for the expected amount of data, for example the {@code Content-Length} declared by the part, so that the
+     *     file system can allocate it in one go instead of extending it at every write. The file is extended when it is opened and
+     *     trimmed to the data actually written when the storage is closed. It must be called before writing.
+     *     The file is not preallocated if its folder does not have that much usable space or if the file system refuses the length.
+     *
+     * @param expectedLength The expected number of bytes. If zero or negative the file is not preallocated.
+     * @return the storage itself.
+     */
+    public ChannelFileStreamStorage preallocate(final long expectedLength) {
+        if (fileChannel != null) {
+            throw new IllegalStateException("Cannot preallocate the file, the storage has been already written.");
+        }
+        this.expectedLength = expectedLength;
+        return this;
+    }
+
+    /**
+     * <p> Transfers up to {@code count} bytes from the channel to the end of the file.
+     *     Fewer bytes are transferred if the channel has fewer bytes available (for example a non blocking channel) or if it reached the end of the stream.
+     *
+     * @param source The channel to read from
+     * @param count The max number of bytes to transfer
+     * @return The number of bytes transferred, possibly zero.
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferFrom(final ReadableByteChannel source, final long count) throws IOException {
+        final FileChannel fileChannel = getFileChannel();
+        final long position = fileChannel.position();
+        final long transferred = fileChannel.transferFrom(source, position, count);
+        fileChannel.position(position + transferred);
+        return transferred;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final FileChannel fileChannel = getFileChannel();
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, len);
+        while (byteBuffer.hasRemaining()) {
+            fileChannel.write(byteBuffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                // Creates the file if no data has been written
+                getFileChannel();
+            } finally {
+                closed = true;
+                closeFileChannel();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The file is moved atomically if the destination is on the same file system.
+     */
+    @Override
+    public void moveTo(final Path destination) throws IOException {
+        assertIsMovable();
+        FileMover.move(file, destination);
+        moved = true;
+    }
+
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        assertIsReadable();
+        return ChannelTransfers.transferFile(file, target);
+    }
+
+    @Override
+    public ReadableByteChannel getReadableChannel() throws IOException {
+        assertIsReadable();
+        return ChannelTransfers.openFile(file);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (disposed) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        if (!closed) {
+            throw new IllegalStateException("The storage is still in write mode. Call the close() method when all the data has been written before asking for the InputStream.");
+        }
+        if (moved) {
+            throw new IllegalStateException("Cannot read the data, it has been moved.");
+        }
+        final TempFileReaper tempFileReaper = this.tempFileReaper;
+        final InputStream inputStream;
+        try {
+            inputStream = new NameAwarePurgableFileInputStream(file, deleteFilesOnClose && tempFileReaper == null);
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("Unable to create the inputStream.", e);
+        }
+        if (tempFileReaper == null) {
+            return inputStream;
+        }
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                tempFileReaper.delete(file);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The data is always stored on file.
+     */
+    @Override
+    public boolean isInMemory() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> Closes the file, if it is still open, and deletes it if requested.
+     */
+    @Override
+    public boolean dispose() {
+        disposed = true;
+        closed = true;
+        try {
+            closeFileChannel();
+        } catch (Exception e) {
+            // Do nothing
+        }
+        final TempFileReaper tempFileReaper = this.tempFileReaper;
+        if (tempFileReaper != null && file.exists()) {
+            tempFileReaper.delete(file);
+            return true;
+        }
+        return !file.exists() || (deleteFilesOnDispose && file.delete());
+    }
+
+    void assertIsReadable() {
+        if (disposed) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (moved) {
+            throw new IllegalStateException("Cannot read the data, it has been moved.");
+        }
+    }
+
+    void assertIsMovable() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot move the data, the storage is not closed.");
+        }
+        if (moved) {
+            throw new IllegalStateException("Cannot move the data, it has been already moved.");
+        }
+    }
+
+    void closeFileChannel() throws IOException {
+        final FileChannel fileChannel = this.fileChannel;
+        if (fileChannel != null && fileChannel.isOpen()) {
+            try {
+                if (expectedLength > 0) {
+                    fileChannel.truncate(fileChannel.position());
+                }
+            } finally {
+                fileChannel.close();
+            }
+        }
+    }
+
+    FileChannel getFileChannel() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+        if (fileChannel == null) {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                // Truncates an existing file
+                randomAccessFile.setLength(0);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+            if (!preallocate(randomAccessFile, file, expectedLength)) {
+                expectedLength = 0;
+            }
+            fileChannel = randomAccessFile.getChannel();
+        }
+        return fileChannel;
+    }
+
+    /*
+     * Extends the file to the expected length if its folder has that much usable space. The expected length is usually declared by the client,
+     * so if the file system refuses it (for example the file would be too large) the file is simply not preallocated.
+     * Returns true if the file has been preallocated.
+     */
+    static boolean preallocate(final RandomAccessFile randomAccessFile, final File file, final long expectedLength) {
+        final File folder = file.getAbsoluteFile().getParentFile();
+        if (expectedLength <= 0 || folder == null || expectedLength > folder.getUsableSpace()) {
+            return false;
+        }
+        try {
+            randomAccessFile.setLength(expectedLength);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> Helpers reading the part body data through channels. See {@link Transferable}.
+ *
+ * @author Silvano Riz.
+ */
+class ChannelTransfers {
+
+    private ChannelTransfers() {}
+
+    /*
+     * Transfers the whole file to the target.
+     */
+    static long transferFile(final File file, final WritableByteChannel target) throws IOException {
+        final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return transfer(fileChannel, 0, fileChannel.size(), target);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /*
+     * Transfers a range of the file to the target, with positional transfers that do not change the position of the source.
+     */
+    static long transfer(final FileChannel source, final long position, final long count, final WritableByteChannel target) throws IOException {
+        return transfer(source, position, count, target, null);
+    }
+
+    /*
+     * As above, for a source that can be given to someone else when the released flag is set (e.g. a pooled file).
+     * The flag is checked around every chunk, so no data of the next owner is transferred without failing.
+     */
+    static long transfer(final FileChannel source, final long position, final long count, final WritableByteChannel target, final AtomicBoolean released) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            assertNotReleased(released);
+            final long chunk = source.transferTo(position + transferred, count - transferred, target);
+            assertNotReleased(released);
+            if (chunk <= 0 && position + transferred >= source.size()) {
+                throw new IOException("Unexpected end of file, transferred " + transferred + " bytes of " + count);
+            }
+            transferred += chunk;
+        }
+        return transferred;
+    }
+
+    /*
+     * Writes the buffers to the target.
+     */
+    static long write(final List<ByteBuffer> buffers, final WritableByteChannel target) throws IOException {
+        return write(buffers, target, null);
+    }
+
+    /*
+     * As above, for buffers that can be given to someone else when the released flag is set (e.g. pooled slabs).
+     */
+    static long write(final List<ByteBuffer> buffers, final WritableByteChannel target, final AtomicBoolean released) throws IOException {
+        long written = 0;
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                assertNotReleased(released);
+                written += target.write(buffer);
+            }
+        }
+        assertNotReleased(released);
+        return written;
+    }
+
+    static ReadableByteChannel openFile(final File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    static void assertNotReleased(final AtomicBoolean released) throws IOException {
+        if (released != null && released.get()) {
+            throw new IOException("The storage has been disposed");
+        }
+    }
+
+    /*
+     * Reads a range of a file channel shared with others, with positional reads. The source is not closed.
+     * If a released flag is given, the reads fail once it is set: the source may then belong to someone else.
+     */
+    static class RangeChannel implements ReadableByteChannel {
+
+        final FileChannel source;
+        final long end;
+        final AtomicBoolean released;
+        long position;
+        volatile boolean open = true;
+
+        RangeChannel(final FileChannel source, final long position, final long count) {
+            this(source, position, count, null);
+        }
+
+        RangeChannel(final FileChannel source, final long position, final long count, final AtomicBoolean released) {
+            this.source = source;
+            this.position = position;
+            this.end = position + count;
+            this.released = released;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            assertNotReleased(released);
+            if (position >= end) {
+                return -1;
+            }
+            final int length = (int) Math.min(dst.remaining(), end - position);
+            final ByteBuffer window = dst.duplicate();
+            window.limit(window.position() + length);
+            final int read = source.read(window, position);
+            // Released during the read: the data may be the one of the next owner
+            assertNotReleased(released);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at position " + position);
+            }
+            dst.position(dst.position() + read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    /*
+     * Reads a list of read-only buffers.
+     * If a released flag is given, the reads fail once it is set: the buffers may then belong to someone else.
+     */
+    static class BuffersChannel implements ReadableByteChannel {
+
+        final List<ByteBuffer> buffers;
+        final AtomicBoolean released;
+        int current = 0;
+        volatile boolean open = true;
+
+        BuffersChannel(final List<ByteBuffer> buffers) {
+            this(buffers, null);
+        }
+
+        BuffersChannel(final List<ByteBuffer> buffers, final AtomicBoolean released) {
+            this.buffers = buffers;
+            this.released = released;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            assertNotReleased(released);
+            while (current < buffers.size() && !buffers.get(current).hasRemaining()) {
+                current++;
+            }
+            if (current == buffers.size()) {
+                return -1;
+            }
+            final ByteBuffer buffer = buffers.get(current);
+            final int length = Math.min(dst.remaining(), buffer.remaining());
+            final ByteBuffer chunk = buffer.duplicate();
+            chunk.limit(chunk.position() + length);
+            final int dstPosition = dst.position();
+            dst.put(chunk);
+            // Released during the copy: the data may be the one of the next owner
+            if (released != null && released.get()) {
+                dst.position(dstPosition);
+                throw new IOException("The storage has been disposed");
+            }
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.io.CompressionPool;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p> A {@code PartBodyStreamStorageFactory} decorator compressing the part bodies with a {@link CompressingStreamStorage},
+ *     to save disk bandwidth and temporary space for the text heavy uploads (CSV, JSON, logs...).
+ *
+ * <p> The parts declaring a {@code Content-Type} that is already compressed (images, audio, video, archives and pdf) or a
+ *     {@code Content-Encoding} are not decorated. The other parts are sniffed by the {@code CompressingStreamStorage}.
+ *
+ * @author Silvano Riz.
+ */
+public class CompressingPartBodyStreamStorageFactory implements PartBodyStreamStorageFactory {
+
+    static final String CONTENT_ENCODING = "Content-Encoding";
+
+    static final Set<String> COMPRESSED_CONTENT_TYPES = new HashSet<String>(Arrays.asList(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz", "application/zstd",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/vnd.rar", "application/java-archive", "application/pdf"));
+
+    final PartBodyStreamStorageFactory delegate;
+    final CompressionPool compressionPool;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param delegate The {@code PartBodyStreamStorageFactory} providing the {@code StreamStorage}s where the compressed data is stored.
+     * @param compressionPool The pool providing the {@code Deflater}s and {@code Inflater}s.
+     */
+    public CompressingPartBodyStreamStorageFactory(final PartBodyStreamStorageFactory delegate, final CompressionPool compressionPool) {
+        this.delegate = delegate;
+        this.compressionPool = compressionPool;
+    }
+
+    /**
+     * <p> Constructor that uses a {@code CompressionPool} with the default configuration.
+     *
+     * @param delegate The {@code PartBodyStreamStorageFactory} providing the {@code StreamStorage}s where the compressed data is stored.
+     */
+    public CompressingPartBodyStreamStorageFactory(final PartBodyStreamStorageFactory delegate) {
+        this(delegate, new CompressionPool());
+    }
+
+    @Override
+    public StreamStorage newStreamStorageForPartBody(final Map<String, List<String>> partHeaders, final int partIndex) {
+        final StreamStorage streamStorage = delegate.newStreamStorageForPartBody(partHeaders, partIndex);
+        if (isCompressed(partHeaders)) {
+            return streamStorage;
+        }
+        return new CompressingStreamStorage(streamStorage, compressionPool);
+    }
+
+    static boolean isCompressed(final Map<String, List<String>> partHeaders) {
+        final String contentEncoding = MultipartUtils.getHeader(CONTENT_ENCODING, partHeaders);
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return true;
+        }
+        final String contentType = MultipartUtils.getContentType(partHeaders);
+        if (contentType == null) {
+            return false;
+        }
+        final int parametersStart = contentType.indexOf(';');
+        final String mimeType = (parametersStart < 0 ? contentType : contentType.substring(0, parametersStart)).trim().toLowerCase(Locale.ENGLISH);
+        if (mimeType.startsWith("image/")) {
+            // svg and bmp are not compressed
+            return !mimeType.equals("image/svg+xml") && !mimeType.equals("image/bmp");
+        }
+        return mimeType.startsWith("audio/") || mimeType.startsWith("video/") || COMPRESSED_CONTENT_TYPES.contains(mimeType);
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.io.CompressionPool;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p> A {@code StreamStorage} decorator compressing the data before writing it to the decorated {@code StreamStorage}.
+ *     The {@code InputStream} returned by {@link #getInputStream()} decompresses the data transparently.
+ *
+ * <p> The first bytes of the data are sniffed: if they match the signature of a format that is already compressed
+ *     (jpeg, png, gif, webp, zip, gzip, bzip2, xz, 7z, rar, zstd, pdf or mp4) the data is stored as it is.
+ *     The {@code Deflater}s and {@code Inflater}s are taken from a {@link CompressionPool}.
+ *
+ * @author Silvano Riz.
+ */
+public class CompressingStreamStorage extends StreamStorage {
+
+    // Number of bytes sniffed to recognize the compressed formats
+    static final int SNIFF_SIZE = 12;
+
+    static final int BUFFER_SIZE = 4096;
+
+    final StreamStorage delegate;
+    final CompressionPool compressionPool;
+    final byte[] sniffed = new byte[SNIFF_SIZE];
+    int sniffedLength = 0;
+    boolean decided = false;
+    volatile boolean compressed = false;
+    volatile boolean closed = false;
+    Deflater deflater;
+    byte[] buffer;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param delegate The {@code StreamStorage} where the compressed data is stored.
+     * @param compressionPool The pool providing the {@code Deflater}s and {@code Inflater}s.
+     */
+    public CompressingStreamStorage(final StreamStorage delegate, final CompressionPool compressionPool) {
+        this.delegate = delegate;
+        this.compressionPool = compressionPool;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        assertIsWritable();
+        if (decided) {
+            store(b, off, len);
+            return;
+        }
+        final int length = Math.min(len, SNIFF_SIZE - sniffedLength);
+        System.arraycopy(b, off, sniffed, sniffedLength, length);
+        sniffedLength += length;
+        if (sniffedLength == SNIFF_SIZE) {
+            decide();
+            store(b, off + length, len - length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // The deflater is not flushed, it would hurt the compression ratio
+        assertIsWritable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                if (!decided) {
+                    decide();
+                }
+                if (compressed) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflate();
+                    }
+                }
+            } finally {
+                releaseDeflater();
+                delegate.close();
+            }
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        final InputStream inputStream = delegate.getInputStream();
+        if (!compressed) {
+            return inputStream;
+        }
+        return new InflaterInputStream(inputStream, compressionPool.acquireInflater(), BUFFER_SIZE) {
+
+            boolean released = false;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        compressionPool.releaseInflater(inf);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean dispose() {
+        if (!closed) {
+            closed = true;
+            releaseDeflater();
+        }
+        return delegate.dispose();
+    }
+
+    /**
+     * <p> Returns true if the data is stored compressed, false if it is stored as it is because its format is already compressed.
+     *     The result is meaningful only when the storage is closed.
+     *
+     * @return true if the data is stored compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    void decide() throws IOException {
+        decided = true;
+        compressed = !isCompressedFormat(sniffed, sniffedLength);
+        if (compressed) {
+            deflater = compressionPool.acquireDeflater();
+            buffer = new byte[BUFFER_SIZE];
+        }
+        store(sniffed, 0, sniffedLength);
+    }
+
+    void store(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (!compressed) {
+            delegate.write(b, off, len);
+            return;
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    void deflate() throws IOException {
+        final int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            delegate.write(buffer, 0, length);
+        }
+    }
+
+    void releaseDeflater() {
+        if (deflater != null) {
+            compressionPool.releaseDeflater(deflater);
+            deflater = null;
+        }
+    }
+
+    void assertIsWritable() {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+    }
+
+    static boolean isCompressedFormat(final byte[] b, final int length) {
+        return startsWith(b, length, 0, 0xFF, 0xD8, 0xFF) // jpeg
+                || startsWith(b, length, 0, 0x89, 'P', 'N', 'G') // png
+                || startsWith(b, length, 0, 'G', 'I', 'F', '8') // gif
+                || (startsWith(b, length, 0, 'R', 'I', 'F', 'F') && startsWith(b, length, 8, 'W', 'E', 'B', 'P')) // webp
+                || startsWith(b, length, 0, 'P', 'K', 0x03, 0x04) // zip, jar, office documents
+                || startsWith(b, length, 0, 0x1F, 0x8B) // gzip
+                || startsWith(b, length, 0, 'B', 'Z', 'h') // bzip2
+                || startsWith(b, length, 0, 0xFD, '7', 'z', 'X', 'Z', 0x00) // xz
+                || startsWith(b, length, 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C) // 7z
+                || startsWith(b, length, 0, 'R', 'a', 'r', '!') // rar
+                || startsWith(b, length, 0, 0x28, 0xB5, 0x2F, 0xFD) // zstd
+                || startsWith(b, length, 0, '%', 'P', 'D', 'F') // pdf
+                || startsWith(b, length, 4, 'f', 't', 'y', 'p'); // mp4, mov
+    }
+
+    static boolean startsWith(final byte[] b, final int length, final int offset, final int... signature) {
+        if (offset + signature.length > length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((b[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
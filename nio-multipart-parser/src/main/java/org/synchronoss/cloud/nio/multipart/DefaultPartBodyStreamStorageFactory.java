@@ -16,15 +16,11 @@
 
 package org.synchronoss.cloud.nio.multipart;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.synchronoss.cloud.nio.stream.storage.FileStreamStorage;
 import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
 
 import java.io.File;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 /**
  * <p> Default implementation of the {@code PartBodyStreamStorageFactory}.
@@ -33,16 +29,56 @@ import java.util.UUID;
  */
 public class DefaultPartBodyStreamStorageFactory implements PartBodyStreamStorageFactory {
 
-    private static final Logger log = LoggerFactory.getLogger(DefaultPartBodyStreamStorageFactory.class);
-
     /**
      * Default max threshold. 10Kb
      */
     public static final int DEFAULT_MAX_THRESHOLD = 10240;//10kb
 
     static final String DEFAULT_TEMP_FOLDER = System.getProperty("java.io.tmpdir") + "/nio-file-upload";
-    final File tempFolder;
+    final TempFileManager tempFileManager;
     final int maxSizeThreshold;
+    final MemoryBudget memoryBudget;
+    final TempFileReaper tempFileReaper;
+
+    /**
+     * <p> Constructor allowing to spread the temporary files with a {@code TempFileManager}, to share a {@code MemoryBudget} and to delete
+     *     the temporary files in background with a {@code TempFileReaper}.
+     *
+     * @param tempFileManager  The {@code TempFileManager} providing the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     * @param memoryBudget     The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     * @param tempFileReaper   The {@code TempFileReaper} deleting the temporary files or null to delete them synchronously.
+     */
+    public DefaultPartBodyStreamStorageFactory(final TempFileManager tempFileManager, final int maxSizeThreshold, final MemoryBudget memoryBudget, final TempFileReaper tempFileReaper) {
+        this.maxSizeThreshold = maxSizeThreshold > 0 ? maxSizeThreshold : 0;
+        this.memoryBudget = memoryBudget;
+        this.tempFileManager = tempFileManager;
+        this.tempFileReaper = tempFileReaper;
+    }
+
+    /**
+     * <p> Constructor allowing to spread the temporary files with a {@code TempFileManager} and to share a {@code MemoryBudget}.
+     *     The memory for a part body is kept only if it can be reserved on the budget, otherwise the part body is stored directly to file.
+     *
+     * @param tempFileManager  The {@code TempFileManager} providing the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     * @param memoryBudget     The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     */
+    public DefaultPartBodyStreamStorageFactory(final TempFileManager tempFileManager, final int maxSizeThreshold, final MemoryBudget memoryBudget) {
+        this(tempFileManager, maxSizeThreshold, memoryBudget, null);
+    }
+
+    /**
+     * <p> Constructor allowing to share a {@code MemoryBudget}. The memory for a part body is kept only if it can be reserved on the budget,
+     *     otherwise the part body is stored directly to file.
+     *
+     * @param tempFolderPath   The path where to store the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     * @param memoryBudget     The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     */
+    public DefaultPartBodyStreamStorageFactory(final String tempFolderPath, final int maxSizeThreshold, final MemoryBudget memoryBudget) {
+        this(new TempFileManager(tempFolderPath), maxSizeThreshold, memoryBudget);
+    }
 
     /**
      * <p> Constructor.
@@ -51,14 +87,7 @@ public class DefaultPartBodyStreamStorageFactory implements PartBodyStreamStorag
      * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
      */
     public DefaultPartBodyStreamStorageFactory(final String tempFolderPath, final int maxSizeThreshold) {
-        this.maxSizeThreshold = maxSizeThreshold > 0 ? maxSizeThreshold : 0;
-        this.tempFolder = new File(tempFolderPath);
-        if (!tempFolder.exists()) {
-            if (!tempFolder.mkdirs()) {
-                throw new IllegalStateException("Unable to create the temporary folder: " + tempFolderPath);
-            }
-        }
-        if (log.isDebugEnabled()) log.debug("Temporary folder: " + tempFolder.getAbsolutePath());
+        this(tempFolderPath, maxSizeThreshold, null);
     }
 
     /**
@@ -88,10 +117,45 @@ public class DefaultPartBodyStreamStorageFactory implements PartBodyStreamStorag
 
     /**
      * {@inheritDoc}
+     *
+     * <p> The parts declaring a {@code Content-Length} bigger than the threshold are stored in a {@link ChannelFileStreamStorage},
+     *     so that their body can be transferred directly from a channel (see {@link NioMultipartParser#readFrom(java.nio.channels.ReadableByteChannel, java.nio.ByteBuffer)}).
+     *     The same happens if a {@code MemoryBudget} is used and it is exhausted.
+     *     If a {@code TempFileReaper} is used, the temporary files are deleted in background.
+     *     The {@code StreamStorage}s returned are {@link Movable}.
+     *
+     * <p> The {@code Content-Length}, if declared, is also used to size the storage: the file is preallocated and an in memory part body
+     *     is kept in an array of exactly that size.
      */
     @Override
     public StreamStorage newStreamStorageForPartBody(Map<String, List<String>> partHeaders, int partIndex) {
-        return FileStreamStorage.deferred(getTempFile(partIndex), getThreshold(partHeaders)).deleteFilesOnClose().deleteFilesOnDispose();
+        final long contentLength = MultipartUtils.getContentLength(partHeaders);
+        if (contentLength > maxSizeThreshold) {
+            return newChannelFileStreamStorage(partIndex, contentLength);
+        }
+        final int threshold = getThreshold(partHeaders);
+        if (memoryBudget != null && threshold > 0) {
+            if (memoryBudget.tryReserve(threshold)) {
+                return newTrackedFileStreamStorage(partIndex, threshold, contentLength, memoryBudget);
+            }
+            return newChannelFileStreamStorage(partIndex, contentLength);
+        }
+        return newTrackedFileStreamStorage(partIndex, threshold, contentLength, null);
+    }
+
+    StreamStorage newChannelFileStreamStorage(final int partIndex, final long contentLength) {
+        final ChannelFileStreamStorage channelFileStreamStorage = new ChannelFileStreamStorage(getTempFile(partIndex)).preallocate(contentLength);
+        if (tempFileReaper != null) {
+            return channelFileStreamStorage.deleteFilesWith(tempFileReaper);
+        }
+        return channelFileStreamStorage.deleteFilesOnClose().deleteFilesOnDispose();
+    }
+
+    StreamStorage newTrackedFileStreamStorage(final int partIndex, final int threshold, final long contentLength, final MemoryBudget memoryBudget) {
+        if (tempFileReaper != null) {
+            return new TrackedFileStreamStorage(getTempFile(partIndex), threshold, contentLength, memoryBudget, tempFileReaper);
+        }
+        return new TrackedFileStreamStorage(getTempFile(partIndex), threshold, contentLength, memoryBudget, null).deleteFilesOnClose().deleteFilesOnDispose();
     }
 
     protected int getThreshold(final Map<String, List<String>> partHeaders) {
@@ -100,8 +164,7 @@ public class DefaultPartBodyStreamStorageFactory implements PartBodyStreamStorag
     }
 
     protected File getTempFile(final int partIndex) {
-        final String tempFileName = String.format("nio-body-%d-%s.tmp", partIndex, UUID.randomUUID().toString());
-        return new File(tempFolder, tempFileName);
+        return tempFileManager.newTempFile(partIndex);
     }
 
 
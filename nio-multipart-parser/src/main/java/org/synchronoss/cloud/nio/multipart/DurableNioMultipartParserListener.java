@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * <p> A {@code NioMultipartParserListener} decorator making the spilled part bodies durable before notifying them.
+ *     When a part body has been stored to file, its {@code onPartFinished} is deferred until the file has been synced to disk by a
+ *     {@link GroupCommitter}. The notifications keep their order: the ones following a deferred {@code onPartFinished}
+ *     (including {@code onAllPartsFinished}) wait for it, so they can be delivered by the committer thread.
+ *
+ * <p> If a file cannot be synced, its part body is disposed, {@code onError} is notified and the following notifications are dropped.
+ *
+ * <p> The file of a part body is found for the {@code StreamStorage}s created by the {@code PartBodyStreamStorageFactory}s of this library.
+ *     The part bodies kept in memory, or stored by other {@code StreamStorage}s, are notified without waiting for a commit.
+ *
+ * @author Silvano Riz.
+ */
+public class DurableNioMultipartParserListener implements NioMultipartParserListener {
+
+    final NioMultipartParserListener delegate;
+    final GroupCommitter groupCommitter;
+    final Queue<Notification> notifications = new ArrayDeque<Notification>();
+    final Object deliveryLock = new Object();
+    boolean failed = false;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param delegate The {@code NioMultipartParserListener} to notify.
+     * @param groupCommitter The {@code GroupCommitter} syncing the files.
+     */
+    public DurableNioMultipartParserListener(final NioMultipartParserListener delegate, final GroupCommitter groupCommitter) {
+        this.delegate = delegate;
+        this.groupCommitter = groupCommitter;
+    }
+
+    @Override
+    public void onPartFinished(final StreamStorage partBodyStreamStorage, final Map<String, List<String>> headersFromPart) {
+        final File file = spilledFile(partBodyStreamStorage);
+        final Notification notification = new Notification(partBodyStreamStorage, file == null) {
+            @Override
+            void deliver() {
+                delegate.onPartFinished(partBodyStreamStorage, headersFromPart);
+            }
+        };
+        enqueue(notification);
+        if (file != null) {
+            groupCommitter.commit(file, notification);
+        }
+    }
+
+    @Override
+    public void onAllPartsFinished() {
+        enqueue(new Notification(null, true) {
+            @Override
+            void deliver() {
+                delegate.onAllPartsFinished();
+            }
+        });
+    }
+
+    @Override
+    public void onNestedPartStarted(final Map<String, List<String>> headersFromParentPart) {
+        enqueue(new Notification(null, true) {
+            @Override
+            void deliver() {
+                delegate.onNestedPartStarted(headersFromParentPart);
+            }
+        });
+    }
+
+    @Override
+    public void onNestedPartFinished() {
+        enqueue(new Notification(null, true) {
+            @Override
+            void deliver() {
+                delegate.onNestedPartFinished();
+            }
+        });
+    }
+
+    @Override
+    public void onError(final String message, final Throwable cause) {
+        enqueue(new Notification(null, true) {
+            @Override
+            void deliver() {
+                delegate.onError(message, cause);
+            }
+        });
+    }
+
+    void enqueue(final Notification notification) {
+        synchronized (notifications) {
+            notifications.add(notification);
+        }
+        deliverReady();
+    }
+
+    /*
+     * Delivers the notifications at the head of the queue that are ready. The delivery lock guarantees the order when the
+     * parser thread and the committer thread deliver at the same time.
+     */
+    void deliverReady() {
+        synchronized (deliveryLock) {
+            while (true) {
+                final Notification notification;
+                synchronized (notifications) {
+                    notification = notifications.peek();
+                    if (notification == null || !notification.ready) {
+                        return;
+                    }
+                    notifications.poll();
+                }
+                if (failed) {
+                    notification.discard();
+                } else if (notification.failure != null) {
+                    failed = true;
+                    notification.discard();
+                    delegate.onError("Unable to sync the part body to disk", notification.failure);
+                } else {
+                    notification.deliver();
+                }
+            }
+        }
+    }
+
+    static File spilledFile(final StreamStorage streamStorage) {
+        if (streamStorage instanceof CompressingStreamStorage) {
+            return spilledFile(((CompressingStreamStorage) streamStorage).delegate);
+        } else if (streamStorage instanceof ChannelFileStreamStorage) {
+            return ((ChannelFileStreamStorage) streamStorage).file;
+        } else if (streamStorage instanceof TrackedFileStreamStorage) {
+            final TrackedFileStreamStorage trackedFileStreamStorage = (TrackedFileStreamStorage) streamStorage;
+            return trackedFileStreamStorage.isInMemory() ? null : trackedFileStreamStorage.file;
+        } else if (streamStorage instanceof WriteBehindStreamStorage) {
+            final WriteBehindStreamStorage writeBehindStreamStorage = (WriteBehindStreamStorage) streamStorage;
+            return writeBehindStreamStorage.isInMemory() ? null : writeBehindStreamStorage.file;
+        } else if (streamStorage instanceof PooledDirectStreamStorage) {
+            final PooledDirectStreamStorage pooledDirectStreamStorage = (PooledDirectStreamStorage) streamStorage;
+            return pooledDirectStreamStorage.isInMemory() ? null : pooledDirectStreamStorage.file;
+        }
+        return null;
+    }
+
+    abstract class Notification implements GroupCommitter.Callback {
+
+        final StreamStorage partBodyStreamStorage;
+        volatile boolean ready;
+        volatile IOException failure;
+
+        Notification(final StreamStorage partBodyStreamStorage, final boolean ready) {
+            this.partBodyStreamStorage = partBodyStreamStorage;
+            this.ready = ready;
+        }
+
+        abstract void deliver();
+
+        void discard() {
+            if (partBodyStreamStorage != null) {
+                partBodyStreamStorage.dispose();
+            }
+        }
+
+        @Override
+        public void onCommitted(final File file) {
+            ready = true;
+            deliverReady();
+        }
+
+        @Override
+        public void onCommitFailed(final File file, final IOException cause) {
+            failure = cause;
+            ready = true;
+            deliverReady();
+        }
+    }
+
+}
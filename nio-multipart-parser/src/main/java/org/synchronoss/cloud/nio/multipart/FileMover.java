@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p> Helpers moving the part body data to a permanent location. See {@link Movable}.
+ *
+ * @author Silvano Riz.
+ */
+class FileMover {
+
+    private FileMover() {}
+
+    /*
+     * Moves the file atomically or, if the destination is on another file system, copies it and deletes it.
+     */
+    static void move(final File source, final Path destination) throws IOException {
+        try {
+            Files.move(source.toPath(), destination, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            final FileChannel sourceChannel = new RandomAccessFile(source, "r").getChannel();
+            try {
+                copy(sourceChannel, destination);
+            } finally {
+                sourceChannel.close();
+            }
+            Files.delete(source.toPath());
+        }
+    }
+
+    /*
+     * Copies the whole content of the channel to the destination with transferTo, without changing the position of the channel.
+     */
+    static void copy(final FileChannel source, final Path destination) throws IOException {
+        final FileChannel destinationChannel = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        boolean copied = false;
+        try {
+            final long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, destinationChannel);
+            }
+            copied = true;
+        } finally {
+            destinationChannel.close();
+            if (!copied) {
+                Files.deleteIfExists(destination);
+            }
+        }
+    }
+
+    /*
+     * Writes the data held in memory to the destination.
+     */
+    static void write(final InputStream source, final Path destination) throws IOException {
+        try {
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            source.close();
+        }
+    }
+
+}
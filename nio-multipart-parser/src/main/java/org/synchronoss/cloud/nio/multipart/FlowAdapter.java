@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.NestedEnd;
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.NestedStart;
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.Part;
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.ParserToken;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.DEFAULT_BUFFER_SIZE;
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE;
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART;
+
+/**
+ * <p> Adapts the {@link NioMultipartParser} to reactive pipelines.
+ *     The adapter creates a {@link Processor} that subscribes to the {@code ByteBuffer}s of the multipart stream and publishes the
+ *     {@link ParserToken}s (parts, start and end of nested multiparts) parsed from them.
+ *
+ * <p> The parsing is driven by the demand of the downstream subscriber: a new {@code ByteBuffer} is requested to the upstream only when
+ *     the downstream has requested more tokens and all the tokens parsed so far have been delivered. This bounds the memory used for each
+ *     multipart stream to the tokens parsed from a single {@code ByteBuffer}.
+ *
+ * <p> The {@link Publisher}, {@link Subscriber}, {@link Subscription} and {@link Processor} interfaces have the same methods and contract
+ *     of the {@code java.util.concurrent.Flow} ones (and of the Reactive Streams ones), so they can be bridged with a one line wrapper
+ *     on Java 9+ or by the reactive library in use.
+ *
+ * @author Silvano Riz.
+ */
+public class FlowAdapter {
+
+    /**
+     * <p> A producer of items received by one or more {@link Subscriber}s. Same contract of {@code java.util.concurrent.Flow.Publisher}.
+     *
+     * @param <T> the published item type
+     */
+    public interface Publisher<T> {
+
+        /**
+         * <p> Adds the given subscriber.
+         *
+         * @param subscriber the subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * <p> A receiver of items. Same contract of {@code java.util.concurrent.Flow.Subscriber}.
+     *
+     * @param <T> the subscribed item type
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * <p> Called before any other method, with the subscription used to request items.
+         *
+         * @param subscription the subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * <p> Called with the next item.
+         *
+         * @param item the item
+         */
+        void onNext(T item);
+
+        /**
+         * <p> Called when the publisher encountered an unrecoverable error. No other method is called after.
+         *
+         * @param throwable the error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * <p> Called when all the items have been published. No other method is called after.
+         */
+        void onComplete();
+    }
+
+    /**
+     * <p> Links a {@link Publisher} and a {@link Subscriber}. Same contract of {@code java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+
+        /**
+         * <p> Adds the given number of items to the demand.
+         *
+         * @param n the increment of demand, a strictly positive number.
+         */
+        void request(long n);
+
+        /**
+         * <p> Stops receiving items.
+         */
+        void cancel();
+    }
+
+    /**
+     * <p> A component that acts as both a {@link Subscriber} and a {@link Publisher}. Same contract of {@code java.util.concurrent.Flow.Processor}.
+     *
+     * @param <T> the subscribed item type
+     * @param <R> the published item type
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+
+    /**
+     * <p> Creates a {@code Processor} parsing a multipart stream with the default configuration.
+     *
+     * @param multipartContext The multipart context
+     * @return The {@code Processor} publishing the {@code ParserToken}s.
+     */
+    public static Processor<ByteBuffer, ParserToken> processor(final MultipartContext multipartContext) {
+        return processor(multipartContext, null, DEFAULT_BUFFER_SIZE, DEFAULT_HEADERS_SECTION_SIZE, DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART);
+    }
+
+    /**
+     * <p> Creates a {@code Processor} parsing a multipart stream.
+     *
+     * @param multipartContext The multipart context
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use or null for the default one.
+     * @param bufferSize The buffer size
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @return The {@code Processor} publishing the {@code ParserToken}s.
+     */
+    public static Processor<ByteBuffer, ParserToken> processor(final MultipartContext multipartContext,
+                                                               final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                                                               final int bufferSize,
+                                                               final int maxHeadersSectionSize,
+                                                               final int maxLevelOfNestedMultipart) {
+        return new PartEventProcessor(multipartContext, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart);
+    }
+
+    static class PartEventProcessor implements Processor<ByteBuffer, ParserToken>, Subscription {
+
+        private final Queue<ParserToken> parserTokens = new ConcurrentLinkedQueue<>();
+        private final NioMultipartParser parser;
+
+        private final AtomicReference<Subscriber<? super ParserToken>> downstream = new AtomicReference<>();
+        private volatile Subscription upstream;
+
+        // Outstanding demand of the downstream. Long.MAX_VALUE means unbounded.
+        private final AtomicLong demand = new AtomicLong();
+
+        // Serializes the drain loop, see drain()
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // True if a ByteBuffer has been requested to the upstream and not received yet.
+        private volatile boolean upstreamRequested = false;
+        private volatile boolean allPartsFinished = false;
+        private volatile boolean upstreamCompleted = false;
+        private volatile boolean cancelled = false;
+        private volatile boolean terminated = false;
+        private volatile Throwable error;
+
+        PartEventProcessor(final MultipartContext multipartContext,
+                           final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                           final int bufferSize,
+                           final int maxHeadersSectionSize,
+                           final int maxLevelOfNestedMultipart) {
+
+            final NioMultipartParserListener listener = new NioMultipartParserListener() {
+                @Override
+                public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                    parserTokens.add(new Part(headersFromPart, partBodyStreamStorage));
+                }
+
+                @Override
+                public void onAllPartsFinished() {
+                    allPartsFinished = true;
+                }
+
+                @Override
+                public void onNestedPartStarted(Map<String, List<String>> headersFromParentPart) {
+                    parserTokens.add(new NestedStart(headersFromParentPart));
+                }
+
+                @Override
+                public void onNestedPartFinished() {
+                    parserTokens.add(new NestedEnd());
+                }
+
+                @Override
+                public void onError(String message, Throwable cause) {
+                    setError(new IllegalStateException("Error parsing the multipart stream: " + message, cause));
+                }
+            };
+
+            this.parser = new NioMultipartParser(multipartContext, listener, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart);
+        }
+
+        // -----------------------------
+        // Publisher side (downstream)
+        // -----------------------------
+
+        @Override
+        public void subscribe(final Subscriber<? super ParserToken> subscriber) {
+            if (subscriber == null) {
+                throw new NullPointerException("The subscriber cannot be null");
+            }
+            if (downstream.compareAndSet(null, subscriber)) {
+                subscriber.onSubscribe(this);
+                drain();
+            } else {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("The multipart stream can be subscribed only once."));
+            }
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                setError(new IllegalArgumentException("The number of requested tokens must be grater than 0. Requested: " + n));
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        // -----------------------------
+        // Subscriber side (upstream)
+        // -----------------------------
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            if (upstream != null || terminated) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            drain();
+        }
+
+        @Override
+        public void onNext(final ByteBuffer item) {
+            upstreamRequested = false;
+            if (!terminated && error == null) {
+                try {
+                    parser.write(item);
+                } catch (RuntimeException e) {
+                    setError(e);
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            setError(throwable);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamCompleted = true;
+            drain();
+        }
+
+        // -----------------------------
+        // Helpers
+        // -----------------------------
+
+        void setError(final Throwable throwable) {
+            if (error == null) {
+                error = throwable;
+            }
+        }
+
+        /*
+         * Delivers the parsed tokens and the terminal signals to the downstream and requests more data to the upstream when needed.
+         * The method can be called concurrently by the upstream and the downstream threads, but only one thread at a time runs the loop.
+         * The other threads just signal that there is more work to do.
+         */
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                final Subscriber<? super ParserToken> subscriber = downstream.get();
+                if (subscriber != null && !terminated) {
+                    if (cancelled) {
+                        terminate(true);
+                    } else {
+                        emit(subscriber);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        void emit(final Subscriber<? super ParserToken> subscriber) {
+
+            final long requested = demand.get();
+            long emitted = 0;
+            ParserToken parserToken;
+            while (emitted < requested && error == null && (parserToken = parserTokens.poll()) != null) {
+                subscriber.onNext(parserToken);
+                emitted++;
+            }
+            if (emitted > 0 && requested != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+
+            if (error != null) {
+                terminate(true);
+                subscriber.onError(error);
+            } else if (parserTokens.isEmpty()) {
+                if (allPartsFinished) {
+                    terminate(false);
+                    subscriber.onComplete();
+                } else if (upstreamCompleted) {
+                    terminate(false);
+                    subscriber.onError(new IllegalStateException("Error parsing the multipart stream. Stream ended unexpectedly"));
+                } else if (!upstreamRequested && demand.get() > 0 && upstream != null) {
+                    upstreamRequested = true;
+                    upstream.request(1);
+                }
+            }
+        }
+
+        void terminate(final boolean disposeParts) {
+            terminated = true;
+            final Subscription upstream = this.upstream;
+            if (upstream != null && !upstreamCompleted) {
+                upstream.cancel();
+            }
+            if (disposeParts) {
+                // The parts that have not been delivered hold resources (for example temporary files)
+                ParserToken parserToken;
+                while ((parserToken = parserTokens.poll()) != null) {
+                    if (parserToken instanceof Part) {
+                        ((Part) parserToken).partBodyStreamStorage.dispose();
+                    }
+                }
+            }
+            try {
+                parser.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Makes the temporary files durable with a group commit: the files registered via {@link #commit(File, Callback)} are synced
+ *     to disk in batches by a single dedicated thread, so that many uploads finishing at the same moment share the cost of the syncs.
+ *     The parent folders of the files in a batch are synced once per batch, so that the new files survive a crash too.
+ *
+ * <p> A batch is committed when it reaches the max batch size or when its first file has waited the max batch delay.
+ *     The commit latency (from the registration of a file to the end of its commit) is measured and can be monitored.
+ *
+ * @author Silvano Riz.
+ */
+public class GroupCommitter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    /**
+     * Default max number of files synced in a batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+
+    /**
+     * Default max time, in milliseconds, a file waits for other files to join its batch.
+     */
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 5;
+
+    static final long POLL_TIMEOUT_MILLIS = 100;
+
+    /**
+     * <p> Notified when a file has been committed. It is called by the committer thread, so it should not block.
+     */
+    public interface Callback {
+
+        /**
+         * <p> Called when the file has been synced to disk.
+         *
+         * @param file The file.
+         */
+        void onCommitted(final File file);
+
+        /**
+         * <p> Called if the file cannot be synced to disk.
+         *
+         * @param file The file.
+         * @param cause The error.
+         */
+        void onCommitFailed(final File file, final IOException cause);
+
+    }
+
+    final LinkedBlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<PendingCommit>();
+    final int maxBatchSize;
+    final long maxBatchDelayNanos;
+    final AtomicLong committedFiles = new AtomicLong(0);
+    final AtomicLong committedBatches = new AtomicLong(0);
+    final AtomicLong totalCommitLatencyNanos = new AtomicLong(0);
+    final AtomicLong maxCommitLatencyNanos = new AtomicLong(0);
+    final Thread committerThread;
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor. Starts the committer thread.
+     *
+     * @param maxBatchSize The max number of files synced in a batch, a strictly positive integer.
+     * @param maxBatchDelayMillis The max time, in milliseconds, a file waits for other files to join its batch. Zero to commit what is available.
+     */
+    public GroupCommitter(final int maxBatchSize, final long maxBatchDelayMillis) {
+        this(maxBatchSize, maxBatchDelayMillis, true);
+    }
+
+    GroupCommitter(final int maxBatchSize, final long maxBatchDelayMillis, final boolean startCommitterThread) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be grater than 0. Size specified: " + maxBatchSize);
+        }
+        if (maxBatchDelayMillis < 0) {
+            throw new IllegalArgumentException("The batch delay cannot be negative. Value specified: " + maxBatchDelayMillis);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.committerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitBatches();
+            }
+        }, "nio-multipart-group-committer");
+        this.committerThread.setDaemon(true);
+        if (startCommitterThread) {
+            this.committerThread.start();
+        }
+    }
+
+    /**
+     * <p> Constructor that uses the default batch size and delay.
+     */
+    public GroupCommitter() {
+        this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * <p> Registers the file for the next group commit. If the committer is closed, the file is synced by the calling thread.
+     *
+     * @param file The file to sync. It must have been closed by the writer.
+     * @param callback The {@code Callback} notified when the file has been committed.
+     */
+    public void commit(final File file, final Callback callback) {
+        final PendingCommit pendingCommit = new PendingCommit(file, callback, System.nanoTime());
+        if (closed) {
+            commitBatch(single(pendingCommit));
+            return;
+        }
+        queue.add(pendingCommit);
+        if (closed && queue.remove(pendingCommit)) {
+            commitBatch(single(pendingCommit));
+        }
+    }
+
+    /**
+     * <p> Returns the number of files committed.
+     *
+     * @return the number of files committed.
+     */
+    public long getCommittedFiles() {
+        return committedFiles.get();
+    }
+
+    /**
+     * <p> Returns the number of batches committed.
+     *
+     * @return the number of batches committed.
+     */
+    public long getCommittedBatches() {
+        return committedBatches.get();
+    }
+
+    /**
+     * <p> Returns the average time, in nanoseconds, between the registration of a file and the end of its commit.
+     *
+     * @return the average commit latency in nanoseconds or 0 if no file has been committed.
+     */
+    public long getAverageCommitLatencyNanos() {
+        final long files = committedFiles.get();
+        return files == 0 ? 0 : totalCommitLatencyNanos.get() / files;
+    }
+
+    /**
+     * <p> Returns the longest time, in nanoseconds, between the registration of a file and the end of its commit.
+     *
+     * @return the max commit latency in nanoseconds.
+     */
+    public long getMaxCommitLatencyNanos() {
+        return maxCommitLatencyNanos.get();
+    }
+
+    /**
+     * <p> Stops the committer. The files still waiting are committed by the calling thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        committerThread.interrupt();
+        try {
+            committerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final List<PendingCommit> batch = new ArrayList<PendingCommit>();
+        queue.drainTo(batch);
+        commitBatch(batch);
+    }
+
+    void commitBatches() {
+        final List<PendingCommit> batch = new ArrayList<PendingCommit>(maxBatchSize);
+        while (!closed) {
+            try {
+                final PendingCommit first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = first.registeredAt + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    final long remaining = deadline - System.nanoTime();
+                    if (batch.size() == maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    final PendingCommit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Closed, the remaining files are committed by the thread closing the committer
+            }
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    void commitBatch(final List<PendingCommit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final IOException[] failures = new IOException[batch.size()];
+        final Set<File> folders = new HashSet<File>();
+        for (int i = 0; i < batch.size(); i++) {
+            final File file = batch.get(i).file;
+            try {
+                sync(file);
+                final File folder = file.getAbsoluteFile().getParentFile();
+                if (folder != null) {
+                    folders.add(folder);
+                }
+            } catch (IOException e) {
+                failures[i] = e;
+            }
+        }
+        for (File folder : folders) {
+            syncFolder(folder);
+        }
+        committedBatches.incrementAndGet();
+        final long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            final PendingCommit pendingCommit = batch.get(i);
+            if (failures[i] == null) {
+                recordLatency(now - pendingCommit.registeredAt);
+            }
+            notify(pendingCommit, failures[i]);
+        }
+    }
+
+    void sync(final File file) throws IOException {
+        final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            fileChannel.force(true);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    void syncFolder(final File folder) {
+        // Not all the platforms allow to sync a folder (e.g. Windows), in that case the file system is trusted
+        try {
+            final FileChannel fileChannel = FileChannel.open(folder.toPath(), StandardOpenOption.READ);
+            try {
+                fileChannel.force(true);
+            } finally {
+                fileChannel.close();
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) log.debug("Unable to sync the folder " + folder.getAbsolutePath(), e);
+        }
+    }
+
+    void recordLatency(final long latencyNanos) {
+        committedFiles.incrementAndGet();
+        totalCommitLatencyNanos.addAndGet(latencyNanos);
+        long max;
+        while (latencyNanos > (max = maxCommitLatencyNanos.get())) {
+            if (maxCommitLatencyNanos.compareAndSet(max, latencyNanos)) {
+                return;
+            }
+        }
+    }
+
+    void notify(final PendingCommit pendingCommit, final IOException failure) {
+        try {
+            if (failure == null) {
+                pendingCommit.callback.onCommitted(pendingCommit.file);
+            } else {
+                pendingCommit.callback.onCommitFailed(pendingCommit.file, failure);
+            }
+        } catch (RuntimeException e) {
+            if (log.isWarnEnabled()) log.warn("Group commit callback failed for the file " + pendingCommit.file.getAbsolutePath(), e);
+        }
+    }
+
+    static List<PendingCommit> single(final PendingCommit pendingCommit) {
+        final List<PendingCommit> batch = new ArrayList<PendingCommit>(1);
+        batch.add(pendingCommit);
+        return batch;
+    }
+
+    static class PendingCommit {
+
+        final File file;
+        final Callback callback;
+        final long registeredAt;
+
+        PendingCommit(final File file, final Callback callback, final long registeredAt) {
+            this.file = file;
+            this.callback = callback;
+            this.registeredAt = registeredAt;
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> A memory budget shared by all the parsers and part body storages of the process. It is thread safe.
+ *
+ * <p> The {@link NioMultipartParser}s reserve the memory of their buffers when created (or reset) and release it when closed.
+ *     Those buffers are needed to parse, so they are always reserved, even if that exceeds the budget.
+ *     The {@link DefaultPartBodyStreamStorageFactory} instead reserves the memory of a part body only if available: when the budget is
+ *     exhausted, the new parts are stored directly to file.
+ *
+ * <p> The current and peak reservations can be monitored to size the memory of the process.
+ *
+ * @author Silvano Riz.
+ */
+public class MemoryBudget {
+
+    final long maxBytes;
+    final AtomicLong reservedBytes = new AtomicLong(0);
+    final AtomicLong peakReservedBytes = new AtomicLong(0);
+
+    /**
+     * <p> Constructor.
+     *
+     * @param maxBytes The budget in bytes.
+     */
+    public MemoryBudget(final long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The memory budget cannot be negative. Value specified: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * <p> Reserves the memory if the budget allows it.
+     *
+     * @param bytes The number of bytes to reserve.
+     * @return true if the memory has been reserved, false if the budget is exhausted.
+     */
+    public boolean tryReserve(final long bytes) {
+        while (true) {
+            final long reserved = reservedBytes.get();
+            if (reserved + bytes > maxBytes) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+                updatePeak(reserved + bytes);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * <p> Reserves the memory even if it exceeds the budget. Used for the memory that cannot be avoided.
+     *
+     * @param bytes The number of bytes to reserve.
+     */
+    public void reserve(final long bytes) {
+        updatePeak(reservedBytes.addAndGet(bytes));
+    }
+
+    /**
+     * <p> Releases memory previously reserved.
+     *
+     * @param bytes The number of bytes to release.
+     */
+    public void release(final long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * <p> Returns the budget in bytes.
+     *
+     * @return the budget in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * <p> Returns the number of bytes currently reserved.
+     *
+     * @return the number of bytes currently reserved.
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * <p> Returns the highest number of bytes reserved at the same time.
+     *
+     * @return the highest number of bytes reserved at the same time.
+     */
+    public long getPeakReservedBytes() {
+        return peakReservedBytes.get();
+    }
+
+    void updatePeak(final long reserved) {
+        long peak;
+        while (reserved > (peak = peakReservedBytes.get())) {
+            if (peakReservedBytes.compareAndSet(peak, reserved)) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * <p> A part body {@code StreamStorage} that can move its data to a permanent location without reading and rewriting it
+ *     when the data is in a file on the same file system.
+ *
+ * @author Silvano Riz.
+ */
+public interface Movable {
+
+    /**
+     * <p> Moves the data to the destination file, replacing it if it exists. The storage must be closed.
+     *     If the data is in a file on the same file system of the destination, the file is moved atomically.
+     *     Otherwise the data is copied (channel to channel if it is in a file) and the temporary file is deleted.
+     *     After the move, the data cannot be read from the storage anymore.
+     *
+     * @param destination The destination file.
+     * @throws IOException if the data cannot be moved.
+     */
+    void moveTo(final Path destination) throws IOException;
+
+}
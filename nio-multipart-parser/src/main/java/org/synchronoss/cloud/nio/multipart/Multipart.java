@@ -21,6 +21,7 @@ import org.synchronoss.cloud.nio.multipart.util.collect.CloseableIterator;
 import org.synchronoss.cloud.nio.stream.storage.DeferredFileStreamStorageFactory;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * <p> Easy to use fluent api to build an {@code NioMultipartParser} (for Nio parsing) or to obtain a {@code CloseableIterator} (for Blocking IO parsing)
@@ -42,6 +43,14 @@ public class Multipart {
         private String rootFolder = DeferredFileStreamStorageFactory.DEFAULT_ROOT_FOLDER;
         private int bodySizeThreshold = DeferredFileStreamStorageFactory.DEFAULT_MAX_THRESHOLD;
         private PartBodyStreamStorageFactory partBodyStreamStorageFactory;
+        private boolean bodyPassThrough = false;
+        private boolean trustContentLength = false;
+        private MemoryBudget memoryBudget;
+        private TempFileManager tempFileManager;
+        private TempFileReaper tempFileReaper;
+        private NioMultipartParserPool parserPool;
+        private GroupCommitter groupCommitter;
+        private RawCapture rawCapture;
         private MultipartContext context;
 
         private Builder(final MultipartContext context) {
@@ -107,6 +116,35 @@ public class Multipart {
             return this;
         }
 
+        /**
+         * <p> Configures a {@code TempFileManager} providing the temporary files, for example to spread them across several disks.
+         *     It replaces the folder configured with {@link #saveTemporaryFilesTo(String)}.
+         *     This configuration is only valid if the default {@code PartBodyStreamStorageFactory} is used.
+         *     If a different {@code PartBodyStreamStorageFactory} is selected using {@link #usePartBodyStreamStorageFactory(PartBodyStreamStorageFactory)}
+         *     this configuration will have no effect.
+         *
+         * @param tempFileManager The {@code TempFileManager} to use
+         * @return the {@code Builder} itself.
+         */
+        public Builder useTempFileManager(final TempFileManager tempFileManager){
+            this.tempFileManager = tempFileManager;
+            return this;
+        }
+
+        /**
+         * <p> Configures a {@code TempFileReaper} deleting the temporary files in background, instead of on the thread disposing the part body {@code StreamStorage}.
+         *     This configuration is only valid if the default {@code PartBodyStreamStorageFactory} is used.
+         *     If a different {@code PartBodyStreamStorageFactory} is selected using {@link #usePartBodyStreamStorageFactory(PartBodyStreamStorageFactory)}
+         *     this configuration will have no effect.
+         *
+         * @param tempFileReaper The {@code TempFileReaper} to use
+         * @return the {@code Builder} itself.
+         */
+        public Builder useTempFileReaper(final TempFileReaper tempFileReaper){
+            this.tempFileReaper = tempFileReaper;
+            return this;
+        }
+
         /**
          * <p> Configures a specific {@code PartBodyStreamStorageFactory} to use.
          *
@@ -132,9 +170,92 @@ public class Multipart {
             return this;
         }
 
+        /**
+         * <p> Enables the body pass-through mode. The body data is written to the part body {@code StreamStorage} directly from the data
+         *     passed to the parser, saving a copy. Recommended for big bodies written in big chunks.
+         *     This configuration is only valid for NIO parsing (see {@link #forNIO(NioMultipartParserListener)}).
+         *
+         * @return the {@code Builder} itself.
+         */
+        public Builder withBodyPassThrough(){
+            this.bodyPassThrough = true;
+            return this;
+        }
+
+        /**
+         * <p> Enables the trusted Content-Length mode. The body of the parts declaring a {@code Content-Length} is copied to the part body
+         *     {@code StreamStorage} without being scanned for the delimiter, the parser only verifies that the delimiter follows the body.
+         *     Use it only if the clients are known to send correct part sizes.
+         *     This configuration is only valid for NIO parsing (see {@link #forNIO(NioMultipartParserListener)}).
+         *
+         * @return the {@code Builder} itself.
+         */
+        public Builder withTrustedContentLength(){
+            this.trustContentLength = true;
+            return this;
+        }
+
+        /**
+         * <p> Configures a {@code MemoryBudget} shared by all the parsers and part body storages of the process.
+         *     The NIO parser reserves the memory of its buffers on the budget and the default {@code PartBodyStreamStorageFactory} keeps a
+         *     part body in memory only if the memory can be reserved, otherwise the part body is stored directly to file.
+         *     If a different {@code PartBodyStreamStorageFactory} is selected using {@link #usePartBodyStreamStorageFactory(PartBodyStreamStorageFactory)}
+         *     the budget is not used for the part bodies.
+         *
+         * @param memoryBudget The {@code MemoryBudget} to use
+         * @return the {@code Builder} itself.
+         */
+        public Builder withMemoryBudget(final MemoryBudget memoryBudget){
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * <p> Configures a {@code NioMultipartParserPool} from where the {@code NioMultipartParser} is obtained.
+         *     The parser is given back to the pool when disposed. The parsers of the pool have the configuration of the pool, including the trusted
+         *     Content-Length mode and the {@code MemoryBudget} (see {@link NioMultipartParserPool#NioMultipartParserPool(int, PartBodyStreamStorageFactory, int, int, int, boolean, boolean, MemoryBudget)}),
+         *     so the buffer size, headers size limit, {@code PartBodyStreamStorageFactory}, nested parts limit, body pass-through, trusted Content-Length
+         *     and memory budget configured in the builder are ignored.
+         *     This configuration is only valid for NIO parsing (see {@link #forNIO(NioMultipartParserListener)}).
+         *
+         * @param parserPool The {@code NioMultipartParserPool} to use
+         * @return the {@code Builder} itself.
+         */
+        public Builder usePool(final NioMultipartParserPool parserPool){
+            this.parserPool = parserPool;
+            return this;
+        }
+
+        /**
+         * <p> Enables the durable mode: the part bodies stored to file are synced to disk by the {@code GroupCommitter} before being notified
+         *     to the listener, which can then be called by the committer thread. See {@link DurableNioMultipartParserListener}.
+         *     This configuration is only valid for NIO parsing (see {@link #forNIO(NioMultipartParserListener)}).
+         *
+         * @param groupCommitter The {@code GroupCommitter} to use
+         * @return the {@code Builder} itself.
+         */
+        public Builder withGroupCommit(final GroupCommitter groupCommitter){
+            this.groupCommitter = groupCommitter;
+            return this;
+        }
+
+        /**
+         * <p> Enables the raw capture mode: the multipart stream is appended as it is to the {@code RawCapture} and the part bodies are views over it,
+         *     instead of being copied to their own {@code StreamStorage}. See {@link NioMultipartParser#setRawCapture(RawCapture)}.
+         *     This configuration is only valid for NIO parsing (see {@link #forNIO(NioMultipartParserListener)}).
+         *
+         * @param rawCapture The {@code RawCapture} of the multipart stream
+         * @return the {@code Builder} itself.
+         */
+        public Builder withRawCapture(final RawCapture rawCapture){
+            this.rawCapture = rawCapture;
+            return this;
+        }
+
         private PartBodyStreamStorageFactory partStreamsFactory(){
             if (partBodyStreamStorageFactory == null){
-                return new DefaultPartBodyStreamStorageFactory(rootFolder, bodySizeThreshold);
+                final TempFileManager tempFileManager = this.tempFileManager != null ? this.tempFileManager : new TempFileManager(rootFolder);
+                return new DefaultPartBodyStreamStorageFactory(tempFileManager, bodySizeThreshold, memoryBudget, tempFileReaper);
             }else{
                 return partBodyStreamStorageFactory;
             }
@@ -147,7 +268,19 @@ public class Multipart {
          * @return The {@code NioMultipartParser}
          */
         public NioMultipartParser forNIO(final NioMultipartParserListener listener){
-            return new NioMultipartParser(context, listener, partStreamsFactory(), bufferSize, headersSizeLimit, nestedMultipartsAllowed);
+            // The bodies streamed to a NioMultipartParserStreamingListener are not stored, there is nothing to commit
+            final NioMultipartParserListener parserListener = groupCommitter != null && !(listener instanceof NioMultipartParserStreamingListener)
+                    ? new DurableNioMultipartParserListener(listener, groupCommitter) : listener;
+            final NioMultipartParser parser;
+            if (parserPool != null){
+                parser = parserPool.acquire(context, parserListener);
+            } else {
+                parser = new NioMultipartParser(context, parserListener, partStreamsFactory(), bufferSize, headersSizeLimit, nestedMultipartsAllowed, bodyPassThrough, trustContentLength, memoryBudget);
+            }
+            if (rawCapture != null){
+                parser.setRawCapture(rawCapture);
+            }
+            return parser;
         }
 
         /**
@@ -159,6 +292,27 @@ public class Multipart {
         public CloseableIterator<ParserToken> forBlockingIO(final InputStream inputStream){
             return BlockingIOAdapter.parse(inputStream, context, partStreamsFactory(), bufferSize, headersSizeLimit, nestedMultipartsAllowed);
         }
+
+        /**
+         * <p> Creates a {@code Processor} of the {@code ByteBuffer}s of the multipart stream publishing the {@code ParserToken}s.
+         *     Use this to process the multipart stream in a reactive pipeline. See {@link FlowAdapter}.
+         *
+         * @return The {@code Processor}
+         */
+        public FlowAdapter.Processor<ByteBuffer, ParserToken> forFlow(){
+            return FlowAdapter.processor(context, partStreamsFactory(), bufferSize, headersSizeLimit, nestedMultipartsAllowed);
+        }
+
+        /**
+         * <p> Builds a {@code ParallelMultipartParser}. Use this to parse in parallel a multipart body that is fully available,
+         *     for example stored in a file (see {@link ParallelMultipartParser#parse(java.nio.channels.FileChannel, NioMultipartParserListener)}).
+         *     The {@code PartBodyStreamStorageFactory} is shared by the parallel tasks, so a custom one must be thread safe.
+         *
+         * @return The {@code ParallelMultipartParser}
+         */
+        public ParallelMultipartParser forParallel(){
+            return new ParallelMultipartParser(context, partStreamsFactory(), headersSizeLimit, nestedMultipartsAllowed, null, ParallelMultipartParser.DEFAULT_SEGMENT_SIZE);
+        }
     }
 
     /**
@@ -131,6 +131,9 @@ public class MultipartUtils {
      * @return the value of the content type header if present.
      */
     public static String getContentType(final Map<String, List<String>> headers){
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getContentType();
+        }
         return getHeader(CONTENT_TYPE, headers);
     }
 
@@ -141,8 +144,14 @@ public class MultipartUtils {
      * @return the value of the content length header if present. -1 if the header is not present or if the value cannot be converted to a long
      */
     public static long getContentLength(final Map<String, List<String>> headers) {
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getContentLength();
+        }
+        return parseContentLength(getHeader(CONTENT_LENGTH, headers));
+    }
+
+    static long parseContentLength(final String contentLengthHeaderValue) {
         long contentLength = -1;
-        String contentLengthHeaderValue = getHeader(CONTENT_LENGTH, headers);
         if (contentLengthHeaderValue != null && contentLengthHeaderValue.length() > 0){
             try {
                 contentLength = Long.parseLong(contentLengthHeaderValue);
@@ -160,7 +169,13 @@ public class MultipartUtils {
      * @return the charset parameter value from the content type header or null if the header is not present of the charset parameter not defined
      */
     public static String getCharEncoding(final Map<String, List<String>> headers) {
-        String contentType = getHeader(CONTENT_TYPE, headers);
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getCharEncoding();
+        }
+        return parseCharEncoding(getHeader(CONTENT_TYPE, headers));
+    }
+
+    static String parseCharEncoding(final String contentType) {
         if (contentType != null) {
             ParameterParser parser = new ParameterParser();
             parser.setLowerCaseNames(true);
@@ -178,6 +193,9 @@ public class MultipartUtils {
      * @return The list of header values or null.
      */
     public static List<String> getHeaders(final String headerName, final Map<String, List<String>> headers){
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getHeaders(headerName);
+        }
         return headers.get(headerName.toLowerCase());
     }
 
@@ -254,52 +272,70 @@ public class MultipartUtils {
      * @return The 'filename' parameter of the Content-disposition header or null
      */
     public static String getFileName(final Map<String, List<String>> headers) {
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getFileName();
+        }
+        return fileNameParameter(parseContentDispositionParameters(getHeader(CONTENT_DISPOSITION, headers)));
+    }
 
+    /**
+     * <p> Returns the 'name' parameter of the Content-disposition header.
+     *
+     * @param headers The list of headers
+     * @return The 'name' parameter of the Content-disposition header or null
+     */
+    public static String getFieldName(final Map<String, List<String>> headers) {
+        if (headers instanceof PartHeaders){
+            return ((PartHeaders) headers).getFieldName();
+        }
         final String contentDisposition = getHeader(CONTENT_DISPOSITION, headers);
-        String fileName = null;
+        if (isFormDataContentDisposition(contentDisposition)) {
+            return fieldNameParameter(parseContentDispositionParameters(contentDisposition));
+        }
+        return null;
+    }
 
+    /*
+     * Parses the parameters of a form-data or attachment Content-disposition header. Returns null for any other Content-disposition.
+     */
+    static Map<String, String> parseContentDispositionParameters(final String contentDisposition) {
         if (contentDisposition != null) {
             String contentDispositionLc = contentDisposition.toLowerCase(Locale.ENGLISH);
             if (contentDispositionLc.startsWith(FORM_DATA) || contentDispositionLc.startsWith(ATTACHMENT)) {
                 ParameterParser parser = new ParameterParser();
-                parser.setLowerCaseNames(true);// Parameter parser can handle null input
-                Map<String, String> params = parser.parse(contentDisposition, ';');
-                if (params.containsKey("filename")) {
-                    fileName = params.get("filename");
-                    if (fileName != null) {
-                        fileName = fileName.trim();
-                    } else {
-                        // Even if there is no value, the parameter is present, so we return an empty file name rather than no file name.
-                        fileName = "";
-                    }
-                }
+                parser.setLowerCaseNames(true);
+                return parser.parse(contentDisposition, ';');
             }
         }
+        return null;
+    }
 
-        return fileName;
+    static boolean isFormDataContentDisposition(final String contentDisposition) {
+        return contentDisposition != null && contentDisposition.toLowerCase(Locale.ENGLISH).startsWith(FORM_DATA);
     }
 
-    /**
-     * <p> Returns the 'name' parameter of the Content-disposition header.
-     *
-     * @param headers The list of headers
-     * @return The 'name' parameter of the Content-disposition header or null
-     */
-    public static String getFieldName(final Map<String, List<String>> headers) {
+    static String fileNameParameter(final Map<String, String> contentDispositionParameters) {
+        String fileName = null;
+        if (contentDispositionParameters != null && contentDispositionParameters.containsKey("filename")) {
+            fileName = contentDispositionParameters.get("filename");
+            if (fileName != null) {
+                fileName = fileName.trim();
+            } else {
+                // Even if there is no value, the parameter is present, so we return an empty file name rather than no file name.
+                fileName = "";
+            }
+        }
+        return fileName;
+    }
 
-        final String contentDisposition = getHeader(CONTENT_DISPOSITION, headers);
+    static String fieldNameParameter(final Map<String, String> contentDispositionParameters) {
         String fieldName = null;
-
-        if (contentDisposition != null && contentDisposition.toLowerCase(Locale.ENGLISH).startsWith(FORM_DATA)) {
-            ParameterParser parser = new ParameterParser();
-            parser.setLowerCaseNames(true); // Parameter parser can handle null input
-            Map<String, String> params = parser.parse(contentDisposition, ';');
-            fieldName = params.get("name");
+        if (contentDispositionParameters != null) {
+            fieldName = contentDispositionParameters.get("name");
             if (fieldName != null) {
                 fieldName = fieldName.trim();
             }
         }
-
         return fieldName;
     }
 
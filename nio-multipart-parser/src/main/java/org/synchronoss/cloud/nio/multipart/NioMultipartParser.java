@@ -18,16 +18,15 @@ package org.synchronoss.cloud.nio.multipart;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.synchronoss.cloud.nio.multipart.io.FixedSizeByteArrayOutputStream;
 import org.synchronoss.cloud.nio.multipart.io.buffer.EndOfLineBuffer;
-import org.synchronoss.cloud.nio.multipart.util.HeadersParser;
+import org.synchronoss.cloud.nio.multipart.util.HeadersTokenizer;
 import org.synchronoss.cloud.nio.stream.storage.Disposable;
 import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -35,13 +34,16 @@ import static org.synchronoss.cloud.nio.multipart.MultipartUtils.*;
 
 /**
  * <p> The main class for parsing a multipart stream in an NIO mode. A new instance can be created and the
- *     data can be written invoking the {@link #write(byte[], int, int)}, {@link #write(byte[])} or {@link #write(int)} methods.
+ *     data can be written invoking the {@link #write(byte[], int, int)}, {@link #write(byte[])}, {@link #write(int)} or {@link #write(ByteBuffer)} methods.
  *     As data is written, the parser is identifying the various parts and notifying the client via the {@link NioMultipartParserListener} listener.
  *
  * <p> For each part the {@link org.synchronoss.cloud.nio.multipart.NioMultipartParser} will ask the
  *     {@link PartBodyStreamStorageFactory} for a {@code StreamStorage} where the bytes will be written.
  *     Once the parser finished to write, it calls the {@link #close()} method.
  *
+ * <p> If the listener is a {@link NioMultipartParserStreamingListener} the parts body is not stored, and no {@code StreamStorage} is requested.
+ *     Instead the body data is streamed to the listener while it is parsed.
+ *
  * <p> The class extends {@code OutputStream} and it can be seen as a 'splitter' where the main stream (the multipart body) is saved into different streams (one for each part).
  *     Each individual stream can be read back by the client when it's notified about the part completion.
  *     For more information about the events raised by the parser see {@link NioMultipartParserListener}.
@@ -107,8 +109,26 @@ public class NioMultipartParser extends OutputStream implements Disposable {
 
     }
 
+    /**
+     * Forwards the part body data flushed by the end of line buffer to a {@link NioMultipartParserStreamingListener}.
+     */
+    private class PartDataOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) {
+            streamingListener.onPartData(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] data, final int offset, final int length) {
+            streamingListener.onPartData(data, offset, length);
+        }
+    }
+
     /**
      * Helper class used every time a write is called to pass information between FSM statuses.
+     * The data can be held by a {@code byte[]} or by a {@code ByteBuffer} (heap or direct). Heap buffers are processed through their
+     * backing array, direct buffers are accessed in place using absolute indexes.
      * It provides convenience methods to
      * - read the received data
      * - Decide if the FSM should continue.
@@ -118,25 +138,128 @@ public class NioMultipartParser extends OutputStream implements Disposable {
         private int currentIndex;
         private int indexEnd;
         private byte[] data;
+        private ByteBuffer byteBuffer;
         private boolean finished;
+        // The max number of bytes written into the end of line buffer in one step
+        private int maxWriteLength = Integer.MAX_VALUE;
+        // The position in the stream of the byte at startIndex
+        private long startPosition;
+        private int startIndex;
+        // Used to copy the data held by a direct ByteBuffer to an OutputStream
+        private byte[] copyBuffer;
+        private static final int COPY_BUFFER_SIZE = 8192;
 
         void init(final int currentIndex, final int indexEnd, final byte[] data, final boolean finished) {
             this.currentIndex = currentIndex;
             this.indexEnd = indexEnd;
             this.data = data;
+            this.byteBuffer = null;
             this.finished = finished;
         }
 
+        void init(final ByteBuffer byteBuffer, final boolean finished) {
+            if (byteBuffer.hasArray()) {
+                init(byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.arrayOffset() + byteBuffer.limit(), byteBuffer.array(), finished);
+            } else {
+                this.currentIndex = byteBuffer.position();
+                this.indexEnd = byteBuffer.limit();
+                this.data = null;
+                this.byteBuffer = byteBuffer;
+                this.finished = finished;
+            }
+        }
+
+        /*
+         * Returns the position the ByteBuffer must be moved to, to reflect the consumed data.
+         */
+        int byteBufferPosition(final ByteBuffer byteBuffer) {
+            return byteBuffer.hasArray() ? currentIndex - byteBuffer.arrayOffset() : currentIndex;
+        }
+
+        /*
+         * Returns the position in the stream of the current byte.
+         */
+        long position() {
+            return startPosition + currentIndex - startIndex;
+        }
+
+        /*
+         * Returns a view of the remaining data, skipping the first bytes.
+         */
+        ByteBuffer remainingData(final int skip) {
+            if (data != null) {
+                return ByteBuffer.wrap(data, currentIndex + skip, indexEnd - currentIndex - skip);
+            }
+            final ByteBuffer remainingData = byteBuffer.duplicate();
+            remainingData.limit(indexEnd);
+            remainingData.position(currentIndex + skip);
+            return remainingData;
+        }
+
         int read() {
             if (currentIndex >= indexEnd) {
                 return -1;
             } else {
-                byte ret = data[currentIndex];
+                byte ret = data != null ? data[currentIndex] : byteBuffer.get(currentIndex);
                 currentIndex++;
                 return ret & 0xff;
             }
         }
 
+        /*
+         * Writes the remaining data into the end of line buffer. The write stops after the end of line sequence.
+         * Returns true if the end of line sequence has been found.
+         */
+        boolean write(final EndOfLineBuffer endOfLineBuffer) {
+            if (currentIndex >= indexEnd) {
+                return false;
+            }
+            final int length = Math.min(indexEnd - currentIndex, maxWriteLength);
+            if (data != null) {
+                currentIndex += endOfLineBuffer.write(data, currentIndex, length);
+            } else {
+                currentIndex += endOfLineBuffer.write(byteBuffer, currentIndex, length);
+            }
+            return endOfLineBuffer.isEndOfLine();
+        }
+
+        /*
+         * Copies up to maxLength bytes of the remaining data to the output stream, without processing them.
+         * Returns the number of bytes copied.
+         */
+        int copy(final OutputStream outputStream, final long maxLength) throws IOException {
+            final int length = (int) Math.min(Math.min(indexEnd - currentIndex, maxWriteLength), maxLength);
+            if (length <= 0) {
+                return 0;
+            }
+            if (data != null) {
+                outputStream.write(data, currentIndex, length);
+            } else {
+                if (copyBuffer == null) {
+                    copyBuffer = new byte[COPY_BUFFER_SIZE];
+                }
+                final ByteBuffer source = byteBuffer.duplicate();
+                source.position(currentIndex);
+                int copied = 0;
+                while (copied < length) {
+                    final int chunk = Math.min(length - copied, copyBuffer.length);
+                    source.get(copyBuffer, 0, chunk);
+                    outputStream.write(copyBuffer, 0, chunk);
+                    copied += chunk;
+                }
+            }
+            currentIndex += length;
+            return length;
+        }
+
+        /*
+         * Consumes all the remaining data without processing it.
+         */
+        void skip() {
+            currentIndex = indexEnd;
+            finished = true;
+        }
+
         void setNotFinished() {
             finished = false;
         }
@@ -158,6 +281,8 @@ public class NioMultipartParser extends OutputStream implements Disposable {
         READ_HEADERS,
         GET_READY_FOR_BODY,
         READ_BODY,
+        READ_SIZED_BODY,
+        VERIFY_SIZED_BODY_DELIMITER,
         IDENTIFY_BODY_DELIMITER,
         PART_COMPLETE,
         GET_READY_FOR_NESTED_MULTIPART,
@@ -170,12 +295,22 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     /*
      * The multipart context. Content-Type, Content-Length and Char Cncoding
      */
-    final MultipartContext multipartContext;
+    volatile MultipartContext multipartContext;
 
     /*
      * Listener to notify
      */
-    final NioMultipartParserListener nioMultipartParserListener;
+    volatile NioMultipartParserListener nioMultipartParserListener;
+
+    /*
+     * The listener, if it is a streaming listener. Null otherwise.
+     */
+    volatile NioMultipartParserStreamingListener streamingListener;
+
+    /*
+     * Output stream streaming the part body data to the streaming listener
+     */
+    final OutputStream partDataOutputStream = new PartDataOutputStream();
 
     /*
      * Factory that will be used to get an OutputStream where to store a multipart body and retrieve its related
@@ -186,18 +321,53 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     /*
      * A reusable buffer to identify when a preamble, part section or headers section is finished.
      */
-    final EndOfLineBuffer endOfLineBuffer;
+    volatile EndOfLineBuffer endOfLineBuffer;
+
+    /*
+     * The buffer size requested. The actual size of the end of line buffer is the buffer size plus the delimiter length.
+     */
+    final int bufferSize;
 
     /**
-     * A reusable in memory output stream to process the headers
+     * A reusable tokenizer parsing the headers as they are flushed by the end of line buffer
      */
-    final ByteArrayOutputStream headersByteArrayOutputStream;
+    final HeadersTokenizer headersTokenizer;
 
     /**
      * Controls how many nested multipart request can be processed.
      */
     final int maxLevelOfNestedMultipart;
 
+    /*
+     * If true the body data is written directly from the written data to the part body stream storage. See {@link EndOfLineBuffer#recycle(byte[], OutputStream, boolean)}
+     */
+    final boolean bodyPassThrough;
+
+    /*
+     * If true the body of the parts declaring a Content-Length is copied without scanning it for the delimiter.
+     */
+    final boolean trustContentLength;
+
+    /*
+     * The budget where the memory of the buffers is reserved, if any.
+     */
+    final MemoryBudget memoryBudget;
+
+    /*
+     * The number of bytes currently reserved on the memory budget.
+     */
+    volatile long reservedMemory = 0;
+
+    /*
+     * The number of bytes still to copy of a part body having a trusted Content-Length.
+     */
+    volatile long sizedBodyRemaining = 0;
+
+    /*
+     * The number of delimiter bytes already verified after a part body having a trusted Content-Length.
+     */
+    volatile int sizedBodyDelimiterIndex = 0;
+
     /*
     * Allows to identify the delimiter type
     */
@@ -246,6 +416,41 @@ public class NioMultipartParser extends OutputStream implements Disposable {
      */
     volatile AtomicBoolean closed = new AtomicBoolean(false);
 
+    /*
+     * The pool the parser belongs to, if any. The parser is given back to the pool when disposed.
+     */
+    volatile NioMultipartParserPool pool = null;
+
+    /*
+     * True while the parser is idle in the pool. Guards against giving back the parser twice.
+     */
+    final AtomicBoolean pooled = new AtomicBoolean(false);
+
+    /*
+     * The number of bytes of the stream parsed so far.
+     */
+    volatile long streamPosition = 0;
+
+    /*
+     * The raw capture of the stream, if enabled. See {@link #setRawCapture(RawCapture)}
+     */
+    volatile RawCapture rawCapture = null;
+
+    /*
+     * The offset in the stream of the headers of the current part.
+     */
+    volatile long partHeadersOffset = 0;
+
+    /*
+     * True if the intake of data has been paused. See {@link #pause()}
+     */
+    final AtomicBoolean paused = new AtomicBoolean(false);
+
+    /*
+     * Notified when a paused parser is resumed.
+     */
+    volatile Runnable demandCallback = null;
+
     // ------------
     // Constructors
     // ------------
@@ -303,6 +508,88 @@ public class NioMultipartParser extends OutputStream implements Disposable {
                               final int bufferSize,
                               final int maxHeadersSectionSize,
                               final int maxLevelOfNestedMultipart) {
+        this(multipartContext, nioMultipartParserListener, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart, false);
+    }
+
+    /**
+     * <p> Constructs a {@code NioMultipartParser} allowing to enable the body pass-through mode.
+     *     In pass-through mode the body data that is surely not part of a delimiter is written to the part body {@code StreamStorage}
+     *     directly from the {@code byte[]} passed to {@link #write(byte[], int, int)} (or backing the {@code ByteBuffer} passed to {@link #write(ByteBuffer)}),
+     *     without copying it into the internal buffer first. Only the bytes that might be the beginning of a delimiter are kept in the buffer between two writes.
+     *     The pass-through mode is recommended for big bodies, but it results in more (and smaller) writes to the {@code StreamStorage} when the data
+     *     is written in small chunks.
+     *
+     * @param multipartContext The multipart context
+     * @param nioMultipartParserListener The listener that will be notified
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use.
+     * @param bufferSize The buffer size, a strictly positive integer.
+     *                   The actual buffer size used will be {@link MultipartUtils#getBoundary(String)} + 5 + bufferSize.
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param bodyPassThrough true to enable the body pass-through mode.
+     */
+    public NioMultipartParser(final MultipartContext multipartContext,
+                              final NioMultipartParserListener nioMultipartParserListener,
+                              final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                              final int bufferSize,
+                              final int maxHeadersSectionSize,
+                              final int maxLevelOfNestedMultipart,
+                              final boolean bodyPassThrough) {
+        this(multipartContext, nioMultipartParserListener, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart, bodyPassThrough, false);
+    }
+
+    /**
+     * <p> Constructs a {@code NioMultipartParser} allowing to enable the body pass-through and the trusted Content-Length modes.
+     *     In trusted Content-Length mode, the body of a part declaring its size via the {@code Content-Length} header is not scanned for the delimiter:
+     *     exactly {@code Content-Length} bytes are copied to the part body {@code StreamStorage} and the parser only verifies that the delimiter follows.
+     *     If it does not, the parser notifies an error. The mode should be enabled only if the clients are known to send correct part sizes.
+     *
+     * @param multipartContext The multipart context
+     * @param nioMultipartParserListener The listener that will be notified
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use.
+     * @param bufferSize The buffer size, a strictly positive integer.
+     *                   The actual buffer size used will be {@link MultipartUtils#getBoundary(String)} + 5 + bufferSize.
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param bodyPassThrough true to enable the body pass-through mode.
+     * @param trustContentLength true to enable the trusted Content-Length mode.
+     */
+    public NioMultipartParser(final MultipartContext multipartContext,
+                              final NioMultipartParserListener nioMultipartParserListener,
+                              final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                              final int bufferSize,
+                              final int maxHeadersSectionSize,
+                              final int maxLevelOfNestedMultipart,
+                              final boolean bodyPassThrough,
+                              final boolean trustContentLength) {
+        this(multipartContext, nioMultipartParserListener, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart, bodyPassThrough, trustContentLength, null);
+    }
+
+    /**
+     * <p> Constructs a {@code NioMultipartParser} reserving the memory of its buffers on a {@code MemoryBudget}.
+     *     The memory is reserved when the parser is created (or reset) and released when it is closed.
+     *     The buffers are needed to parse the stream, so they are reserved even if the budget is exhausted.
+     *
+     * @param multipartContext The multipart context
+     * @param nioMultipartParserListener The listener that will be notified
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use.
+     * @param bufferSize The buffer size, a strictly positive integer.
+     *                   The actual buffer size used will be {@link MultipartUtils#getBoundary(String)} + 5 + bufferSize.
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param bodyPassThrough true to enable the body pass-through mode.
+     * @param trustContentLength true to enable the trusted Content-Length mode.
+     * @param memoryBudget The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     */
+    public NioMultipartParser(final MultipartContext multipartContext,
+                              final NioMultipartParserListener nioMultipartParserListener,
+                              final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                              final int bufferSize,
+                              final int maxHeadersSectionSize,
+                              final int maxLevelOfNestedMultipart,
+                              final boolean bodyPassThrough,
+                              final boolean trustContentLength,
+                              final MemoryBudget memoryBudget) {
 
         if (bufferSize <= 0){
             throw new IllegalArgumentException("The buffer size must be grater than 0. Size specified: " + bufferSize);
@@ -310,16 +597,16 @@ public class NioMultipartParser extends OutputStream implements Disposable {
 
         this.multipartContext = multipartContext;
         this.nioMultipartParserListener = nioMultipartParserListener;
+        this.streamingListener = streamingListener(nioMultipartParserListener);
         final byte[] delimiterPrefix = getDelimiterPrefix(multipartContext.getContentType());
         final int actualBufferSize = delimiterPrefix.length + bufferSize;
         this.delimiterPrefixes.push(delimiterPrefix);
         this.maxLevelOfNestedMultipart = maxLevelOfNestedMultipart;
+        this.bodyPassThrough = bodyPassThrough;
+        this.trustContentLength = trustContentLength;
+        this.bufferSize = bufferSize;
 
-        if (maxHeadersSectionSize == -1) {
-            this.headersByteArrayOutputStream = new ByteArrayOutputStream();
-        } else {
-            this.headersByteArrayOutputStream = new FixedSizeByteArrayOutputStream(maxHeadersSectionSize);
-        }
+        this.headersTokenizer = new HeadersTokenizer(multipartContext.getCharEncoding(), maxHeadersSectionSize);
 
         if (partBodyStreamStorageFactory != null) {
             this.partBodyStreamStorageFactory = partBodyStreamStorageFactory;
@@ -329,14 +616,79 @@ public class NioMultipartParser extends OutputStream implements Disposable {
 
         // At the beginning set up the endOfLineBuffer to skip the preamble.
         this.endOfLineBuffer = new EndOfLineBuffer(actualBufferSize, getPreambleDelimiterPrefix(delimiterPrefixes.peek()), null);
+
+        this.memoryBudget = memoryBudget;
+        reserveMemory();
+    }
+
+    /**
+     * <p> Resets the parser so that it can be reused to parse a new multipart stream, with the same configuration.
+     *     The buffers allocated by the parser are recycled. The parser should be closed (or disposed) before being reset.
+     *     The part body {@code StreamStorage}s created by the parser are not affected.
+     *
+     * @param multipartContext The multipart context of the new multipart stream
+     * @param nioMultipartParserListener The listener that will be notified
+     */
+    public void reset(final MultipartContext multipartContext, final NioMultipartParserListener nioMultipartParserListener) {
+
+        final byte[] delimiterPrefix = getDelimiterPrefix(multipartContext.getContentType());
+
+        this.multipartContext = multipartContext;
+        this.nioMultipartParserListener = nioMultipartParserListener;
+        this.streamingListener = streamingListener(nioMultipartParserListener);
+        this.delimiterPrefixes.clear();
+        this.delimiterPrefixes.push(delimiterPrefix);
+        this.delimiterType.reset();
+        this.fsmTransitions.clear();
+        this.headersTokenizer.reset(multipartContext.getCharEncoding());
+
+        // The end of line buffer is reallocated only if the new delimiter does not fit.
+        final int actualBufferSize = delimiterPrefix.length + bufferSize;
+        if (actualBufferSize > endOfLineBuffer.getBufferSize()) {
+            this.endOfLineBuffer = new EndOfLineBuffer(actualBufferSize, getPreambleDelimiterPrefix(delimiterPrefix), null);
+        } else {
+            this.endOfLineBuffer.recycle(getPreambleDelimiterPrefix(delimiterPrefix), null);
+        }
+
+        this.currentState = State.SKIP_PREAMBLE;
+        this.partBodyStreamStorage = null;
+        this.headers = null;
+        this.partIndex = 1;
+        this.sizedBodyRemaining = 0;
+        this.sizedBodyDelimiterIndex = 0;
+        this.streamPosition = 0;
+        this.rawCapture = null;
+        this.partHeadersOffset = 0;
+        this.paused.set(false);
+        this.demandCallback = null;
+        this.closed.set(false);
+        reserveMemory();
     }
 
     @Override
     public void close() throws IOException {
         if (closed.compareAndSet(false, true)) {
+            releaseMemory();
             if (partBodyStreamStorage != null) {
                 partBodyStreamStorage.close();
             }
+            if (rawCapture != null) {
+                rawCapture.trim();
+            }
+        }
+    }
+
+    void reserveMemory() {
+        if (memoryBudget != null && reservedMemory == 0) {
+            reservedMemory = endOfLineBuffer.getBufferSize() + Math.max(headersTokenizer.getMaxSize(), 0);
+            memoryBudget.reserve(reservedMemory);
+        }
+    }
+
+    void releaseMemory() {
+        if (memoryBudget != null && reservedMemory != 0) {
+            memoryBudget.release(reservedMemory);
+            reservedMemory = 0;
         }
     }
 
@@ -347,10 +699,15 @@ public class NioMultipartParser extends OutputStream implements Disposable {
         } catch(IOException e) {
             // Do nothing
         }
+        boolean disposed = true;
         if (partBodyStreamStorage != null) {
-            return partBodyStreamStorage.dispose();
+            disposed = partBodyStreamStorage.dispose();
         }
-        return true;
+        final NioMultipartParserPool pool = this.pool;
+        if (pool != null && pooled.compareAndSet(false, true)) {
+            pool.release(this);
+        }
+        return disposed;
     }
 
     @Override
@@ -372,6 +729,196 @@ public class NioMultipartParser extends OutputStream implements Disposable {
 
     @Override
     public void write(byte[] data, int indexStart, int indexEnd) {
+        if (checkWrite(data, indexStart, indexEnd)) {
+            wCtx.init(indexStart, indexEnd, data, false);
+            process(false);
+        }
+    }
+
+    /**
+     * <p> Writes the remaining bytes of a {@code ByteBuffer}. Both heap and direct buffers are parsed in place, without copying them
+     *     into an intermediate {@code byte[]}. The position of the buffer is advanced by the number of bytes consumed, which is
+     *     all the remaining bytes unless the parser encounters an error.
+     *
+     * @param data The data to write.
+     */
+    public void write(final ByteBuffer data) {
+        if (checkWrite(data)) {
+            wCtx.init(data, false);
+            try {
+                process(false);
+            } finally {
+                data.position(wCtx.byteBufferPosition(data));
+            }
+        }
+    }
+
+    /**
+     * <p> Non blocking version of {@link #write(byte[], int, int)}. The parser consumes the data until it is paused (see {@link #pause()})
+     *     and returns the number of bytes accepted. The bytes not accepted must be offered again, in the same order, when the parser
+     *     is writable again.
+     *
+     * <p> The pause takes effect when the parser moves to the next step of the parsing (for example after a part has been notified to the listener
+     *     or after a chunk of body has been flushed to the storage), so the bytes already being processed are accepted.
+     *     If the parser is paused when the method is called, no bytes are accepted.
+     *
+     * @param data The data to write.
+     * @param offset The index of the first byte to write.
+     * @param length The number of bytes to write.
+     * @return The number of bytes accepted.
+     */
+    public int offer(final byte[] data, final int offset, final int length) {
+        if (data != null && (offset < 0 || length < 0)) {
+            goToState(State.ERROR);
+            throw new IllegalArgumentException("Offset and length cannot be negative. Offset: " + offset + ", Length: " + length);
+        }
+        if (!checkWrite(data, offset, offset + length) || paused.get()) {
+            return 0;
+        }
+        wCtx.init(offset, offset + length, data, false);
+        process(true);
+        return wCtx.currentIndex - offset;
+    }
+
+    /**
+     * <p> Non blocking version of {@link #write(ByteBuffer)}. The parser consumes the data until it is paused (see {@link #pause()})
+     *     and the position of the buffer is advanced by the number of bytes accepted. The remaining bytes must be offered again
+     *     when the parser is writable again.
+     *
+     * @param data The data to write.
+     * @return The number of bytes accepted.
+     */
+    public int offer(final ByteBuffer data) {
+        if (!checkWrite(data) || paused.get()) {
+            return 0;
+        }
+        final int position = data.position();
+        wCtx.init(data, false);
+        try {
+            process(true);
+        } finally {
+            data.position(wCtx.byteBufferPosition(data));
+        }
+        return data.position() - position;
+    }
+
+    /**
+     * <p> Reads the next chunk of data from the channel and parses it. The {@code ByteBuffer} is used to read the data from the channel,
+     *     its content is discarded.
+     *
+     * <p> When the parser is reading the body of a part having a trusted {@code Content-Length} (see
+     *     {@link #NioMultipartParser(MultipartContext, NioMultipartParserListener, PartBodyStreamStorageFactory, int, int, int, boolean, boolean)})
+     *     and the part is stored in a {@link ChannelFileStreamStorage}, the body is transferred from the channel to the file via
+     *     {@link java.nio.channels.FileChannel#transferFrom(ReadableByteChannel, long, long)}, without being copied into the buffer.
+     *
+     * @param channel The channel to read from.
+     * @param buffer The buffer used to read the data that is not transferred.
+     * @return The number of bytes read from the channel, possibly zero, or -1 if the channel has reached the end of the stream.
+     * @throws IOException if an I/O error occurs
+     */
+    public long readFrom(final ReadableByteChannel channel, final ByteBuffer buffer) throws IOException {
+
+        if (closed.get()){
+            throw new IllegalStateException("Cannot write, the parser is closed.");
+        }
+
+        if (currentState == State.READ_SIZED_BODY && sizedBodyRemaining > 0 && partBodyStreamStorage instanceof ChannelFileStreamStorage) {
+            final long transferred;
+            try {
+                transferred = ((ChannelFileStreamStorage) partBodyStreamStorage).transferFrom(channel, sizedBodyRemaining);
+            } catch (IOException e) {
+                goToState(State.ERROR);
+                nioMultipartParserListener.onError("Unable to read/write the body data", e);
+                throw e;
+            }
+            if (transferred > 0) {
+                streamPosition += transferred;
+                sizedBodyRemaining -= transferred;
+                if (sizedBodyRemaining == 0) {
+                    sizedBodyDelimiterIndex = 0;
+                    goToState(State.VERIFY_SIZED_BODY_DELIMITER);
+                }
+                return transferred;
+            }
+            // Nothing transferred: either no data is available or the end of the stream has been reached. The read tells.
+        }
+
+        buffer.clear();
+        final int read = channel.read(buffer);
+        if (read > 0) {
+            buffer.flip();
+            write(buffer);
+        }
+        return read;
+    }
+
+    /**
+     * <p> Pauses the parser. While paused the parser does not accept data via {@link #offer(byte[], int, int)} or {@link #offer(ByteBuffer)}
+     *     and {@link #isWritable()} returns false. The blocking {@code write} methods are not affected and keep consuming all the data.
+     *
+     * <p> The method is meant to be called by the listener or by the part body storage (for example when the disk is saturated) to stop the intake
+     *     of data until they have drained. Adapters should stop reading from the source until the parser is resumed.
+     */
+    public void pause() {
+        paused.set(true);
+    }
+
+    /**
+     * <p> Resumes a paused parser. If the parser was paused, the demand callback (see {@link #setDemandCallback(Runnable)}) is notified.
+     */
+    public void resume() {
+        if (paused.compareAndSet(true, false)) {
+            final Runnable demandCallback = this.demandCallback;
+            if (demandCallback != null) {
+                demandCallback.run();
+            }
+        }
+    }
+
+    /**
+     * <p> Enables the raw capture mode: the bytes of the stream are appended to the {@code RawCapture} before being parsed, and the part
+     *     bodies are not copied to the {@code StreamStorage}s of the {@code PartBodyStreamStorageFactory}. Each part body is notified as a
+     *     {@link RawPartStreamStorage}, a view over the capture recording the offsets of the part headers and body.
+     *     It must be set before the first byte is written. The capture is disabled when the parser is reset.
+     *     If the {@code Content-Length} of the request is known, the capture is preallocated and it is trimmed when the parser is closed.
+     *
+     * @param rawCapture The {@code RawCapture} or null to disable the raw capture.
+     */
+    public void setRawCapture(final RawCapture rawCapture) {
+        if (streamPosition > 0) {
+            throw new IllegalStateException("The raw capture must be set before writing any data");
+        }
+        if (rawCapture != null) {
+            try {
+                rawCapture.preallocate(multipartContext.getContentLength());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to preallocate the raw capture", e);
+            }
+        }
+        this.rawCapture = rawCapture;
+    }
+
+    /**
+     * <p> Returns true if the parser is willing to accept more data, false if the parser is paused, closed or in an error state.
+     *
+     * @return true if the parser is willing to accept more data.
+     */
+    public boolean isWritable() {
+        return !paused.get() && !closed.get() && currentState != State.ERROR;
+    }
+
+    /**
+     * <p> Sets the callback notified when a paused parser is resumed, that is when there is demand for data again.
+     *     The callback runs on the thread calling {@link #resume()}.
+     *
+     * @param demandCallback The callback or null to remove it.
+     */
+    public void setDemandCallback(final Runnable demandCallback) {
+        this.demandCallback = demandCallback;
+    }
+
+    // Validates the data, returns false if there is nothing to write
+    boolean checkWrite(final byte[] data, final int indexStart, final int indexEnd) {
 
         if (closed.get()){
             throw new IllegalStateException("Cannot write, the parser is closed.");
@@ -383,7 +930,7 @@ public class NioMultipartParser extends OutputStream implements Disposable {
         }
 
         if (data.length == 0) {
-            return;
+            return false;
         }
 
         if (indexEnd < indexStart) {
@@ -401,8 +948,62 @@ public class NioMultipartParser extends OutputStream implements Disposable {
             throw new IllegalArgumentException("The end index cannot be greater than the size of the data. End index: " + indexEnd + ", Data length: " + data.length);
         }
 
-        wCtx.init(indexStart, indexEnd, data, false);
-        while (!wCtx.finished) {
+        return true;
+    }
+
+    // Validates the data, returns false if there is nothing to write
+    boolean checkWrite(final ByteBuffer data) {
+
+        if (closed.get()){
+            throw new IllegalStateException("Cannot write, the parser is closed.");
+        }
+
+        if (data == null) {
+            goToState(State.ERROR);
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+
+        return data.hasRemaining();
+    }
+
+    // Runs the FSM on the data held by the write context. If stopWhenPaused is true, the processing stops as soon as the parser is paused.
+    void process(final boolean stopWhenPaused) {
+        // When the processing can be paused, the data is processed in steps of at most one buffer, so that a pause requested
+        // while the data is flushed (for example by a slow storage) is honoured before the rest of the chunk is consumed.
+        wCtx.maxWriteLength = stopWhenPaused ? bufferSize : Integer.MAX_VALUE;
+        wCtx.startPosition = streamPosition;
+        wCtx.startIndex = wCtx.currentIndex;
+        if (rawCapture != null && !captureRaw(wCtx)) {
+            return;
+        }
+        try {
+            processSteps(stopWhenPaused);
+        } finally {
+            streamPosition = wCtx.position();
+        }
+    }
+
+    // Appends the data to the raw capture. The data not accepted by a previous offer has been already captured.
+    boolean captureRaw(final WriteContext wCtx) {
+        final RawCapture rawCapture = this.rawCapture;
+        final long alreadyCaptured = rawCapture.size() - streamPosition;
+        final int remaining = wCtx.indexEnd - wCtx.currentIndex;
+        if (alreadyCaptured >= remaining) {
+            return true;
+        }
+        try {
+            rawCapture.append(wCtx.remainingData((int) alreadyCaptured));
+            return true;
+        } catch (IOException e) {
+            goToState(State.ERROR);
+            nioMultipartParserListener.onError("Unable to capture the raw data", e);
+            wCtx.setFinished();
+            return false;
+        }
+    }
+
+    void processSteps(final boolean stopWhenPaused) {
+        while (!wCtx.finished && !(stopWhenPaused && paused.get())) {
             switch (currentState) {
 
                 case SKIP_PREAMBLE:
@@ -429,6 +1030,14 @@ public class NioMultipartParser extends OutputStream implements Disposable {
                     readBody(wCtx);
                     break;
 
+                case READ_SIZED_BODY:
+                    readSizedBody(wCtx);
+                    break;
+
+                case VERIFY_SIZED_BODY_DELIMITER:
+                    verifySizedBodyDelimiter(wCtx);
+                    break;
+
                 case IDENTIFY_BODY_DELIMITER:
                     identifyBodyDelimiter(wCtx);
                     break;
@@ -473,59 +1082,64 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     }
 
     void skipPreamble(final WriteContext wCtx) {
-        int byteOfData;
-        while ((byteOfData = wCtx.read()) != -1) {
-            if (endOfLineBuffer.write((byte)byteOfData)) {
-                goToState(State.IDENTIFY_PREAMBLE_DELIMITER);
-                wCtx.setFinishedIfNoMoreData();
-                return;
-            }
+        if (wCtx.write(endOfLineBuffer)) {
+            goToState(State.IDENTIFY_PREAMBLE_DELIMITER);
         }
         wCtx.setFinishedIfNoMoreData();
     }
 
     void getReadyForHeaders(final WriteContext wCtx) {
-        headersByteArrayOutputStream.reset();
-        endOfLineBuffer.recycle(HEADER_DELIMITER, headersByteArrayOutputStream);
-        headers = new HashMap<String, List<String>>();
+        partHeadersOffset = wCtx.position();
+        headersTokenizer.reset();
+        endOfLineBuffer.recycle(HEADER_DELIMITER, headersTokenizer);
         goToState(State.READ_HEADERS);
         wCtx.setFinishedIfNoMoreData();
     }
 
 
     void readHeaders(final WriteContext wCtx) {
-        int byteOfData;
-        while ((byteOfData = wCtx.read()) != -1) {
-            if (endOfLineBuffer.write((byte)byteOfData)) {
-                parseHeaders();
-                String contentType = MultipartUtils.getHeader(MultipartUtils.CONTENT_TYPE, headers);
-                if (MultipartUtils.isMultipart(contentType)) {
-                    goToState(State.GET_READY_FOR_NESTED_MULTIPART);
-                } else {
-                    goToState(State.GET_READY_FOR_BODY);
-                }
-                wCtx.setFinishedIfNoMoreData();
-                return;
+        if (wCtx.write(endOfLineBuffer) && parseHeaders()) {
+            if (MultipartUtils.hasMultipartContentType(headers)) {
+                goToState(State.GET_READY_FOR_NESTED_MULTIPART);
+            } else {
+                goToState(State.GET_READY_FOR_BODY);
             }
         }
         wCtx.setFinishedIfNoMoreData();
     }
 
-    void parseHeaders() {
+    boolean parseHeaders() {
         try {
-            headers = HeadersParser.parseHeaders(new ByteArrayInputStream(headersByteArrayOutputStream.toByteArray()), multipartContext.getCharEncoding());
-            headersByteArrayOutputStream.reset();
+            headers = new PartHeaders(headersTokenizer.finish());
+            return true;
         } catch (Exception e) {
             goToState(State.ERROR);
             nioMultipartParserListener.onError("Error parsing the part headers", e);
+            return false;
         }
     }
 
     void getReadyForBody(final WriteContext wCtx) {
-        partBodyStreamStorage = partBodyStreamStorageFactory.newStreamStorageForPartBody(headers, partIndex);
-        endOfLineBuffer.recycle(delimiterPrefixes.peek(), partBodyStreamStorage);
+        if (streamingListener != null) {
+            endOfLineBuffer.recycle(delimiterPrefixes.peek(), partDataOutputStream, bodyPassThrough);
+            streamingListener.onPartStarted(headers);
+        } else {
+            final RawCapture rawCapture = this.rawCapture;
+            if (rawCapture != null) {
+                partBodyStreamStorage = new RawPartStreamStorage(rawCapture, partHeadersOffset, wCtx.position());
+            } else {
+                partBodyStreamStorage = partBodyStreamStorageFactory.newStreamStorageForPartBody(headers, partIndex);
+            }
+            endOfLineBuffer.recycle(delimiterPrefixes.peek(), partBodyStreamStorage, bodyPassThrough);
+        }
         delimiterType.reset();
-        goToState(State.READ_BODY);
+        final long contentLength = trustContentLength ? MultipartUtils.getContentLength(headers) : -1;
+        if (contentLength >= 0) {
+            sizedBodyRemaining = contentLength;
+            goToState(State.READ_SIZED_BODY);
+        } else {
+            goToState(State.READ_BODY);
+        }
         wCtx.setFinishedIfNoMoreData();
     }
 
@@ -534,7 +1148,7 @@ public class NioMultipartParser extends OutputStream implements Disposable {
             goToState(State.ERROR);
             nioMultipartParserListener.onError("Reached maximum number of nested multiparts: " + maxLevelOfNestedMultipart, null);
         } else {
-            byte[] delimiter = getDelimiterPrefix(MultipartUtils.getHeader(MultipartUtils.CONTENT_TYPE, headers));
+            byte[] delimiter = getDelimiterPrefix(MultipartUtils.getContentType(headers));
             delimiterType.reset();
             delimiterPrefixes.push(delimiter);
             endOfLineBuffer.recycle(getPreambleDelimiterPrefix(delimiter), null);
@@ -545,13 +1159,44 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     }
 
     void readBody(final WriteContext wCtx) {
+        if (wCtx.write(endOfLineBuffer)) {
+            goToState(State.IDENTIFY_BODY_DELIMITER);
+        }
+        wCtx.setFinishedIfNoMoreData();
+    }
+
+    void readSizedBody(final WriteContext wCtx) {
+        if (sizedBodyRemaining > 0) {
+            try {
+                sizedBodyRemaining -= wCtx.copy(streamingListener != null ? partDataOutputStream : partBodyStreamStorage, sizedBodyRemaining);
+            } catch (Exception e) {
+                goToState(State.ERROR);
+                nioMultipartParserListener.onError("Unable to read/write the body data", e);
+                wCtx.setFinished();
+                return;
+            }
+        }
+        if (sizedBodyRemaining == 0) {
+            sizedBodyDelimiterIndex = 0;
+            goToState(State.VERIFY_SIZED_BODY_DELIMITER);
+        }
+        wCtx.setFinishedIfNoMoreData();
+    }
+
+    void verifySizedBodyDelimiter(final WriteContext wCtx) {
+        final byte[] delimiterPrefix = delimiterPrefixes.peek();
         int byteOfData;
-        while ((byteOfData = wCtx.read()) != -1) {
-            if (endOfLineBuffer.write((byte)byteOfData)) {
-                goToState(State.IDENTIFY_BODY_DELIMITER);
-                wCtx.setFinishedIfNoMoreData();
+        while (sizedBodyDelimiterIndex < delimiterPrefix.length && (byteOfData = wCtx.read()) != -1) {
+            if ((byte) byteOfData != delimiterPrefix[sizedBodyDelimiterIndex]) {
+                goToState(State.ERROR);
+                nioMultipartParserListener.onError("The body of the part does not match its Content-Length: the delimiter does not follow", null);
+                wCtx.setFinished();
                 return;
             }
+            sizedBodyDelimiterIndex++;
+        }
+        if (sizedBodyDelimiterIndex == delimiterPrefix.length) {
+            goToState(State.IDENTIFY_BODY_DELIMITER);
         }
         wCtx.setFinishedIfNoMoreData();
     }
@@ -607,13 +1252,15 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     void partComplete(final WriteContext wCtx){
 
         // First flush the output stream and close it...
-        try{
-            partBodyStreamStorage.flush();
-            partBodyStreamStorage.close();
-        }catch (Exception e){
-            goToState(State.ERROR);
-            nioMultipartParserListener.onError("Unable to read/write the body data", e);
-            return;
+        if (streamingListener == null) {
+            try {
+                partBodyStreamStorage.flush();
+                partBodyStreamStorage.close();
+            } catch (Exception e) {
+                goToState(State.ERROR);
+                nioMultipartParserListener.onError("Unable to read/write the body data", e);
+                return;
+            }
         }
 
         // Switch state
@@ -627,7 +1274,11 @@ public class NioMultipartParser extends OutputStream implements Disposable {
             goToState(State.GET_READY_FOR_HEADERS);
         }
 
-        nioMultipartParserListener.onPartFinished(partBodyStreamStorage, headers);
+        if (streamingListener != null) {
+            streamingListener.onPartEnd();
+        } else {
+            nioMultipartParserListener.onPartFinished(partBodyStreamStorage, headers);
+        }
 
         partIndex++;
         wCtx.setFinishedIfNoMoreData();
@@ -644,7 +1295,14 @@ public class NioMultipartParser extends OutputStream implements Disposable {
     }
 
     void skipEpilogue(final WriteContext wCtx){
-        wCtx.setFinished();
+        wCtx.skip();
+    }
+
+    static NioMultipartParserStreamingListener streamingListener(final NioMultipartParserListener nioMultipartParserListener) {
+        if (nioMultipartParserListener instanceof NioMultipartParserStreamingListener) {
+            return (NioMultipartParserStreamingListener) nioMultipartParserListener;
+        }
+        return null;
     }
 
     static byte[] getPreambleDelimiterPrefix(final byte[] delimiterPrefix){
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.*;
+
+/**
+ * <p> A bounded pool of {@link NioMultipartParser}s sharing the same configuration.
+ *     Reusing the parsers saves the allocation of their buffers for every multipart stream processed.
+ *
+ * <p> A parser is obtained via {@link #acquire(MultipartContext, NioMultipartParserListener)}. If there are no idle parsers in the pool
+ *     a new one is created. The parser is automatically given back to the pool when it is disposed via {@link NioMultipartParser#dispose()}
+ *     and it must not be used by the client after that. If the pool is full the parser is discarded.
+ *
+ * <p> The pool is thread safe.
+ *
+ * @author Silvano Riz.
+ */
+public class NioMultipartParserPool {
+
+    /**
+     * The default max number of idle parsers kept in the pool.
+     */
+    public static final int DEFAULT_MAX_IDLE_PARSERS = 64;
+
+    final BlockingQueue<NioMultipartParser> idleParsers;
+    final PartBodyStreamStorageFactory partBodyStreamStorageFactory;
+    final int bufferSize;
+    final int maxHeadersSectionSize;
+    final int maxLevelOfNestedMultipart;
+    final boolean bodyPassThrough;
+    final boolean trustContentLength;
+    final MemoryBudget memoryBudget;
+
+    /**
+     * <p> Constructs a {@code NioMultipartParserPool} of parsers with the default configuration.
+     *
+     * @param maxIdleParsers The max number of idle parsers kept in the pool.
+     */
+    public NioMultipartParserPool(final int maxIdleParsers) {
+        this(maxIdleParsers, null, DEFAULT_BUFFER_SIZE, DEFAULT_HEADERS_SECTION_SIZE, DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, false);
+    }
+
+    /**
+     * <p> Constructs a {@code NioMultipartParserPool}.
+     *
+     * @param maxIdleParsers The max number of idle parsers kept in the pool.
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use or null for the default one.
+     *                                     It is shared by all the parsers of the pool, so it must be thread safe.
+     * @param bufferSize The buffer size, a strictly positive integer.
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param bodyPassThrough true to enable the body pass-through mode.
+     */
+    public NioMultipartParserPool(final int maxIdleParsers,
+                                  final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                                  final int bufferSize,
+                                  final int maxHeadersSectionSize,
+                                  final int maxLevelOfNestedMultipart,
+                                  final boolean bodyPassThrough) {
+        this(maxIdleParsers, partBodyStreamStorageFactory, bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart, bodyPassThrough, false, null);
+    }
+
+    /**
+     * <p> Constructs a {@code NioMultipartParserPool} whose parsers reserve the memory of their buffers on a {@code MemoryBudget}.
+     *     A parser reserves the memory when it is acquired and releases it when it is closed, so the idle parsers are not counted.
+     *
+     * @param maxIdleParsers The max number of idle parsers kept in the pool.
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use or null for the default one.
+     *                                     It is shared by all the parsers of the pool, so it must be thread safe.
+     * @param bufferSize The buffer size, a strictly positive integer.
+     * @param maxHeadersSectionSize The max size of the headers section
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param bodyPassThrough true to enable the body pass-through mode.
+     * @param trustContentLength true to enable the trusted Content-Length mode.
+     * @param memoryBudget The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     */
+    public NioMultipartParserPool(final int maxIdleParsers,
+                                  final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                                  final int bufferSize,
+                                  final int maxHeadersSectionSize,
+                                  final int maxLevelOfNestedMultipart,
+                                  final boolean bodyPassThrough,
+                                  final boolean trustContentLength,
+                                  final MemoryBudget memoryBudget) {
+        if (maxIdleParsers < 1) {
+            throw new IllegalArgumentException("The max number of idle parsers must be grater than 0. Specified: " + maxIdleParsers);
+        }
+        if (bufferSize <= 0){
+            throw new IllegalArgumentException("The buffer size must be grater than 0. Size specified: " + bufferSize);
+        }
+        this.idleParsers = new ArrayBlockingQueue<NioMultipartParser>(maxIdleParsers);
+        this.partBodyStreamStorageFactory = partBodyStreamStorageFactory != null ? partBodyStreamStorageFactory : new DefaultPartBodyStreamStorageFactory();
+        this.bufferSize = bufferSize;
+        this.maxHeadersSectionSize = maxHeadersSectionSize;
+        this.maxLevelOfNestedMultipart = maxLevelOfNestedMultipart;
+        this.bodyPassThrough = bodyPassThrough;
+        this.trustContentLength = trustContentLength;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * <p> Returns a parser ready to process a new multipart stream. An idle parser is reused if available, otherwise a new one is created.
+     *
+     * @param multipartContext The multipart context
+     * @param nioMultipartParserListener The listener that will be notified
+     * @return The {@code NioMultipartParser}
+     */
+    public NioMultipartParser acquire(final MultipartContext multipartContext, final NioMultipartParserListener nioMultipartParserListener) {
+        final NioMultipartParser parser = idleParsers.poll();
+        if (parser == null) {
+            final NioMultipartParser newParser = new NioMultipartParser(multipartContext, nioMultipartParserListener, partBodyStreamStorageFactory,
+                    bufferSize, maxHeadersSectionSize, maxLevelOfNestedMultipart, bodyPassThrough, trustContentLength, memoryBudget);
+            newParser.pool = this;
+            return newParser;
+        }
+        try {
+            parser.reset(multipartContext, nioMultipartParserListener);
+        } catch (RuntimeException e) {
+            // The context is not valid, the parser can be used by someone else
+            idleParsers.offer(parser);
+            throw e;
+        }
+        parser.pooled.set(false);
+        return parser;
+    }
+
+    /**
+     * <p> Returns the number of idle parsers in the pool.
+     *
+     * @return the number of idle parsers in the pool.
+     */
+    public int getIdleParsers() {
+        return idleParsers.size();
+    }
+
+    void release(final NioMultipartParser parser) {
+        idleParsers.offer(parser);
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> Listener that is streamed the body of the parts while they are parsed.
+ *     When the {@link NioMultipartParser} is notifying a {@code NioMultipartParserStreamingListener}, the body of the parts is not stored:
+ *     no {@code StreamStorage} is requested to the {@link PartBodyStreamStorageFactory}, the body data is passed to {@link #onPartData(byte[], int, int)}
+ *     as soon as the parser knows it is not part of a delimiter and {@link #onPartFinished(org.synchronoss.cloud.nio.stream.storage.StreamStorage, Map)} is never called.
+ *
+ * <p> For each part the listener receives {@link #onPartStarted(Map)}, zero or more {@link #onPartData(byte[], int, int)} and {@link #onPartEnd()}.
+ *     The other events (nested parts, all parts finished and errors) are notified as for a {@link NioMultipartParserListener}.
+ *
+ * @author Silvano Riz.
+ */
+public interface NioMultipartParserStreamingListener extends NioMultipartParserListener {
+
+    /**
+     * <p> Called when the headers of a part have been parsed and the body is about to be streamed.
+     *
+     * @param headersFromPart The part headers.
+     */
+    void onPartStarted(final Map<String, List<String>> headersFromPart);
+
+    /**
+     * <p> Called with a chunk of the body of the current part.
+     *     The data is only valid during the call: the array is reused by the parser (or it is the array written to the parser)
+     *     so it must be consumed or copied before returning.
+     *
+     * @param data The array holding the chunk of data.
+     * @param offset The index of the first byte of the chunk.
+     * @param length The length of the chunk.
+     */
+    void onPartData(final byte[] data, final int offset, final int length);
+
+    /**
+     * <p> Called when the body of the current part has been fully streamed.
+     */
+    void onPartEnd();
+
+}
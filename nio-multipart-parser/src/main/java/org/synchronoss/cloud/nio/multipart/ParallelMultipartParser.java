@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.io.buffer.EndOfLineSequenceMatcher;
+import org.synchronoss.cloud.nio.multipart.util.HeadersParser;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static org.synchronoss.cloud.nio.multipart.MultipartUtils.*;
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE;
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART;
+import static org.synchronoss.cloud.nio.multipart.NioMultipartParser.getDelimiterPrefix;
+
+/**
+ * <p> Parser of a multipart body that is fully available, for example stored in a file or already in memory.
+ *     Unlike the {@link NioMultipartParser}, which processes the data sequentially as it arrives, this parser splits the work
+ *     on a {@code ForkJoinPool}:
+ * <ul>
+ *     <li>The delimiters are searched in parallel, each task scanning a segment of the data.</li>
+ *     <li>The parts are collected in stream order, parsing their headers and the nested multiparts, so each part body gets
+ *         the same index it would get from a {@link NioMultipartParser}.</li>
+ *     <li>The part bodies are copied in parallel, each task copying a body into its part body {@code StreamStorage}.</li>
+ * </ul>
+ * <p> The parts are then notified to the {@link NioMultipartParserListener} in order, on the thread calling {@code parse},
+ *     so the listener receives the same events it would receive from a {@link NioMultipartParser}. If an error is encountered,
+ *     the parts preceding the error are notified, followed by {@link NioMultipartParserListener#onError(String, Throwable)}.
+ *
+ * <p> The data is accessed with absolute indexes and never modified, so a read-only {@code MappedByteBuffer} can be used.
+ *
+ * @author Silvano Riz.
+ */
+public class ParallelMultipartParser {
+
+    /**
+     * The default size of the segments of data scanned by a single task.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    // Size of the buffer used to copy a part body into its storage
+    static final int COPY_BUFFER_SIZE = 8192;
+
+    // Lazily created, shared pool used when no pool is specified
+    private static volatile ForkJoinPool defaultForkJoinPool;
+
+    final MultipartContext multipartContext;
+    final PartBodyStreamStorageFactory partBodyStreamStorageFactory;
+    final int maxHeadersSectionSize;
+    final int maxLevelOfNestedMultipart;
+    final ForkJoinPool forkJoinPool;
+    final int segmentSize;
+
+    /**
+     * <p> Constructs a {@code ParallelMultipartParser} with the default configuration.
+     *
+     * @param multipartContext The multipart context
+     */
+    public ParallelMultipartParser(final MultipartContext multipartContext) {
+        this(multipartContext, null, DEFAULT_HEADERS_SECTION_SIZE, DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, null, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * <p> Constructs a {@code ParallelMultipartParser}.
+     *
+     * @param multipartContext The multipart context
+     * @param partBodyStreamStorageFactory The custom {@code PartBodyStreamStorageFactory} to use or null for the default one. It must be thread safe.
+     * @param maxHeadersSectionSize The max size of the headers section or -1 for no limit.
+     * @param maxLevelOfNestedMultipart the max number of nested multipart
+     * @param forkJoinPool The {@code ForkJoinPool} running the tasks or null to use a shared pool.
+     * @param segmentSize The size of the segments of data scanned by a single task, a strictly positive integer.
+     */
+    public ParallelMultipartParser(final MultipartContext multipartContext,
+                                   final PartBodyStreamStorageFactory partBodyStreamStorageFactory,
+                                   final int maxHeadersSectionSize,
+                                   final int maxLevelOfNestedMultipart,
+                                   final ForkJoinPool forkJoinPool,
+                                   final int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("The segment size must be grater than 0. Size specified: " + segmentSize);
+        }
+        // Fail fast if the boundary is not valid
+        getDelimiterPrefix(multipartContext.getContentType());
+        this.multipartContext = multipartContext;
+        this.partBodyStreamStorageFactory = partBodyStreamStorageFactory != null ? partBodyStreamStorageFactory : new DefaultPartBodyStreamStorageFactory();
+        this.maxHeadersSectionSize = maxHeadersSectionSize;
+        this.maxLevelOfNestedMultipart = maxLevelOfNestedMultipart;
+        this.forkJoinPool = forkJoinPool != null ? forkJoinPool : defaultForkJoinPool();
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * <p> Parses the multipart body stored in a file. The file is memory mapped, so it cannot be bigger than {@link Integer#MAX_VALUE} bytes.
+     *
+     * @param fileChannel The channel of the file, positioned at the beginning of the multipart body.
+     * @param listener The listener that will be notified
+     * @throws IOException if the file cannot be mapped
+     */
+    public void parse(final FileChannel fileChannel, final NioMultipartParserListener listener) throws IOException {
+        final long position = fileChannel.position();
+        final long size = fileChannel.size() - position;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The multipart body is too big to be memory mapped: " + size + " bytes");
+        }
+        parse(fileChannel.map(FileChannel.MapMode.READ_ONLY, position, size), listener);
+    }
+
+    /**
+     * <p> Parses the multipart body held by the remaining bytes of a {@code ByteBuffer}. The buffer is not modified.
+     *
+     * @param data The multipart body
+     * @param listener The listener that will be notified
+     */
+    public void parse(final ByteBuffer data, final NioMultipartParserListener listener) {
+        final PartResult result = forkJoinPool.invoke(new MultipartTask(data, data.position(), data.limit(), getDelimiterPrefix(multipartContext.getContentType())));
+        if (deliver(result.children, listener)) {
+            listener.onAllPartsFinished();
+        }
+    }
+
+    static ForkJoinPool defaultForkJoinPool() {
+        if (defaultForkJoinPool == null) {
+            synchronized (ParallelMultipartParser.class) {
+                if (defaultForkJoinPool == null) {
+                    defaultForkJoinPool = new ForkJoinPool();
+                }
+            }
+        }
+        return defaultForkJoinPool;
+    }
+
+    /*
+     * Notifies the results in order. Returns false if an error has been notified. The storages of the parts that are not notified are disposed.
+     */
+    static boolean deliver(final List<PartResult> results, final NioMultipartParserListener listener) {
+        for (int i = 0; i < results.size(); i++) {
+            final PartResult result = results.get(i);
+            if (result.errorMessage != null) {
+                for (int j = i + 1; j < results.size(); j++) {
+                    results.get(j).dispose();
+                }
+                listener.onError(result.errorMessage, result.errorCause);
+                return false;
+            }
+            if (result.children != null) {
+                listener.onNestedPartStarted(result.headers);
+                if (!deliver(result.children, listener)) {
+                    for (int j = i + 1; j < results.size(); j++) {
+                        results.get(j).dispose();
+                    }
+                    return false;
+                }
+                listener.onNestedPartFinished();
+            } else {
+                listener.onPartFinished(result.partBodyStreamStorage, result.headers);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The outcome of the parsing of a part, a nested multipart or an error.
+     */
+    static class PartResult {
+
+        Map<String, List<String>> headers;
+        StreamStorage partBodyStreamStorage;
+        List<PartResult> children;
+        String errorMessage;
+        Throwable errorCause;
+
+        static PartResult error(final String errorMessage, final Throwable errorCause) {
+            final PartResult result = new PartResult();
+            result.errorMessage = errorMessage;
+            result.errorCause = errorCause;
+            return result;
+        }
+
+        void dispose() {
+            if (partBodyStreamStorage != null) {
+                partBodyStreamStorage.dispose();
+            }
+            if (children != null) {
+                for (PartResult child : children) {
+                    child.dispose();
+                }
+            }
+        }
+    }
+
+    /*
+     * Finds the offsets of the delimiters in a range of data. A delimiter is found in a segment if it starts in the segment.
+     */
+    class DelimiterSearchTask extends RecursiveTask<List<Integer>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final ByteBuffer data;
+        final int start;
+        final int end;
+        final int limit;
+        final EndOfLineSequenceMatcher matcher;
+
+        DelimiterSearchTask(final ByteBuffer data, final int start, final int end, final int limit, final EndOfLineSequenceMatcher matcher) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.limit = limit;
+            this.matcher = matcher;
+        }
+
+        @Override
+        protected List<Integer> compute() {
+            if (end - start > segmentSize) {
+                final int middle = start + (end - start) / 2;
+                final DelimiterSearchTask left = new DelimiterSearchTask(data, start, middle, limit, matcher);
+                final DelimiterSearchTask right = new DelimiterSearchTask(data, middle, end, limit, matcher);
+                right.fork();
+                final List<Integer> offsets = new ArrayList<Integer>(left.compute());
+                offsets.addAll(right.join());
+                return offsets;
+            }
+            final List<Integer> offsets = new ArrayList<Integer>();
+            final int sequenceLength = matcher.getSequenceLength();
+            final int scanEnd = (int) Math.min((long) end + sequenceLength - 1, limit);
+            int from = start;
+            int matchEnd;
+            while ((matchEnd = matcher.indexOf(data, from, scanEnd, 0)) != -1) {
+                final int matchStart = matchEnd - sequenceLength;
+                if (matchStart >= end) {
+                    break;
+                }
+                offsets.add(matchStart);
+                from = matchEnd;
+            }
+            return offsets;
+        }
+    }
+
+    /*
+     * Parses a multipart body: collects the parts in stream order and copies their bodies in parallel.
+     * The headers are parsed while the parts are collected, so each part body gets its index in stream order,
+     * the same index it would get from a NioMultipartParser. Nested multiparts are collected the same way.
+     */
+    class MultipartTask extends RecursiveTask<PartResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        final ByteBuffer data;
+        final int start;
+        final int end;
+        final byte[] delimiterPrefix;
+        final List<PartTask> partTasks = new ArrayList<PartTask>();
+        // The index of the next part body. Only used by the thread collecting the parts.
+        int partIndex = 1;
+
+        MultipartTask(final ByteBuffer data, final int start, final int end, final byte[] delimiterPrefix) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.delimiterPrefix = delimiterPrefix;
+        }
+
+        @Override
+        protected PartResult compute() {
+            final PartResult result = collectMultipart(start, end, delimiterPrefix, 0);
+            invokeAll(partTasks);
+            return result;
+        }
+
+        PartResult collectMultipart(final int start, final int end, final byte[] delimiterPrefix, final int level) {
+
+            final List<Integer> delimiters = new ArrayList<Integer>();
+            // A multipart body can start with a delimiter without the leading CR LF
+            if (startsWith(data, start, end, delimiterPrefix, 2)) {
+                delimiters.add(start - 2);
+            }
+            delimiters.addAll(new DelimiterSearchTask(data, start, end, end, new EndOfLineSequenceMatcher(delimiterPrefix)).compute());
+
+            final PartResult result = new PartResult();
+            result.children = new ArrayList<PartResult>();
+            PartResult error = null;
+            boolean closed = false;
+            for (int i = 0; i < delimiters.size() && !closed && error == null; i++) {
+                final int delimiterEnd = delimiters.get(i) + delimiterPrefix.length;
+                if (delimiterEnd + 2 > end) {
+                    error = PartResult.error("Error parsing the multipart stream. Stream ended unexpectedly", null);
+                } else if (data.get(delimiterEnd) == DASH && data.get(delimiterEnd + 1) == DASH) {
+                    closed = true;
+                } else if (data.get(delimiterEnd) == CR && data.get(delimiterEnd + 1) == LF) {
+                    if (i + 1 < delimiters.size()) {
+                        result.children.add(collectPart(delimiterEnd + 2, delimiters.get(i + 1), level));
+                    } else {
+                        error = PartResult.error("Error parsing the multipart stream. Stream ended unexpectedly", null);
+                    }
+                } else {
+                    error = PartResult.error("Unexpected characters follow a boundary", null);
+                }
+            }
+            if (!closed && error == null) {
+                error = PartResult.error("Error parsing the multipart stream. Stream ended unexpectedly", null);
+            }
+            if (error != null) {
+                result.children.add(error);
+            }
+            return result;
+        }
+
+        PartResult collectPart(final int start, final int end, final int level) {
+
+            final int bodyStart;
+            final Map<String, List<String>> headers;
+            try {
+                if (startsWith(data, start, end, HEADER_DELIMITER, 2)) {
+                    // No headers
+                    bodyStart = start + 2;
+                    headers = new PartHeaders(Collections.<String, List<String>>emptyMap());
+                } else {
+                    final int headersEnd = new EndOfLineSequenceMatcher(HEADER_DELIMITER).indexOf(data, start, end, 0);
+                    if (headersEnd == -1) {
+                        return PartResult.error("Error parsing the part headers", new IllegalStateException("The headers section is not terminated"));
+                    }
+                    if (maxHeadersSectionSize != -1 && headersEnd - start > maxHeadersSectionSize) {
+                        return PartResult.error("Error parsing the part headers", new IllegalStateException("Headers section too big. Max size " + maxHeadersSectionSize));
+                    }
+                    bodyStart = headersEnd;
+                    headers = new PartHeaders(HeadersParser.parseHeaders(new ByteArrayInputStream(copy(data, start, headersEnd)), multipartContext.getCharEncoding()));
+                }
+            } catch (Exception e) {
+                return PartResult.error("Error parsing the part headers", e);
+            }
+
+            if (hasMultipartContentType(headers)) {
+                if (level + 1 > maxLevelOfNestedMultipart) {
+                    return PartResult.error("Reached maximum number of nested multiparts: " + maxLevelOfNestedMultipart, null);
+                }
+                final byte[] nestedDelimiterPrefix;
+                try {
+                    nestedDelimiterPrefix = getDelimiterPrefix(getContentType(headers));
+                } catch (Exception e) {
+                    return PartResult.error("Error parsing the part headers", e);
+                }
+                final PartResult result = collectMultipart(bodyStart, end, nestedDelimiterPrefix, level + 1);
+                result.headers = headers;
+                return result;
+            }
+
+            final PartResult result = new PartResult();
+            result.headers = headers;
+            partTasks.add(new PartTask(data, bodyStart, end, partIndex++, result));
+            return result;
+        }
+    }
+
+    /*
+     * Copies the body of a part into the part body storage. If the copy fails, the result becomes an error.
+     */
+    class PartTask extends RecursiveTask<PartResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        final ByteBuffer data;
+        final int bodyStart;
+        final int end;
+        final int partIndex;
+        final PartResult result;
+
+        PartTask(final ByteBuffer data, final int bodyStart, final int end, final int partIndex, final PartResult result) {
+            this.data = data;
+            this.bodyStart = bodyStart;
+            this.end = end;
+            this.partIndex = partIndex;
+            this.result = result;
+        }
+
+        @Override
+        protected PartResult compute() {
+            try {
+                result.partBodyStreamStorage = partBodyStreamStorageFactory.newStreamStorageForPartBody(result.headers, partIndex);
+                final ByteBuffer body = data.duplicate();
+                body.limit(end);
+                body.position(bodyStart);
+                final byte[] buffer = new byte[Math.min(COPY_BUFFER_SIZE, Math.max(1, end - bodyStart))];
+                while (body.hasRemaining()) {
+                    final int length = Math.min(buffer.length, body.remaining());
+                    body.get(buffer, 0, length);
+                    result.partBodyStreamStorage.write(buffer, 0, length);
+                }
+                result.partBodyStreamStorage.flush();
+                result.partBodyStreamStorage.close();
+            } catch (Exception e) {
+                result.dispose();
+                result.partBodyStreamStorage = null;
+                result.errorMessage = "Unable to read/write the body data";
+                result.errorCause = e;
+            }
+            return result;
+        }
+    }
+
+    static boolean startsWith(final ByteBuffer data, final int start, final int end, final byte[] sequence, final int sequenceOffset) {
+        final int length = sequence.length - sequenceOffset;
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.get(start + i) != sequence[sequenceOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] copy(final ByteBuffer data, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = data.get(i);
+        }
+        return bytes;
+    }
+
+}
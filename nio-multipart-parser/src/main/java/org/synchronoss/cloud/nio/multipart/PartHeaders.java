@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p> The headers of a part.
+ *     The class is a read only {@code Map} view of the headers (header names as keys and the list of the header values as values), so it can be used
+ *     wherever the headers are expected as {@code Map<String, List<String>>}. The headers passed by the {@link NioMultipartParser} to the
+ *     {@link NioMultipartParserListener} and to the {@link PartBodyStreamStorageFactory} are instances of this class.
+ *
+ * <p> Headers are looked up ignoring the case of the name. The most used information (field name, file name, content type, char encoding,
+ *     content transfer encoding and content length) is extracted from the headers at most once, the first time it is requested.
+ *     The {@link MultipartUtils} methods accepting the headers {@code Map} use the cached information when they are passed a {@code PartHeaders}.
+ *
+ * @author Silvano Riz.
+ */
+public class PartHeaders extends AbstractMap<String, List<String>> {
+
+    static final String CONTENT_DISPOSITION = "content-disposition";
+    static final String CONTENT_TYPE = "content-type";
+    static final String CONTENT_LENGTH = "content-length";
+    static final String CONTENT_TRANSFER_ENCODING = "content-transfer-encoding";
+
+    // The headers
+    final Map<String, List<String>> headers;
+
+    private boolean contentDispositionParsed = false;
+    private String fieldName;
+    private String fileName;
+
+    private boolean contentTypeParsed = false;
+    private String contentType;
+    private String charEncoding;
+
+    private boolean contentLengthParsed = false;
+    private long contentLength;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param headers The headers. The map should not be modified after the {@code PartHeaders} is created.
+     */
+    public PartHeaders(final Map<String, List<String>> headers) {
+        if (headers == null) {
+            throw new IllegalArgumentException("Headers cannot be null");
+        }
+        this.headers = headers;
+    }
+
+    /**
+     * <p> Returns the headers as {@code PartHeaders}. If the headers are already a {@code PartHeaders} instance they are returned as they are.
+     *
+     * @param headers The headers map
+     * @return the {@code PartHeaders}
+     */
+    public static PartHeaders from(final Map<String, List<String>> headers) {
+        if (headers instanceof PartHeaders) {
+            return (PartHeaders) headers;
+        }
+        return new PartHeaders(headers);
+    }
+
+    /**
+     * <p> Returns the list of values of a header. The case of the header name is ignored.
+     *
+     * @param headerName The header name
+     * @return The list of header values or null.
+     */
+    public List<String> getHeaders(final String headerName) {
+        final List<String> headerValues = headers.get(headerName);
+        if (headerValues != null) {
+            return headerValues;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(headerName)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p> Returns the first value of a header. The case of the header name is ignored.
+     *
+     * @param headerName The header name
+     * @return The first value of the header or null
+     */
+    public String getHeader(final String headerName) {
+        final List<String> headerValues = getHeaders(headerName);
+        if (headerValues == null || headerValues.size() == 0) {
+            return null;
+        }
+        return headerValues.get(0);
+    }
+
+    /**
+     * <p> Returns the 'name' parameter of the Content-disposition header.
+     *
+     * @return The 'name' parameter of the Content-disposition header or null
+     */
+    public String getFieldName() {
+        parseContentDisposition();
+        return fieldName;
+    }
+
+    /**
+     * <p> Returns the 'filename' parameter of the Content-disposition header.
+     *
+     * @return The 'filename' parameter of the Content-disposition header or null
+     */
+    public String getFileName() {
+        parseContentDisposition();
+        return fileName;
+    }
+
+    /**
+     * <p> Returns the value of the content type header if present.
+     *
+     * @return the value of the content type header if present.
+     */
+    public String getContentType() {
+        parseContentType();
+        return contentType;
+    }
+
+    /**
+     * <p> Returns the charset parameter value of the content type header.
+     *
+     * @return the charset parameter value of the content type header or null if the header is not present of the charset parameter not defined
+     */
+    public String getCharEncoding() {
+        parseContentType();
+        return charEncoding;
+    }
+
+    /**
+     * <p> Returns the value of the content transfer encoding header if present.
+     *
+     * @return the value of the content transfer encoding header if present.
+     */
+    public String getContentTransferEncoding() {
+        return getHeader(CONTENT_TRANSFER_ENCODING);
+    }
+
+    /**
+     * <p> Returns the value of the content length header if present. -1 if the header is not present or if the value cannot be converted to a long
+     *
+     * @return the value of the content length header if present. -1 if the header is not present or if the value cannot be converted to a long
+     */
+    public long getContentLength() {
+        if (!contentLengthParsed) {
+            contentLength = MultipartUtils.parseContentLength(getHeader(CONTENT_LENGTH));
+            contentLengthParsed = true;
+        }
+        return contentLength;
+    }
+
+    @Override
+    public List<String> get(final Object key) {
+        if (key instanceof String) {
+            return getHeaders((String) key);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return headers.size();
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        return Collections.unmodifiableMap(headers).entrySet();
+    }
+
+    void parseContentDisposition() {
+        if (!contentDispositionParsed) {
+            final String contentDisposition = getHeader(CONTENT_DISPOSITION);
+            final Map<String, String> params = MultipartUtils.parseContentDispositionParameters(contentDisposition);
+            if (params != null) {
+                fileName = MultipartUtils.fileNameParameter(params);
+                if (MultipartUtils.isFormDataContentDisposition(contentDisposition)) {
+                    fieldName = MultipartUtils.fieldNameParameter(params);
+                }
+            }
+            contentDispositionParsed = true;
+        }
+    }
+
+    void parseContentType() {
+        if (!contentTypeParsed) {
+            contentType = getHeader(CONTENT_TYPE);
+            charEncoding = MultipartUtils.parseCharEncoding(contentType);
+            contentTypeParsed = true;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.io.ByteBufferPool;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> A {@code PartBodyStreamStorageFactory} keeping the parts below the threshold off-heap, in {@link PooledDirectStreamStorage}s
+ *     backed by a shared {@link ByteBufferPool}. Compared to the {@link DefaultPartBodyStreamStorageFactory}, which keeps them in
+ *     growing byte arrays, the memory used for the in-flight parts does not end up in the Java heap and the slabs are reused across parts.
+ *
+ * <p> The parts declaring a {@code Content-Length} bigger than the threshold are stored directly to file like in the {@code DefaultPartBodyStreamStorageFactory}.
+ *
+ * @author Silvano Riz.
+ */
+public class PooledDirectPartBodyStreamStorageFactory extends DefaultPartBodyStreamStorageFactory {
+
+    final ByteBufferPool byteBufferPool;
+
+    /**
+     * <p> Constructor allowing to spread the temporary files with a {@code TempFileManager}.
+     *
+     * @param tempFileManager The {@code TempFileManager} providing the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part.
+     * @param byteBufferPool The pool providing the slabs.
+     */
+    public PooledDirectPartBodyStreamStorageFactory(final TempFileManager tempFileManager, final int maxSizeThreshold, final ByteBufferPool byteBufferPool) {
+        super(tempFileManager, maxSizeThreshold, null);
+        this.byteBufferPool = byteBufferPool;
+    }
+
+    /**
+     * <p> Constructor.
+     *
+     * @param tempFolderPath The path where to store the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part.
+     * @param byteBufferPool The pool providing the slabs.
+     */
+    public PooledDirectPartBodyStreamStorageFactory(final String tempFolderPath, final int maxSizeThreshold, final ByteBufferPool byteBufferPool) {
+        super(tempFolderPath, maxSizeThreshold);
+        this.byteBufferPool = byteBufferPool;
+    }
+
+    /**
+     * <p> Constructor that uses a default folder ${java.io.tmpdir}/nio-file-upload
+     *
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part.
+     * @param byteBufferPool The pool providing the slabs.
+     */
+    public PooledDirectPartBodyStreamStorageFactory(final int maxSizeThreshold, final ByteBufferPool byteBufferPool) {
+        this(DEFAULT_TEMP_FOLDER, maxSizeThreshold, byteBufferPool);
+    }
+
+    /**
+     * <p> Constructor that uses a default threshold of 10kb, a default folder ${java.io.tmpdir}/nio-file-upload and a pool with the default configuration.
+     */
+    public PooledDirectPartBodyStreamStorageFactory() {
+        this(DEFAULT_TEMP_FOLDER, DEFAULT_MAX_THRESHOLD, new ByteBufferPool());
+    }
+
+    @Override
+    public StreamStorage newStreamStorageForPartBody(final Map<String, List<String>> partHeaders, final int partIndex) {
+        if (MultipartUtils.getContentLength(partHeaders) > maxSizeThreshold) {
+            return super.newStreamStorageForPartBody(partHeaders, partIndex);
+        }
+        return new PooledDirectStreamStorage(getTempFile(partIndex), maxSizeThreshold, byteBufferPool);
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.synchronoss.cloud.nio.multipart.io.ByteBufferPool;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A {@code StreamStorage} keeping the data off-heap, in direct {@code ByteBuffer} slabs taken from a {@link ByteBufferPool}.
+ *     When the data exceeds the threshold, the slabs are flushed to a file through a {@code FileChannel}, they are returned to the pool
+ *     and the rest of the data is written straight to the file.
+ *
+ * <p> The {@code InputStream} returned by {@link #getInputStream()} reads directly from the slabs (or from the file).
+ *     Closing it, or disposing the storage, returns the slabs to the pool and deletes the file.
+ *
+ * @author Silvano Riz.
+ */
+public class PooledDirectStreamStorage extends StreamStorage implements Transferable {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledDirectStreamStorage.class);
+
+    final File file;
+    final int threshold;
+    final ByteBufferPool byteBufferPool;
+    final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    final AtomicBoolean released = new AtomicBoolean(false);
+    volatile long bytesWritten = 0;
+    volatile FileChannel fileChannel;
+    volatile boolean inMemory = true;
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param file The file used if the data exceeds the threshold. It is created only when needed.
+     * @param threshold The max number of bytes kept in memory.
+     * @param byteBufferPool The pool providing the slabs.
+     */
+    public PooledDirectStreamStorage(final File file, final int threshold, final ByteBufferPool byteBufferPool) {
+        this.file = file;
+        this.threshold = threshold;
+        this.byteBufferPool = byteBufferPool;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        assertIsWritable();
+        if (inMemory && bytesWritten + len > threshold) {
+            switchToFile();
+        }
+        if (inMemory) {
+            int written = 0;
+            while (written < len) {
+                ByteBuffer slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+                if (slab == null || !slab.hasRemaining()) {
+                    slab = byteBufferPool.acquire();
+                    slabs.add(slab);
+                }
+                final int length = Math.min(slab.remaining(), len - written);
+                slab.put(b, off + written, length);
+                written += length;
+            }
+        } else {
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, len);
+            while (byteBuffer.hasRemaining()) {
+                fileChannel.write(byteBuffer);
+            }
+        }
+        bytesWritten += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        assertIsWritable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The storage must be closed before reading the data.
+     */
+    @Override
+    public InputStream getInputStream() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        if (inMemory) {
+            return new SlabsInputStream();
+        }
+        try {
+            return new DeleteOnCloseFileInputStream();
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("Unable to read the data from the file " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The slabs are written through read-only views. If the storage is disposed while the data is transferred, the transfer fails.
+     */
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        assertIsReadable();
+        if (inMemory) {
+            return ChannelTransfers.write(slabViews(), target, released);
+        }
+        return ChannelTransfers.transferFile(file, target);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The channel reads the slabs through read-only views. Once the storage is disposed (or an {@code InputStream} taken from it is closed)
+     *     the slabs go back to the pool and the channel fails with an {@code IOException}.
+     */
+    @Override
+    public ReadableByteChannel getReadableChannel() throws IOException {
+        assertIsReadable();
+        if (inMemory) {
+            return new ChannelTransfers.BuffersChannel(slabViews(), released);
+        }
+        return ChannelTransfers.openFile(file);
+    }
+
+    /**
+     * <p> Returns true if the data is held in the slabs, false if it has been moved to the file.
+     *
+     * @return true if the data is held in the slabs, false if it has been moved to the file.
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    @Override
+    public boolean dispose() {
+        try {
+            close();
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) log.warn("Unable to close the file channel", e);
+        }
+        return release();
+    }
+
+    boolean release() {
+        if (!released.compareAndSet(false, true)) {
+            return false;
+        }
+        for (ByteBuffer slab : slabs) {
+            byteBufferPool.release(slab);
+        }
+        slabs.clear();
+        return inMemory || !file.exists() || file.delete();
+    }
+
+    void switchToFile() throws IOException {
+        fileChannel = new RandomAccessFile(file, "rw").getChannel();
+        fileChannel.truncate(0);
+        for (ByteBuffer slab : slabs) {
+            slab.flip();
+            while (slab.hasRemaining()) {
+                fileChannel.write(slab);
+            }
+            byteBufferPool.release(slab);
+        }
+        slabs.clear();
+        inMemory = false;
+    }
+
+    List<ByteBuffer> slabViews() {
+        final List<ByteBuffer> views = new ArrayList<ByteBuffer>(slabs.size());
+        for (ByteBuffer slab : slabs) {
+            final ByteBuffer view = slab.asReadOnlyBuffer();
+            view.flip();
+            views.add(view);
+        }
+        return views;
+    }
+
+    void assertIsReadable() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+    }
+
+    void assertIsWritable() {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+    }
+
+    /*
+     * Reads the slabs through read-only views, so the slabs are not modified.
+     */
+    class SlabsInputStream extends InputStream {
+
+        final List<ByteBuffer> views = slabViews();
+        int current = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (released.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (current < views.size() && !views.get(current).hasRemaining()) {
+                current++;
+            }
+            if (current == views.size()) {
+                return -1;
+            }
+            final ByteBuffer view = views.get(current);
+            final int length = Math.min(len, view.remaining());
+            view.get(b, off, length);
+            if (released.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            return length;
+        }
+
+        @Override
+        public int available() throws IOException {
+            int available = 0;
+            for (int i = current; i < views.size(); i++) {
+                available += views.get(i).remaining();
+            }
+            return available;
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+        }
+    }
+
+    /*
+     * Deletes the file when closed.
+     */
+    class DeleteOnCloseFileInputStream extends FileInputStream {
+
+        DeleteOnCloseFileInputStream() throws FileNotFoundException {
+            super(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            release();
+        }
+    }
+
+}
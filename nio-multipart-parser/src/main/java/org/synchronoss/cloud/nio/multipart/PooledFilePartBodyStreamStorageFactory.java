@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> A {@code PartBodyStreamStorageFactory} storing the parts that go directly to file in files taken from a {@link TempFilePool},
+ *     so that the thread parsing the multipart stream does not create files. The files are given back to the pool when the
+ *     part body {@code StreamStorage} is disposed or its {@code InputStream} is closed.
+ *
+ * <p> A part goes directly to file if it declares a {@code Content-Length} bigger than the threshold or if the threshold is zero.
+ *     The other parts are handled like in the {@link DefaultPartBodyStreamStorageFactory}. If the pool is empty, a new file is created.
+ *
+ * @author Silvano Riz.
+ */
+public class PooledFilePartBodyStreamStorageFactory extends DefaultPartBodyStreamStorageFactory {
+
+    final TempFilePool tempFilePool;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param tempFilePool The pool providing the files. It also provides the files created when the pool is empty.
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     * @param memoryBudget The {@code MemoryBudget} shared with the other parsers and factories or null for no global limit.
+     */
+    public PooledFilePartBodyStreamStorageFactory(final TempFilePool tempFilePool, final int maxSizeThreshold, final MemoryBudget memoryBudget) {
+        super(tempFilePool.tempFileManager, maxSizeThreshold, memoryBudget);
+        this.tempFilePool = tempFilePool;
+    }
+
+    /**
+     * <p> Constructor.
+     *
+     * @param tempFilePool The pool providing the files. It also provides the files created when the pool is empty.
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     */
+    public PooledFilePartBodyStreamStorageFactory(final TempFilePool tempFilePool, final int maxSizeThreshold) {
+        this(tempFilePool, maxSizeThreshold, null);
+    }
+
+    @Override
+    public StreamStorage newStreamStorageForPartBody(final Map<String, List<String>> partHeaders, final int partIndex) {
+        if (getThreshold(partHeaders) == 0) {
+            final TempFilePool.PooledFile pooledFile = tempFilePool.acquire();
+            if (pooledFile != null) {
+                return new PooledFileStreamStorage(tempFilePool, pooledFile);
+            }
+        }
+        return super.newStreamStorageForPartBody(partHeaders, partIndex);
+    }
+
+}
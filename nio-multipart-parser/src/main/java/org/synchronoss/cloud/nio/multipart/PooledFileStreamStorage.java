@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A {@code ChannelFileStreamStorage} writing to a file taken from a {@link TempFilePool}.
+ *     The file is given back to the pool, instead of being deleted, when the {@code InputStream} is closed or when the storage is disposed.
+ *
+ * @author Silvano Riz.
+ */
+class PooledFileStreamStorage extends ChannelFileStreamStorage {
+
+    final TempFilePool tempFilePool;
+    final TempFilePool.PooledFile pooledFile;
+    final AtomicBoolean released = new AtomicBoolean(false);
+
+    /**
+     * <p> Constructor.
+     *
+     * @param tempFilePool The pool the file belongs to.
+     * @param pooledFile The file, acquired from the pool.
+     */
+    PooledFileStreamStorage(final TempFilePool tempFilePool, final TempFilePool.PooledFile pooledFile) {
+        super(pooledFile.file, pooledFile.fileChannel);
+        this.tempFilePool = tempFilePool;
+        this.pooledFile = pooledFile;
+    }
+
+    @Override
+    void closeFileChannel() {
+        // The channel stays open, the file goes back to the pool.
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (moved) {
+            throw new IllegalStateException("Cannot read the data, it has been moved.");
+        }
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        return new PooledFileInputStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The file belongs to the pool, so the data is copied and the file is given back to the pool.
+     */
+    @Override
+    public void moveTo(final Path destination) throws IOException {
+        assertIsMovable();
+        if (released.get()) {
+            throw new IllegalStateException("Cannot move the data, the storage has been disposed.");
+        }
+        FileMover.copy(pooledFile.fileChannel, destination);
+        moved = true;
+        release();
+    }
+
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        assertIsReadable();
+        return ChannelTransfers.transfer(pooledFile.fileChannel, 0, pooledFile.fileChannel.size(), target, released);
+    }
+
+    @Override
+    public ReadableByteChannel getReadableChannel() throws IOException {
+        assertIsReadable();
+        return new ChannelTransfers.RangeChannel(pooledFile.fileChannel, 0, pooledFile.fileChannel.size(), released);
+    }
+
+    @Override
+    void assertIsReadable() {
+        super.assertIsReadable();
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+    }
+
+    @Override
+    public boolean dispose() {
+        try {
+            close();
+        } catch (Exception e) {
+            // Do nothing
+        }
+        return release();
+    }
+
+    boolean release() {
+        if (released.compareAndSet(false, true)) {
+            tempFilePool.release(pooledFile);
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Reads the file with positional reads on the pooled channel and gives the file back to the pool when closed.
+     */
+    class PooledFileInputStream extends InputStream {
+
+        long position = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (released.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            final int read = pooledFile.fileChannel.read(ByteBuffer.wrap(b, off, len), position);
+            if (released.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (released.get()) {
+                return 0;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, pooledFile.fileChannel.size() - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+        }
+    }
+
+}
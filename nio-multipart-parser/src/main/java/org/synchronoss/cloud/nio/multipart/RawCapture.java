@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p> The raw capture of a multipart stream: the bytes received by the {@link NioMultipartParser} are appended, as they are, to a single file.
+ *     The parser does not copy the part bodies into their own storage: each part body is a {@link RawPartStreamStorage}, a view over
+ *     a range of the capture, so the total I/O per request is the size of the request. See {@link NioMultipartParser#setRawCapture(RawCapture)}.
+ *
+ * <p> The capture keeps an index of the parts: the offsets, relative to the start of the stream, of their headers and of their bodies.
+ *     The part bodies are read from the capture, so it must stay open while they are read. The file is not deleted when the capture is closed.
+ *
+ * @author Silvano Riz.
+ */
+public class RawCapture implements Closeable {
+
+    final File file;
+    final RandomAccessFile randomAccessFile;
+    final FileChannel fileChannel;
+    final List<RawPartStreamStorage> parts = Collections.synchronizedList(new ArrayList<RawPartStreamStorage>());
+    volatile long size = 0;
+
+    /**
+     * <p> Constructor. The file is created (or truncated if it exists).
+     *
+     * @param file The file where the raw stream is stored.
+     * @throws IOException if the file cannot be opened.
+     */
+    public RawCapture(final File file) throws IOException {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = randomAccessFile.getChannel();
+        this.fileChannel.truncate(0);
+    }
+
+    /**
+     * <p> Preallocates the file for the expected size of the stream, for example the {@code Content-Length} of the request, so that the
+     *     file system can allocate it in one go instead of extending it at every append. The file is trimmed to the bytes actually captured
+     *     by {@link #trim()} and when the capture is closed.
+     *     The file is not preallocated if its folder does not have that much usable space or if the file system refuses the size.
+     *
+     * @param expectedSize The expected size of the stream. If it is not bigger than the current size, nothing is done.
+     * @throws IOException if the size of the file cannot be read.
+     */
+    public void preallocate(final long expectedSize) throws IOException {
+        if (expectedSize > randomAccessFile.length()) {
+            ChannelFileStreamStorage.preallocate(randomAccessFile, file, expectedSize);
+        }
+    }
+
+    /**
+     * <p> Trims the file to the bytes captured so far, removing the space preallocated and not used. Nothing is done if the capture is closed.
+     *
+     * @throws IOException if the file cannot be trimmed.
+     */
+    public void trim() throws IOException {
+        if (fileChannel.isOpen() && fileChannel.size() > size) {
+            fileChannel.truncate(size);
+        }
+    }
+
+    /**
+     * <p> Returns the file where the raw stream is stored.
+     *
+     * @return the file where the raw stream is stored.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * <p> Returns the number of bytes captured.
+     *
+     * @return the number of bytes captured.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * <p> Returns the index of the parts captured so far, in the order they have been parsed.
+     *
+     * @return the parts captured so far.
+     */
+    public List<RawPartStreamStorage> getParts() {
+        synchronized (parts) {
+            return new ArrayList<RawPartStreamStorage>(parts);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            trim();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    void append(final ByteBuffer data) throws IOException {
+        long position = size;
+        while (data.hasRemaining()) {
+            position += fileChannel.write(data, position);
+        }
+        size = position;
+    }
+
+    int read(final ByteBuffer target, final long position) throws IOException {
+        return fileChannel.read(target, position);
+    }
+
+    void addPart(final RawPartStreamStorage part) {
+        parts.add(part);
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A part body {@code StreamStorage} that is a view over a {@link RawCapture}. The data written by the parser is not stored again,
+ *     only its length is counted: the body is the range of the capture starting at {@link #getBodyOffset()}.
+ *
+ * @author Silvano Riz.
+ */
+public class RawPartStreamStorage extends StreamStorage implements Transferable {
+
+    final RawCapture rawCapture;
+    final long headersOffset;
+    final long bodyOffset;
+    final AtomicBoolean released = new AtomicBoolean(false);
+    volatile long bodyLength = 0;
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param rawCapture The capture holding the data.
+     * @param headersOffset The offset of the part headers, relative to the start of the stream.
+     * @param bodyOffset The offset of the part body, relative to the start of the stream.
+     */
+    public RawPartStreamStorage(final RawCapture rawCapture, final long headersOffset, final long bodyOffset) {
+        this.rawCapture = rawCapture;
+        this.headersOffset = headersOffset;
+        this.bodyOffset = bodyOffset;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        assertIsWritable();
+        bodyLength++;
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        // The data is already in the capture
+        assertIsWritable();
+        bodyLength += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            rawCapture.addPart(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The storage must be closed before reading the data.
+     */
+    @Override
+    public InputStream getInputStream() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        return new RangeInputStream();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The range of the capture is transferred with positional transfers, so several parts can be transferred at the same time.
+     */
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        assertIsReadable();
+        return ChannelTransfers.transfer(rawCapture.fileChannel, bodyOffset, bodyLength, target);
+    }
+
+    @Override
+    public ReadableByteChannel getReadableChannel() throws IOException {
+        assertIsReadable();
+        return new ChannelTransfers.RangeChannel(rawCapture.fileChannel, bodyOffset, bodyLength);
+    }
+
+    /**
+     * <p> Nothing is deleted, the data belongs to the {@code RawCapture}.
+     *
+     * @return true the first time the storage is disposed.
+     */
+    @Override
+    public boolean dispose() {
+        closed = true;
+        return released.compareAndSet(false, true);
+    }
+
+    /**
+     * <p> Returns the offset of the part headers, relative to the start of the stream.
+     *
+     * @return the offset of the part headers.
+     */
+    public long getHeadersOffset() {
+        return headersOffset;
+    }
+
+    /**
+     * <p> Returns the offset of the part body, relative to the start of the stream.
+     *
+     * @return the offset of the part body.
+     */
+    public long getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * <p> Returns the length of the part body.
+     *
+     * @return the length of the part body.
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    void assertIsReadable() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+    }
+
+    void assertIsWritable() {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+    }
+
+    /*
+     * Reads the range of the capture with positional reads.
+     */
+    class RangeInputStream extends InputStream {
+
+        long position = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == bodyLength) {
+                return -1;
+            }
+            final int length = (int) Math.min(len, bodyLength - position);
+            final int read = rawCapture.read(ByteBuffer.wrap(b, off, length), bodyOffset + position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the capture file " + rawCapture.getFile().getAbsolutePath());
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, bodyLength - position);
+        }
+    }
+
+}
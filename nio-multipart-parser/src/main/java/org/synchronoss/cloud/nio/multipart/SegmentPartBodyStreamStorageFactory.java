@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> A {@code PartBodyStreamStorageFactory} storing the part bodies exceeding the threshold in a shared {@link SegmentStore},
+ *     instead of one temporary file per part. It avoids the file system metadata operations (create, close, delete) of each part.
+ *
+ * <p> The parts declaring a {@code Content-Length} bigger than the threshold are appended to the segments directly.
+ *
+ * @author Silvano Riz.
+ */
+public class SegmentPartBodyStreamStorageFactory implements PartBodyStreamStorageFactory {
+
+    final SegmentStore segmentStore;
+    final int maxSizeThreshold;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param segmentStore The {@code SegmentStore} where the part bodies are stored.
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     */
+    public SegmentPartBodyStreamStorageFactory(final SegmentStore segmentStore, final int maxSizeThreshold) {
+        this.segmentStore = segmentStore;
+        this.maxSizeThreshold = maxSizeThreshold > 0 ? maxSizeThreshold : 0;
+    }
+
+    /**
+     * <p> Constructor that uses a default threshold of 10kb.
+     *
+     * @param segmentStore The {@code SegmentStore} where the part bodies are stored.
+     */
+    public SegmentPartBodyStreamStorageFactory(final SegmentStore segmentStore) {
+        this(segmentStore, DefaultPartBodyStreamStorageFactory.DEFAULT_MAX_THRESHOLD);
+    }
+
+    @Override
+    public StreamStorage newStreamStorageForPartBody(final Map<String, List<String>> partHeaders, final int partIndex) {
+        final long contentLength = MultipartUtils.getContentLength(partHeaders);
+        return new SegmentStreamStorage(segmentStore, contentLength > maxSizeThreshold ? 0 : maxSizeThreshold);
+    }
+
+}
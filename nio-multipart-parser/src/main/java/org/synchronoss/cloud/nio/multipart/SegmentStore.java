@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> A log structured store of part bodies shared across requests: instead of creating, writing and deleting one temporary file per part,
+ *     the part bodies are appended to a small set of large segment files that stay open. It is thread safe.
+ *
+ * <p> A writer leases a segment and appends to its tail, so the writes are sequential and a segment is written by one writer at a time.
+ *     When the writer is done the segment can be leased by another writer, which continues appending after the previous data.
+ *     A part body is stored as one or more extents (segment, offset, length). When all the extents of a segment have been freed,
+ *     the segment is recycled: the next writer overwrites it from the start. The segment files are never deleted until the store is closed.
+ *
+ * @author Silvano Riz.
+ */
+public class SegmentStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+
+    /**
+     * Default size of a segment. 64Mb
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    // Distinguishes the segment files of the stores sharing the same folder in this process
+    static final AtomicInteger storeCounter = new AtomicInteger(0);
+
+    final File folder;
+    final int storeId = storeCounter.getAndIncrement();
+    final long segmentSize;
+    final List<Segment> segments = new ArrayList<Segment>();
+    final Deque<Segment> availableSegments = new ArrayDeque<Segment>();
+    boolean closed = false;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param folderPath The path of the folder where to store the segment files. The folder is created if it does not exist.
+     * @param segmentSize The size in bytes of each segment.
+     */
+    public SegmentStore(final String folderPath, final long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("The segment size must be grater than 0. Size specified: " + segmentSize);
+        }
+        this.folder = TempFileManager.mkdirs(new File(folderPath));
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * <p> Constructor that uses segments of 64Mb.
+     *
+     * @param folderPath The path of the folder where to store the segment files. The folder is created if it does not exist.
+     */
+    public SegmentStore(final String folderPath) {
+        this(folderPath, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * <p> Returns the number of segment files.
+     *
+     * @return the number of segment files.
+     */
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * <p> Returns the number of extents that have not been freed yet.
+     *
+     * @return the number of extents that have not been freed yet.
+     */
+    public synchronized int getLiveExtents() {
+        int liveExtents = 0;
+        for (Segment segment : segments) {
+            liveExtents += segment.liveExtents;
+        }
+        return liveExtents;
+    }
+
+    /**
+     * <p> Closes and deletes the segment files. The extents still alive cannot be read anymore.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        availableSegments.clear();
+        for (Segment segment : segments) {
+            try {
+                segment.fileChannel.close();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) log.warn("Unable to close the segment file " + segment.file.getAbsolutePath(), e);
+            }
+            if (!segment.file.delete() && segment.file.exists()) {
+                if (log.isWarnEnabled()) log.warn("Unable to delete the segment file " + segment.file.getAbsolutePath());
+            }
+        }
+        segments.clear();
+    }
+
+    /*
+     * Leases a segment with free space for a new extent. The extent is counted as alive until released empty or freed.
+     */
+    synchronized Segment lease() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The segment store is closed");
+        }
+        Segment segment = availableSegments.poll();
+        if (segment == null) {
+            segment = newSegment();
+        }
+        segment.leased = true;
+        segment.liveExtents++;
+        return segment;
+    }
+
+    /*
+     * Ends the lease of the segment. If the writer did not write any data, its extent is not alive.
+     */
+    synchronized void release(final Segment segment, final boolean extentWritten) {
+        segment.leased = false;
+        if (!extentWritten) {
+            segment.liveExtents--;
+        }
+        if (segment.liveExtents == 0) {
+            segment.writePosition = 0;
+        }
+        if (!closed && segment.writePosition < segmentSize) {
+            availableSegments.push(segment);
+        }
+    }
+
+    /*
+     * Frees an extent of the segment. The segment is recycled when it has no more live extents.
+     */
+    synchronized void free(final Segment segment) {
+        segment.liveExtents--;
+        if (segment.liveExtents == 0 && !segment.leased) {
+            // A segment with free space is already available, a full one becomes available again
+            final boolean full = segment.writePosition >= segmentSize;
+            segment.writePosition = 0;
+            if (full && !closed) {
+                availableSegments.push(segment);
+            }
+        }
+    }
+
+    Segment newSegment() throws IOException {
+        final File file = new File(folder, String.format("nio-segment-%s-%d-%d.seg", TempFileManager.PROCESS_PREFIX, storeId, segments.size()));
+        // CREATE_NEW: a name clash with another store or a leftover file fails instead of sharing the file
+        final FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final Segment segment = new Segment(file, fileChannel);
+        segments.add(segment);
+        if (log.isDebugEnabled()) log.debug("New segment file: " + file.getAbsolutePath());
+        return segment;
+    }
+
+    static class Segment {
+
+        final File file;
+        final FileChannel fileChannel;
+        // Written only by the writer holding the lease
+        long writePosition = 0;
+        int liveExtents = 0;
+        boolean leased = false;
+
+        Segment(final File file, final FileChannel fileChannel) {
+            this.file = file;
+            this.fileChannel = fileChannel;
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.multipart.SegmentStore.Segment;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A {@code StreamStorage} keeping the data in memory up to the threshold and then appending it to the segments of a {@link SegmentStore}.
+ *     The data is stored as a list of extents (segment, offset, length), usually one, more if a segment fills up.
+ *
+ * <p> The {@code InputStream} returned by {@link #getInputStream()} reads the extents with positional reads, so several parts can be read
+ *     from the same segment at the same time. Closing it, or disposing the storage, frees the extents.
+ *
+ * @author Silvano Riz.
+ */
+public class SegmentStreamStorage extends StreamStorage {
+
+    static final int INITIAL_MEMORY_SIZE = 1024;
+
+    final SegmentStore segmentStore;
+    final int threshold;
+    final List<Extent> extents = new ArrayList<Extent>();
+    final AtomicBoolean released = new AtomicBoolean(false);
+    byte[] memory;
+    int memoryLength = 0;
+    Segment segment;
+    long extentOffset;
+    long extentLength;
+    volatile boolean inMemory = true;
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param segmentStore The {@code SegmentStore} where the data is stored if it exceeds the threshold.
+     * @param threshold The max number of bytes kept in memory.
+     */
+    public SegmentStreamStorage(final SegmentStore segmentStore, final int threshold) {
+        this.segmentStore = segmentStore;
+        this.threshold = threshold > 0 ? threshold : 0;
+        this.memory = new byte[Math.min(this.threshold, INITIAL_MEMORY_SIZE)];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        assertIsWritable();
+        if (inMemory) {
+            if (memoryLength + len <= threshold) {
+                if (memoryLength + len > memory.length) {
+                    memory = Arrays.copyOf(memory, Math.min(threshold, Math.max(memory.length * 2, memoryLength + len)));
+                }
+                System.arraycopy(b, off, memory, memoryLength, len);
+                memoryLength += len;
+                return;
+            }
+            inMemory = false;
+            append(memory, 0, memoryLength);
+            memory = null;
+        }
+        append(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        assertIsWritable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (segment != null) {
+                endExtent();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The storage must be closed before reading the data.
+     */
+    @Override
+    public InputStream getInputStream() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (released.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        if (inMemory) {
+            return new ByteArrayInputStream(memory, 0, memoryLength) {
+                @Override
+                public void close() throws IOException {
+                    dispose();
+                }
+            };
+        }
+        return new ExtentsInputStream();
+    }
+
+    /**
+     * <p> Returns true if the data is held in memory, false if it has been moved to the segments.
+     *
+     * @return true if the data is held in memory, false if it has been moved to the segments.
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    @Override
+    public boolean dispose() {
+        if (!released.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!closed) {
+            closed = true;
+            if (segment != null) {
+                endExtent();
+            }
+        }
+        for (Extent extent : extents) {
+            segmentStore.free(extent.segment);
+        }
+        return true;
+    }
+
+    void append(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (segment == null) {
+                segment = segmentStore.lease();
+                extentOffset = segment.writePosition;
+                extentLength = 0;
+            }
+            final int length = (int) Math.min(len, segmentStore.segmentSize - segment.writePosition);
+            if (length <= 0) {
+                // The segment is full, the data continues in another one
+                endExtent();
+                continue;
+            }
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, length);
+            long position = segment.writePosition;
+            while (byteBuffer.hasRemaining()) {
+                position += segment.fileChannel.write(byteBuffer, position);
+            }
+            segment.writePosition = position;
+            extentLength += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    void endExtent() {
+        final boolean extentWritten = extentLength > 0;
+        if (extentWritten) {
+            extents.add(new Extent(segment, extentOffset, extentLength));
+        }
+        segmentStore.release(segment, extentWritten);
+        segment = null;
+    }
+
+    void assertIsWritable() {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+    }
+
+    static class Extent {
+
+        final Segment segment;
+        final long offset;
+        final long length;
+
+        Extent(final Segment segment, final long offset, final long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /*
+     * Reads the extents with positional reads and frees them when closed.
+     */
+    class ExtentsInputStream extends InputStream {
+
+        int current = 0;
+        long position = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (released.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (current < extents.size() && position == extents.get(current).length) {
+                current++;
+                position = 0;
+            }
+            if (current == extents.size()) {
+                return -1;
+            }
+            final Extent extent = extents.get(current);
+            final int length = (int) Math.min(len, extent.length - position);
+            final int read = extent.segment.fileChannel.read(ByteBuffer.wrap(b, off, length), extent.offset + position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the segment file " + extent.segment.file.getAbsolutePath());
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            long available = 0;
+            for (int i = current; i < extents.size(); i++) {
+                available += extents.get(i).length;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, available - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            dispose();
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p> A dedicated thread writing the data of the {@link WriteBehindStreamStorage}s to disk.
+ *     One {@code SpillWriter} is meant to serve one disk: the writes to the same disk are serialized, while the writes to different disks
+ *     run in parallel. The tasks are run in submission order, so the data of a storage is written in order.
+ *
+ * @author Silvano Riz.
+ */
+public class SpillWriter implements Closeable {
+
+    final ExecutorService executorService;
+
+    /**
+     * <p> Constructor. Starts the writer thread.
+     *
+     * @param name The name of the writer thread.
+     */
+    public SpillWriter(final String name) {
+        this.executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * <p> Submits a write task.
+     *
+     * @param task The task
+     * @throws java.util.concurrent.RejectedExecutionException if the writer is closed
+     */
+    public void submit(final Runnable task) {
+        executorService.execute(task);
+    }
+
+    /**
+     * <p> Stops the writer thread after the submitted tasks are completed.
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+
+}
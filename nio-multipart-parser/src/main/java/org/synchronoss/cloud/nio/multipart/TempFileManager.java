@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p> Provides the temporary files where the part bodies are stored. It is thread safe.
+ *
+ * <p> The files can be spread across several folders, typically on different disks: each new file goes to the next folder, in round robin.
+ *     Within a folder, the files can be sharded in sub folders chosen by hashing the file name, so that no folder holds a huge number of entries.
+ *
+ * <p> The file names are unique without using {@code UUID.randomUUID()}, which contends on a shared {@code SecureRandom}:
+ *     they are built from a prefix chosen once per process and a counter. The counter is striped by thread to avoid contention.
+ *
+ * @author Silvano Riz.
+ */
+public class TempFileManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TempFileManager.class);
+
+    // Number of counter stripes, a power of two.
+    static final int STRIPES = 16;
+
+    // Distance between two stripes in the counters array, so that each stripe is on its own cache line.
+    static final int STRIPE_PADDING = 8;
+
+    // Unique for the process, so that the names do not clash with the files of another process sharing the folders.
+    static final String PROCESS_PREFIX = Long.toHexString(System.currentTimeMillis()) + Integer.toHexString(new Random().nextInt());
+
+    final File[] folders;
+    final int shards;
+    final AtomicInteger nextFolder = new AtomicInteger(0);
+    final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+    /**
+     * <p> Constructor.
+     *
+     * @param shards The number of sub folders of each folder, between 0 (no sub folders) and 256.
+     * @param folderPaths The paths of the folders where to store the temporary files. The folders are created if they do not exist.
+     */
+    public TempFileManager(final int shards, final String... folderPaths) {
+        if (folderPaths.length == 0) {
+            throw new IllegalArgumentException("At least one temporary folder must be specified");
+        }
+        if (shards < 0 || shards > 256) {
+            throw new IllegalArgumentException("The number of shards must be between 0 and 256. Value specified: " + shards);
+        }
+        this.shards = shards;
+        this.folders = new File[folderPaths.length];
+        for (int i = 0; i < folderPaths.length; i++) {
+            folders[i] = mkdirs(new File(folderPaths[i]));
+            for (int shard = 0; shard < shards; shard++) {
+                mkdirs(new File(folders[i], shardName(shard)));
+            }
+            if (log.isDebugEnabled()) log.debug("Temporary folder: " + folders[i].getAbsolutePath());
+        }
+    }
+
+    /**
+     * <p> Constructor for a single folder without sub folders.
+     *
+     * @param folderPath The path of the folder where to store the temporary files. The folder is created if it does not exist.
+     */
+    public TempFileManager(final String folderPath) {
+        this(0, folderPath);
+    }
+
+    /**
+     * <p> Returns a new temporary file. The file is not created.
+     *
+     * @param partIndex The index of the part, used in the file name.
+     * @return the new temporary file.
+     */
+    public File newTempFile(final int partIndex) {
+        final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        final long count = counters.incrementAndGet(stripe * STRIPE_PADDING);
+        final String tempFileName = String.format("nio-body-%d-%s-%x-%x.tmp", partIndex, PROCESS_PREFIX, stripe, count);
+        final File folder = folders[(nextFolder.getAndIncrement() & Integer.MAX_VALUE) % folders.length];
+        if (shards == 0) {
+            return new File(folder, tempFileName);
+        }
+        return new File(new File(folder, shardName(shard(stripe, count))), tempFileName);
+    }
+
+    int shard(final int stripe, final long count) {
+        // Spread the bits, so that consecutive files go to different shards
+        long hash = (count * STRIPES + stripe) * 0x9E3779B97F4A7C15L;
+        hash ^= (hash >>> 32);
+        return (int) ((hash & Long.MAX_VALUE) % shards);
+    }
+
+    static String shardName(final int shard) {
+        return String.format("%02x", shard);
+    }
+
+    static File mkdirs(final File folder) {
+        if (!folder.exists()) {
+            if (!folder.mkdirs() && !folder.isDirectory()) {
+                throw new IllegalStateException("Unable to create the temporary folder: " + folder.getPath());
+            }
+        }
+        return folder;
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A bounded pool of temporary files that are already created and open.
+ *     Creating a file costs a system call and contends on the folder, which slows down the thread parsing the multipart stream
+ *     (in a Servlet 3.1 container, the I/O thread). The pool moves that cost to a background thread, which refills the pool when files are taken.
+ *
+ * <p> The files are given back to the pool after use: they are truncated instead of being deleted, so they can be reused.
+ *     When the pool is full or closed, the files given back are deleted.
+ *
+ * @author Silvano Riz.
+ */
+public class TempFilePool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TempFilePool.class);
+
+    final TempFileManager tempFileManager;
+    final BlockingQueue<PooledFile> files;
+    final Executor refiller;
+    final ExecutorService ownedExecutorService;
+    final AtomicBoolean refilling = new AtomicBoolean(false);
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor. The pool starts filling itself in background, using a dedicated daemon thread.
+     *
+     * @param tempFileManager The {@code TempFileManager} providing the temporary files.
+     * @param maxSize The max number of files kept in the pool, a strictly positive integer.
+     */
+    public TempFilePool(final TempFileManager tempFileManager, final int maxSize) {
+        this(tempFileManager, maxSize, null);
+    }
+
+    /**
+     * <p> Constructor. The pool starts filling itself in background.
+     *
+     * @param tempFileManager The {@code TempFileManager} providing the temporary files.
+     * @param maxSize The max number of files kept in the pool, a strictly positive integer.
+     * @param refiller The {@code Executor} running the refills of the pool or null to use a dedicated daemon thread.
+     */
+    public TempFilePool(final TempFileManager tempFileManager, final int maxSize, final Executor refiller) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The pool size must be grater than 0. Size specified: " + maxSize);
+        }
+        this.tempFileManager = tempFileManager;
+        this.files = new ArrayBlockingQueue<PooledFile>(maxSize);
+        if (refiller != null) {
+            this.refiller = refiller;
+            this.ownedExecutorService = null;
+        } else {
+            this.ownedExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "nio-multipart-temp-file-pool");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.refiller = ownedExecutorService;
+        }
+        refill();
+    }
+
+    /**
+     * <p> Takes a file from the pool.
+     *
+     * @return An open and empty file or null if the pool is empty.
+     */
+    public PooledFile acquire() {
+        final PooledFile pooledFile = files.poll();
+        refill();
+        return pooledFile;
+    }
+
+    /**
+     * <p> Gives back a file to the pool. The file is truncated, or deleted if the pool is full or closed.
+     *
+     * @param pooledFile The file acquired via {@link #acquire()}
+     */
+    public void release(final PooledFile pooledFile) {
+        try {
+            pooledFile.fileChannel.truncate(0);
+            pooledFile.fileChannel.position(0);
+            if (!closed && files.offer(pooledFile)) {
+                return;
+            }
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) log.warn("Unable to truncate the temporary file " + pooledFile.file.getAbsolutePath(), e);
+        }
+        pooledFile.delete();
+    }
+
+    /**
+     * <p> Returns the number of files currently available in the pool.
+     *
+     * @return the number of files currently available in the pool.
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * <p> Stops the refills and deletes the files in the pool. The files in use are deleted when given back.
+     *     The {@code Executor} passed to the constructor, if any, is not shut down.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownedExecutorService != null) {
+            ownedExecutorService.shutdown();
+        }
+        PooledFile pooledFile;
+        while ((pooledFile = files.poll()) != null) {
+            pooledFile.delete();
+        }
+    }
+
+    void refill() {
+        if (!closed && files.remainingCapacity() > 0 && refilling.compareAndSet(false, true)) {
+            try {
+                refiller.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (!closed && files.remainingCapacity() > 0) {
+                                final PooledFile pooledFile = new PooledFile(tempFileManager.newTempFile(0));
+                                if (closed || !files.offer(pooledFile)) {
+                                    pooledFile.delete();
+                                }
+                            }
+                        } catch (Exception e) {
+                            if (log.isWarnEnabled()) log.warn("Unable to create a temporary file", e);
+                        } finally {
+                            refilling.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Closed in the meantime (or the executor is saturated): acquire() must not fail and the next refill can try again
+                refilling.set(false);
+                if (!closed && log.isWarnEnabled()) log.warn("Unable to refill the temporary file pool", e);
+            }
+        }
+    }
+
+    /**
+     * <p> A temporary file of the pool, with its open channel.
+     */
+    public static class PooledFile {
+
+        final File file;
+        final FileChannel fileChannel;
+
+        PooledFile(final File file) throws IOException {
+            this.file = file;
+            this.fileChannel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        /**
+         * <p> Returns the file.
+         *
+         * @return the file.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        void delete() {
+            try {
+                fileChannel.close();
+            } catch (Exception e) {
+                // Do nothing
+            }
+            if (!file.delete() && file.exists()) {
+                if (log.isWarnEnabled()) log.warn("Unable to delete the temporary file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p> Deletes the temporary files in background, on a dedicated low priority thread, so that the thread disposing a part body
+ *     {@code StreamStorage} (usually the request thread) does not wait for the file system. Deleting a big file can take milliseconds.
+ *
+ * <p> The files are queued and deleted in batches. The queue is bounded: when it is full, the file is deleted synchronously by the calling thread.
+ *     The number of files and bytes waiting to be deleted can be monitored.
+ *
+ * @author Silvano Riz.
+ */
+public class TempFileReaper implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TempFileReaper.class);
+
+    /**
+     * Default max number of files waiting to be deleted.
+     */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+
+    /**
+     * Default max number of files deleted in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    static final long POLL_TIMEOUT_MILLIS = 100;
+
+    final BlockingQueue<PendingFile> queue;
+    final int batchSize;
+    final AtomicLong pendingFiles = new AtomicLong(0);
+    final AtomicLong pendingBytes = new AtomicLong(0);
+    final Thread reaperThread;
+    volatile boolean closed = false;
+
+    /**
+     * <p> Constructor. Starts the reaper thread.
+     *
+     * @param maxQueueSize The max number of files waiting to be deleted, a strictly positive integer.
+     * @param batchSize The max number of files deleted in a batch, a strictly positive integer.
+     */
+    public TempFileReaper(final int maxQueueSize, final int batchSize) {
+        this(maxQueueSize, batchSize, true);
+    }
+
+    TempFileReaper(final int maxQueueSize, final int batchSize, final boolean startReaperThread) {
+        if (maxQueueSize <= 0) {
+            throw new IllegalArgumentException("The queue size must be grater than 0. Size specified: " + maxQueueSize);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be grater than 0. Size specified: " + batchSize);
+        }
+        this.queue = new ArrayBlockingQueue<PendingFile>(maxQueueSize);
+        this.batchSize = batchSize;
+        this.reaperThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reap();
+            }
+        }, "nio-multipart-temp-file-reaper");
+        this.reaperThread.setDaemon(true);
+        this.reaperThread.setPriority(Thread.MIN_PRIORITY);
+        if (startReaperThread) {
+            this.reaperThread.start();
+        }
+    }
+
+    /**
+     * <p> Constructor that uses the default queue and batch sizes.
+     */
+    public TempFileReaper() {
+        this(DEFAULT_MAX_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * <p> Deletes the file in background or, if the queue is full or the reaper is closed, synchronously.
+     *
+     * @param file The file to delete.
+     */
+    public void delete(final File file) {
+        final long length = file.length();
+        pendingFiles.incrementAndGet();
+        pendingBytes.addAndGet(length);
+        if (closed) {
+            deleteNow(file, length);
+            return;
+        }
+        final PendingFile pendingFile = new PendingFile(file, length);
+        if (!queue.offer(pendingFile)) {
+            deleteNow(file, length);
+        } else if (closed && queue.remove(pendingFile)) {
+            // Closed while queuing, the thread closing the reaper might have already emptied the queue
+            deleteNow(file, length);
+        }
+    }
+
+    /**
+     * <p> Returns the number of files waiting to be deleted.
+     *
+     * @return the number of files waiting to be deleted.
+     */
+    public long getPendingFiles() {
+        return pendingFiles.get();
+    }
+
+    /**
+     * <p> Returns the size in bytes of the files waiting to be deleted.
+     *
+     * @return the size in bytes of the files waiting to be deleted.
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * <p> Stops the reaper. The files still in the queue are deleted by the calling thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        reaperThread.interrupt();
+        try {
+            reaperThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingFile pendingFile;
+        while ((pendingFile = queue.poll()) != null) {
+            deleteNow(pendingFile.file, pendingFile.length);
+        }
+    }
+
+    void reap() {
+        final List<PendingFile> batch = new ArrayList<PendingFile>(batchSize);
+        while (!closed) {
+            try {
+                final PendingFile pendingFile = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (pendingFile == null) {
+                    continue;
+                }
+                batch.add(pendingFile);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                // Closed, the remaining files are deleted by the thread closing the reaper
+            }
+            for (PendingFile pendingFile : batch) {
+                deleteNow(pendingFile.file, pendingFile.length);
+            }
+            batch.clear();
+        }
+    }
+
+    void deleteNow(final File file, final long length) {
+        try {
+            if (!file.delete() && file.exists()) {
+                if (log.isWarnEnabled()) log.warn("Unable to delete the temporary file " + file.getAbsolutePath());
+            }
+        } finally {
+            pendingFiles.decrementAndGet();
+            pendingBytes.addAndGet(-length);
+        }
+    }
+
+    static class PendingFile {
+
+        final File file;
+        final long length;
+
+        PendingFile(final File file, final long length) {
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+}
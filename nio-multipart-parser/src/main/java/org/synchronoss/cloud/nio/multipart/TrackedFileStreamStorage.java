@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.FileStreamStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A deferred {@code FileStreamStorage} tracking the resources it uses:
+ * <ul>
+ *     <li>If a {@link MemoryBudget} is provided, the storage holds a reservation of {@code threshold} bytes for as long as it holds the data
+ *         in memory: the reservation is released when the data is moved to file (threshold exceeded), when it is moved via {@link #moveTo(Path)}
+ *         or when the storage is disposed. Reading the data does not release it, because the storage still holds the data until it is disposed.</li>
+ *     <li>If a {@link TempFileReaper} is provided, the file is deleted via the reaper when the {@code InputStream} is closed and when the storage is disposed.</li>
+ *     <li>If the expected length of the data (e.g. the {@code Content-Length} of the part) is known and within the threshold, the data is kept
+ *         in an array of exactly that size instead of a buffer growing by doubling. If more data is written, it is handed over to the {@code FileStreamStorage}.</li>
+ * </ul>
+ *
+ * @author Silvano Riz.
+ */
+class TrackedFileStreamStorage extends FileStreamStorage implements Movable, Transferable {
+
+    final File file;
+    final int threshold;
+    final MemoryBudget memoryBudget;
+    final TempFileReaper tempFileReaper;
+    final AtomicBoolean released = new AtomicBoolean(false);
+    volatile boolean closed = false;
+    volatile boolean moved = false;
+    volatile byte[] presized;
+    volatile int presizedCount = 0;
+
+    /**
+     * <p> Constructor. If a {@code MemoryBudget} is provided, the {@code threshold} bytes must have been already reserved.
+     *
+     * @param file The file used if the data exceeds the threshold.
+     * @param threshold The max number of bytes kept in memory.
+     * @param memoryBudget The budget where the memory has been reserved or null.
+     * @param tempFileReaper The reaper deleting the file or null.
+     */
+    TrackedFileStreamStorage(final File file, final int threshold, final MemoryBudget memoryBudget, final TempFileReaper tempFileReaper) {
+        this(file, threshold, -1, memoryBudget, tempFileReaper);
+    }
+
+    /**
+     * <p> Constructor. If a {@code MemoryBudget} is provided, the {@code threshold} bytes must have been already reserved.
+     *
+     * @param file The file used if the data exceeds the threshold.
+     * @param threshold The max number of bytes kept in memory.
+     * @param expectedLength The expected number of bytes or -1 if unknown. If it is within the threshold, the memory is allocated upfront.
+     * @param memoryBudget The budget where the memory has been reserved or null.
+     * @param tempFileReaper The reaper deleting the file or null.
+     */
+    TrackedFileStreamStorage(final File file, final int threshold, final long expectedLength, final MemoryBudget memoryBudget, final TempFileReaper tempFileReaper) {
+        super(file, threshold, false);
+        this.file = file;
+        this.threshold = threshold;
+        this.memoryBudget = memoryBudget;
+        this.tempFileReaper = tempFileReaper;
+        this.presized = (expectedLength > 0 && expectedLength <= threshold) ? new byte[(int) expectedLength] : null;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (fitsPresized(1)) {
+            presized[presizedCount++] = (byte) b;
+            return;
+        }
+        super.write(b);
+        releaseIfOnFile();
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (fitsPresized(len)) {
+            System.arraycopy(b, off, presized, presizedCount, len);
+            presizedCount += len;
+            return;
+        }
+        super.write(b, off, len);
+        releaseIfOnFile();
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        closed = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> If the data never left the memory, it is written directly to the destination.
+     */
+    @Override
+    public void moveTo(final Path destination) throws IOException {
+        if (!closed) {
+            throw new IllegalStateException("Cannot move the data, the storage is not closed.");
+        }
+        if (moved) {
+            throw new IllegalStateException("Cannot move the data, it has been already moved.");
+        }
+        if (isInMemory()) {
+            FileMover.write(newInputStream(), destination);
+        } else {
+            FileMover.move(file, destination);
+        }
+        moved = true;
+        presized = null;
+        release();
+    }
+
+    @Override
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        assertIsReadable();
+        if (isInMemory()) {
+            return ChannelTransfers.write(memoryViews(), target);
+        }
+        return ChannelTransfers.transferFile(file, target);
+    }
+
+    @Override
+    public ReadableByteChannel getReadableChannel() throws IOException {
+        assertIsReadable();
+        if (isInMemory()) {
+            return new ChannelTransfers.BuffersChannel(memoryViews());
+        }
+        return ChannelTransfers.openFile(file);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (moved) {
+            throw new IllegalStateException("Cannot read the data, it has been moved.");
+        }
+        final InputStream inputStream = newInputStream();
+        if (isInMemory() || tempFileReaper == null) {
+            return inputStream;
+        }
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                tempFileReaper.delete(file);
+            }
+        };
+    }
+
+    @Override
+    public boolean dispose() {
+        try {
+            final boolean disposed = super.dispose();
+            if (tempFileReaper != null && file.exists()) {
+                tempFileReaper.delete(file);
+                return true;
+            }
+            return disposed;
+        } finally {
+            presized = null;
+            release();
+        }
+    }
+
+    List<ByteBuffer> memoryViews() throws IOException {
+        final byte[] presized = this.presized;
+        if (presized != null) {
+            return Collections.singletonList(ByteBuffer.wrap(presized, 0, presizedCount).asReadOnlyBuffer());
+        }
+        // The FileStreamStorage does not expose its buffer, so the data (at most threshold bytes) is read once
+        final InputStream inputStream = super.getInputStream();
+        try {
+            final byte[] data = new byte[inputStream.available()];
+            int read = 0;
+            int chunk;
+            while (read < data.length && (chunk = inputStream.read(data, read, data.length - read)) != -1) {
+                read += chunk;
+            }
+            return Collections.singletonList(ByteBuffer.wrap(data, 0, read).asReadOnlyBuffer());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    InputStream newInputStream() {
+        // The FileStreamStorage checks the state, the data is in the presized array if it is still used
+        final InputStream inputStream = super.getInputStream();
+        final byte[] presized = this.presized;
+        if (presized != null) {
+            return new ByteArrayInputStream(presized, 0, presizedCount);
+        }
+        return inputStream;
+    }
+
+    boolean fitsPresized(final int len) throws IOException {
+        final byte[] presized = this.presized;
+        if (presized == null || closed) {
+            return false;
+        }
+        if (presizedCount + len <= presized.length) {
+            return true;
+        }
+        // More data than expected, what has been written so far is handed over to the FileStreamStorage
+        this.presized = null;
+        super.write(presized, 0, presizedCount);
+        return false;
+    }
+
+    void assertIsReadable() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (moved) {
+            throw new IllegalStateException("Cannot read the data, it has been moved.");
+        }
+    }
+
+    void releaseIfOnFile() {
+        if (!isInMemory()) {
+            release();
+        }
+    }
+
+    void release() {
+        if (memoryBudget != null && released.compareAndSet(false, true)) {
+            memoryBudget.release(threshold);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p> A part body {@code StreamStorage} whose data can be read through channels, without the heap copies of {@code InputStream.read}.
+ *     Useful to serve or forward the part bodies, for example to a socket.
+ *
+ * @author Silvano Riz.
+ */
+public interface Transferable {
+
+    /**
+     * <p> Transfers all the data to the channel. The storage must be closed and the channel should be in blocking mode.
+     *     When the data is in a file it is transferred with {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)},
+     *     which, depending on the target channel and on the operating system, copies it in the kernel (e.g. sendfile for a socket).
+     *     When the data is in memory it is written from read-only {@code ByteBuffer} views.
+     *     The data can be transferred several times, the storage must still be disposed when it is not needed anymore.
+     *
+     * @param target The channel to write to.
+     * @return the number of bytes transferred.
+     * @throws IOException if an I/O error occurs
+     */
+    long transferTo(final WritableByteChannel target) throws IOException;
+
+    /**
+     * <p> Returns a new channel reading the data. The storage must be closed.
+     *     Closing the channel does not dispose the storage.
+     *
+     * @return a channel reading the data.
+     * @throws IOException if an I/O error occurs
+     */
+    ReadableByteChannel getReadableChannel() throws IOException;
+
+}
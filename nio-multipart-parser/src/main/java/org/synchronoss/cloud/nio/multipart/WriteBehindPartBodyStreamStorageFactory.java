@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p> A {@code PartBodyStreamStorageFactory} storing the part bodies in {@link WriteBehindStreamStorage}s, so that the data is written to disk
+ *     in background and the parsing is not stalled by a slow disk. Each folder of the {@link TempFileManager} gets its own {@link SpillWriter} thread,
+ *     so the folders should be mounted on different disks.
+ *
+ * <p> The factory must be closed when not used anymore, to stop the {@code SpillWriter} threads.
+ *
+ * @author Silvano Riz.
+ */
+public class WriteBehindPartBodyStreamStorageFactory extends DefaultPartBodyStreamStorageFactory implements Closeable {
+
+    /**
+     * Default size of the buffers. 64Kb
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /**
+     * Default max number of buffers of a part being written at the same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BUFFERS = 4;
+
+    final int bufferSize;
+    final int maxInFlightBuffers;
+    final SpillWriter[] spillWriters;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param tempFileManager The {@code TempFileManager} providing the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     * @param bufferSize The size of the buffers, a strictly positive integer.
+     * @param maxInFlightBuffers The max number of buffers of a part being written at the same time, a strictly positive integer.
+     */
+    public WriteBehindPartBodyStreamStorageFactory(final TempFileManager tempFileManager, final int maxSizeThreshold, final int bufferSize, final int maxInFlightBuffers) {
+        super(tempFileManager, maxSizeThreshold, null);
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size must be grater than 0. Size specified: " + bufferSize);
+        }
+        if (maxInFlightBuffers <= 0) {
+            throw new IllegalArgumentException("The max number of in flight buffers must be grater than 0. Value specified: " + maxInFlightBuffers);
+        }
+        this.bufferSize = bufferSize;
+        this.maxInFlightBuffers = maxInFlightBuffers;
+        this.spillWriters = new SpillWriter[tempFileManager.folders.length];
+        for (int i = 0; i < spillWriters.length; i++) {
+            spillWriters[i] = new SpillWriter("nio-multipart-spill-writer-" + i);
+        }
+    }
+
+    /**
+     * <p> Constructor that uses the default buffer size and max number of in flight buffers.
+     *
+     * @param tempFileManager The {@code TempFileManager} providing the temporary files
+     * @param maxSizeThreshold The maximum amount of bytes that will be kept in memory for each part. If zero or negative no memory will be used.
+     */
+    public WriteBehindPartBodyStreamStorageFactory(final TempFileManager tempFileManager, final int maxSizeThreshold) {
+        this(tempFileManager, maxSizeThreshold, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IN_FLIGHT_BUFFERS);
+    }
+
+    @Override
+    public StreamStorage newStreamStorageForPartBody(final Map<String, List<String>> partHeaders, final int partIndex) {
+        final File file = getTempFile(partIndex);
+        return new WriteBehindStreamStorage(file, getThreshold(partHeaders), bufferSize, maxInFlightBuffers, getSpillWriter(file));
+    }
+
+    /**
+     * <p> Stops the {@code SpillWriter} threads after the pending writes are completed.
+     */
+    @Override
+    public void close() {
+        for (SpillWriter spillWriter : spillWriters) {
+            spillWriter.close();
+        }
+    }
+
+    SpillWriter getSpillWriter(final File file) {
+        final File[] folders = tempFileManager.folders;
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            for (int i = 0; i < folders.length; i++) {
+                if (folders[i].equals(parent)) {
+                    return spillWriters[i];
+                }
+            }
+        }
+        return spillWriters[0];
+    }
+
+}
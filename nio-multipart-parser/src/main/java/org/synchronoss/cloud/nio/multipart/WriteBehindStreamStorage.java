@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p> A {@code StreamStorage} writing the data to file in background, on a {@link SpillWriter} thread, so that a slow disk does not stall
+ *     the thread parsing the multipart stream.
+ *
+ * <p> The data is collected in buffers. Up to the threshold, the buffers are kept in memory. Beyond it, each filled buffer is handed over
+ *     to the {@code SpillWriter} and a new buffer is used. The number of buffers being written (in flight) is bounded: when the limit is reached,
+ *     the writes block until the {@code SpillWriter} completes a buffer, so the memory used by a storage is bounded too.
+ *     The file is created and written by the {@code SpillWriter} thread.
+ *
+ * <p> {@link #close()} returns when all the data has been written to the file (in the page cache, not necessarily on the disk).
+ *     The file is deleted when the {@code InputStream} is closed or when the storage is disposed.
+ *
+ * @author Silvano Riz.
+ */
+public class WriteBehindStreamStorage extends StreamStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindStreamStorage.class);
+
+    final File file;
+    final int threshold;
+    final int bufferSize;
+    final int maxInFlightBuffers;
+    final SpillWriter spillWriter;
+
+    final List<byte[]> memoryBuffers = new ArrayList<byte[]>();
+    final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<byte[]>();
+    final Semaphore inFlightBuffers;
+    final AtomicBoolean disposed = new AtomicBoolean(false);
+
+    volatile byte[] currentBuffer;
+    volatile int currentBufferLength = 0;
+    volatile long bytesWritten = 0;
+    volatile boolean inMemory = true;
+    volatile boolean closed = false;
+    volatile FileChannel fileChannel;
+    volatile IOException writeError;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param file The file where the data is stored if it exceeds the threshold. It is created only when needed.
+     * @param threshold The max number of bytes kept in memory.
+     * @param bufferSize The size of the buffers, a strictly positive integer.
+     * @param maxInFlightBuffers The max number of buffers being written at the same time, a strictly positive integer.
+     * @param spillWriter The {@code SpillWriter} writing the data to the file.
+     */
+    public WriteBehindStreamStorage(final File file, final int threshold, final int bufferSize, final int maxInFlightBuffers, final SpillWriter spillWriter) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size must be grater than 0. Size specified: " + bufferSize);
+        }
+        if (maxInFlightBuffers <= 0) {
+            throw new IllegalArgumentException("The max number of in flight buffers must be grater than 0. Value specified: " + maxInFlightBuffers);
+        }
+        this.file = file;
+        this.threshold = threshold;
+        this.bufferSize = bufferSize;
+        this.maxInFlightBuffers = maxInFlightBuffers;
+        this.spillWriter = spillWriter;
+        this.inFlightBuffers = new Semaphore(maxInFlightBuffers);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        assertIsWritable();
+        int written = 0;
+        while (written < len) {
+            if (currentBuffer == null) {
+                currentBuffer = newBuffer();
+                currentBufferLength = 0;
+            }
+            final int length = Math.min(bufferSize - currentBufferLength, len - written);
+            System.arraycopy(b, off + written, currentBuffer, currentBufferLength, length);
+            currentBufferLength += length;
+            written += length;
+            if (currentBufferLength == bufferSize) {
+                bufferFilled();
+            }
+        }
+        bytesWritten += len;
+        if (inMemory && bytesWritten > threshold) {
+            inMemory = false;
+            for (byte[] memoryBuffer : memoryBuffers) {
+                submit(memoryBuffer, bufferSize);
+            }
+            memoryBuffers.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The data is written in background, the method does not wait for it.
+     */
+    @Override
+    public void flush() throws IOException {
+        assertIsWritable();
+        checkWriteError();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> Waits until all the data has been written to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (inMemory) {
+            if (currentBuffer != null) {
+                memoryBuffers.add(currentBuffer);
+                currentBuffer = null;
+            }
+            return;
+        }
+        try {
+            if (currentBuffer != null) {
+                submit(currentBuffer, currentBufferLength);
+                currentBuffer = null;
+            }
+            awaitInFlightBuffers();
+        } finally {
+            closeFileChannel();
+        }
+        checkWriteError();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The storage must be closed before reading the data.
+     */
+    @Override
+    public InputStream getInputStream() {
+        if (!closed) {
+            throw new IllegalStateException("Cannot read the data, the storage is not closed.");
+        }
+        if (disposed.get()) {
+            throw new IllegalStateException("Cannot read the data, the storage has been disposed.");
+        }
+        if (inMemory) {
+            return new MemoryBuffersInputStream();
+        }
+        try {
+            return new DeleteOnCloseFileInputStream();
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("Unable to read the data from the file " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * <p> Returns true if the data is held in memory, false if it is written to the file.
+     *
+     * @return true if the data is held in memory, false if it is written to the file.
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    @Override
+    public boolean dispose() {
+        if (!disposed.compareAndSet(false, true)) {
+            return false;
+        }
+        closed = true;
+        memoryBuffers.clear();
+        currentBuffer = null;
+        if (!inMemory) {
+            // The buffers not yet written are skipped
+            try {
+                awaitInFlightBuffers();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) log.warn("Interrupted waiting for the buffers being written", e);
+            }
+            closeFileChannel();
+        }
+        return !file.exists() || file.delete();
+    }
+
+    void bufferFilled() throws IOException {
+        if (inMemory) {
+            memoryBuffers.add(currentBuffer);
+        } else {
+            submit(currentBuffer, bufferSize);
+        }
+        currentBuffer = null;
+    }
+
+    byte[] newBuffer() {
+        final byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    void submit(final byte[] buffer, final int length) throws IOException {
+        checkWriteError();
+        try {
+            inFlightBuffers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a buffer to be written");
+        }
+        try {
+            spillWriter.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!disposed.get() && writeError == null) {
+                            writeToFile(buffer, length);
+                        }
+                    } catch (IOException e) {
+                        writeError = e;
+                    } finally {
+                        freeBuffers.offer(buffer);
+                        inFlightBuffers.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightBuffers.release();
+            throw new IOException("Unable to submit the data to the spill writer", e);
+        }
+    }
+
+    // Runs on the SpillWriter thread
+    void writeToFile(final byte[] buffer, final int length) throws IOException {
+        if (fileChannel == null) {
+            fileChannel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            fileChannel.write(byteBuffer);
+        }
+    }
+
+    void awaitInFlightBuffers() throws IOException {
+        try {
+            inFlightBuffers.acquire(maxInFlightBuffers);
+            inFlightBuffers.release(maxInFlightBuffers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the data to be written");
+        }
+    }
+
+    void closeFileChannel() {
+        final FileChannel fileChannel = this.fileChannel;
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) log.warn("Unable to close the file channel", e);
+            }
+        }
+    }
+
+    void checkWriteError() throws IOException {
+        if (writeError != null) {
+            throw new IOException("Unable to write the data to the file " + file.getAbsolutePath(), writeError);
+        }
+    }
+
+    void assertIsWritable() {
+        if (closed) {
+            throw new IllegalStateException("Cannot write, the storage is closed.");
+        }
+    }
+
+    /*
+     * Reads the buffers held in memory.
+     */
+    class MemoryBuffersInputStream extends InputStream {
+
+        int buffer = 0;
+        int position = 0;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (disposed.get()) {
+                throw new IOException("The storage has been disposed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (buffer < memoryBuffers.size() && position == bufferLength(buffer)) {
+                buffer++;
+                position = 0;
+            }
+            if (buffer == memoryBuffers.size()) {
+                return -1;
+            }
+            final int length = Math.min(len, bufferLength(buffer) - position);
+            System.arraycopy(memoryBuffers.get(buffer), position, b, off, length);
+            position += length;
+            return length;
+        }
+
+        int bufferLength(final int index) {
+            return index == memoryBuffers.size() - 1 ? (int) (bytesWritten - (long) index * bufferSize) : bufferSize;
+        }
+    }
+
+    /*
+     * Deletes the file when closed.
+     */
+    class DeleteOnCloseFileInputStream extends FileInputStream {
+
+        DeleteOnCloseFileInputStream() throws FileNotFoundException {
+            super(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            dispose();
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p> A thread safe pool of direct {@code ByteBuffer} slabs of a fixed size.
+ *     A slab is allocated when the pool is empty and, when released, it is kept for reuse unless the pool already holds
+ *     the max number of slabs. The slabs that are not kept are left to the garbage collector.
+ *
+ * @author Silvano Riz.
+ */
+public class ByteBufferPool {
+
+    /**
+     * Default size of a slab. 4Kb
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4096;
+
+    /**
+     * Default max number of slabs kept in the pool.
+     */
+    public static final int DEFAULT_MAX_POOLED_SLABS = 1024;
+
+    final int slabSize;
+    final int maxPooledSlabs;
+    final Queue<ByteBuffer> slabs = new ConcurrentLinkedQueue<ByteBuffer>();
+    final AtomicInteger pooledSlabs = new AtomicInteger(0);
+
+    /**
+     * <p> Constructor.
+     *
+     * @param slabSize The size in bytes of each slab.
+     * @param maxPooledSlabs The max number of slabs kept in the pool.
+     */
+    public ByteBufferPool(final int slabSize, final int maxPooledSlabs) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("The slab size must be grater than 0. Size specified: " + slabSize);
+        }
+        if (maxPooledSlabs < 0) {
+            throw new IllegalArgumentException("The max number of pooled slabs cannot be negative. Value specified: " + maxPooledSlabs);
+        }
+        this.slabSize = slabSize;
+        this.maxPooledSlabs = maxPooledSlabs;
+    }
+
+    /**
+     * <p> Constructor that uses a default slab size of 4Kb and keeps up to 1024 slabs.
+     */
+    public ByteBufferPool() {
+        this(DEFAULT_SLAB_SIZE, DEFAULT_MAX_POOLED_SLABS);
+    }
+
+    /**
+     * <p> Takes a slab from the pool or allocates a new one if the pool is empty.
+     *
+     * @return A cleared direct {@code ByteBuffer} of {@link #getSlabSize()} bytes.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer slab = slabs.poll();
+        if (slab == null) {
+            return ByteBuffer.allocateDirect(slabSize);
+        }
+        pooledSlabs.decrementAndGet();
+        return slab;
+    }
+
+    /**
+     * <p> Returns a slab to the pool. The slab must not be used after it has been released.
+     *
+     * @param slab The slab acquired via {@link #acquire()}.
+     */
+    public void release(final ByteBuffer slab) {
+        if (slab.capacity() != slabSize || !slab.isDirect()) {
+            throw new IllegalArgumentException("The buffer has not been acquired from this pool");
+        }
+        if (pooledSlabs.incrementAndGet() <= maxPooledSlabs) {
+            slab.clear();
+            slabs.offer(slab);
+        } else {
+            pooledSlabs.decrementAndGet();
+        }
+    }
+
+    /**
+     * <p> Returns the size in bytes of each slab.
+     *
+     * @return the size in bytes of each slab.
+     */
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * <p> Returns the number of slabs currently available in the pool.
+     *
+     * @return the number of slabs currently available in the pool.
+     */
+    public int getPooledSlabs() {
+        return pooledSlabs.get();
+    }
+
+}
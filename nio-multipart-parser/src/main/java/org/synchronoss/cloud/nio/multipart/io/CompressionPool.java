@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p> A thread safe pool of {@code Deflater}s and {@code Inflater}s. Creating them is expensive (they allocate native memory)
+ *     so they are reset and kept for reuse, up to the max number of pooled instances of each type. The ones that are not kept are ended.
+ *
+ * @author Silvano Riz.
+ */
+public class CompressionPool {
+
+    /**
+     * Default compression level. The fastest, the data is compressed to save disk bandwidth, not to get the best ratio.
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * Default max number of {@code Deflater}s and {@code Inflater}s kept in the pool.
+     */
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    final int level;
+    final int maxPooled;
+    final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+    final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+    final AtomicInteger pooledDeflaters = new AtomicInteger(0);
+    final AtomicInteger pooledInflaters = new AtomicInteger(0);
+
+    /**
+     * <p> Constructor.
+     *
+     * @param level The compression level, from 0 to 9.
+     * @param maxPooled The max number of {@code Deflater}s and {@code Inflater}s kept in the pool.
+     */
+    public CompressionPool(final int level, final int maxPooled) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("The compression level must be between 0 and 9. Value specified: " + level);
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("The max number of pooled instances cannot be negative. Value specified: " + maxPooled);
+        }
+        this.level = level;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * <p> Constructor that uses the fastest compression level and keeps up to 64 instances of each type.
+     */
+    public CompressionPool() {
+        this(DEFAULT_LEVEL, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * <p> Takes a {@code Deflater} from the pool or creates a new one if the pool is empty.
+     *
+     * @return A {@code Deflater} ready to compress new data.
+     */
+    public Deflater acquireDeflater() {
+        final Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * <p> Returns a {@code Deflater} to the pool. It must not be used after it has been released.
+     *
+     * @param deflater The {@code Deflater} acquired via {@link #acquireDeflater()}.
+     */
+    public void releaseDeflater(final Deflater deflater) {
+        if (pooledDeflaters.incrementAndGet() <= maxPooled) {
+            deflater.reset();
+            deflaters.offer(deflater);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * <p> Takes an {@code Inflater} from the pool or creates a new one if the pool is empty.
+     *
+     * @return An {@code Inflater} ready to decompress new data.
+     */
+    public Inflater acquireInflater() {
+        final Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        pooledInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * <p> Returns an {@code Inflater} to the pool. It must not be used after it has been released.
+     *
+     * @param inflater The {@code Inflater} acquired via {@link #acquireInflater()}.
+     */
+    public void releaseInflater(final Inflater inflater) {
+        if (pooledInflaters.incrementAndGet() <= maxPooled) {
+            inflater.reset();
+            inflaters.offer(inflater);
+        } else {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * <p> Returns the number of {@code Deflater}s currently available in the pool.
+     *
+     * @return the number of {@code Deflater}s currently available in the pool.
+     */
+    public int getPooledDeflaters() {
+        return pooledDeflaters.get();
+    }
+
+    /**
+     * <p> Returns the number of {@code Inflater}s currently available in the pool.
+     *
+     * @return the number of {@code Inflater}s currently available in the pool.
+     */
+    public int getPooledInflaters() {
+        return pooledInflaters.get();
+    }
+
+}
@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * <p> A reusable circular buffer
@@ -79,6 +80,75 @@ public class CircularBuffer {
 
     }
 
+    /**
+     * <p> Writes a range of bytes in the first available slots in the buffer. If the buffer fills up the oldest data written will be overwritten.
+     *
+     * @param data The data to write
+     * @param offset The index of the first byte to write
+     * @param length The number of bytes to write
+     */
+    public void write(final byte[] data, final int offset, final int length){
+
+        if (length <= 0){
+            return;
+        }
+
+        // Only the last 'size' bytes can survive the write
+        final int actualOffset = length > size ? offset + length - size : offset;
+        final int actualLength = length > size ? size : length;
+
+        final int firstChunkLength = Math.min(actualLength, size - nextAvailablePosition);
+        System.arraycopy(data, actualOffset, buffer, nextAvailablePosition, firstChunkLength);
+        if (firstChunkLength < actualLength){
+            System.arraycopy(data, actualOffset + firstChunkLength, buffer, 0, actualLength - firstChunkLength);
+        }
+        nextAvailablePosition = forwards(nextAvailablePosition, actualLength);
+
+        if (availableReadLength + actualLength >= size){
+            // buffer is full, the oldest data (if any) has been overwritten
+            startValidDataIndex = nextAvailablePosition;
+            availableReadLength = size;
+        }else{
+            availableReadLength = availableReadLength + actualLength;
+        }
+
+    }
+
+    /**
+     * <p> Writes a range of bytes held by a {@code ByteBuffer} (heap or direct) in the first available slots in the buffer.
+     *     If the buffer fills up the oldest data written will be overwritten. The position and limit of the {@code ByteBuffer} are not modified.
+     *
+     * @param data The data to write
+     * @param offset The absolute index of the first byte to write
+     * @param length The number of bytes to write
+     */
+    public void write(final ByteBuffer data, final int offset, final int length){
+
+        if (length <= 0){
+            return;
+        }
+
+        final int actualOffset = length > size ? offset + length - size : offset;
+        final int actualLength = length > size ? size : length;
+
+        final ByteBuffer source = data.duplicate();
+        source.position(actualOffset);
+        final int firstChunkLength = Math.min(actualLength, size - nextAvailablePosition);
+        source.get(buffer, nextAvailablePosition, firstChunkLength);
+        if (firstChunkLength < actualLength){
+            source.get(buffer, 0, actualLength - firstChunkLength);
+        }
+        nextAvailablePosition = forwards(nextAvailablePosition, actualLength);
+
+        if (availableReadLength + actualLength >= size){
+            startValidDataIndex = nextAvailablePosition;
+            availableReadLength = size;
+        }else{
+            availableReadLength = availableReadLength + actualLength;
+        }
+
+    }
+
     /**
      * <p> Reads all the available valid data into an {@code OutputStream}
      *
@@ -151,6 +221,15 @@ public class CircularBuffer {
         return availableReadLength;
     }
 
+    /**
+     * <p> Returns the number of free slots
+     *
+     * @return the number of free slots
+     */
+    public int getAvailableWriteLength(){
+        return size - availableReadLength;
+    }
+
     /**
      * <p> Returns the buffer capacity
      *
@@ -20,12 +20,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * <p> A reusable buffer that is watching for end of line sequences.
  *     Every time the buffer is full or if an end of line is encountered the data (excluded the end of line sequence) will be flushed to an {@code OutputStream}.
  *     After an end of line sequence has been found, the buffer is not writable anymore and {@link #recycle(byte[], OutputStream)} must be call to reuse it.
  *
+ * <p> Data can be written one byte at the time via {@link #write(byte)} or one range at the time via {@link #write(byte[], int, int)}
+ *     and {@link #write(ByteBuffer, int, int)}.
+ *     The latter searches the end of line sequence with an {@link EndOfLineSequenceMatcher} and copies the range into the buffer in bulk,
+ *     which is considerably faster for the big chunks of data usually processed.
+ *
+ * <p> The buffer can be recycled in pass-through mode (see {@link #recycle(byte[], OutputStream, boolean)}). In pass-through mode the data of a
+ *     {@code byte[]} range that cannot be part of the end of line sequence is written straight from the range to the {@code OutputStream},
+ *     and only the bytes that are (or might be) part of the end of line sequence are kept in the buffer.
+ *     This saves a copy of the data, which is significant for big bodies.
+ *
  * @author Silvano Riz.
  */
 public class EndOfLineBuffer {
@@ -42,9 +54,18 @@ public class EndOfLineBuffer {
     // The end of line sequence
     volatile byte[] endOfLineSequence;
 
+    // The matcher for the current end of line sequence
+    volatile EndOfLineSequenceMatcher endOfLineSequenceMatcher;
+
+    // The matcher for the previous end of line sequence. The buffer is usually recycled alternating two sequences (headers and body delimiter).
+    volatile EndOfLineSequenceMatcher previousEndOfLineSequenceMatcher;
+
     // How many bytes are currently matching the end of line sequence
     volatile int endOfLineSequenceMatchingLength;
 
+    // If true the data of the byte[] ranges is flushed directly from the ranges, bypassing the circular buffer
+    volatile boolean passThrough;
+
     /**
      * <p> Constructor
      *
@@ -61,6 +82,7 @@ public class EndOfLineBuffer {
         this.circularBuffer = new CircularBuffer(size);
         this.flushOutputStream = flushOutputStream;
         this.endOfLineSequence = endOfLineSequence;
+        this.endOfLineSequenceMatcher = new EndOfLineSequenceMatcher(endOfLineSequence);
         this.endOfLineSequenceMatchingLength = 0;
     }
 
@@ -71,10 +93,30 @@ public class EndOfLineBuffer {
      * @param flushOutputStream The new {@code OutputStream} where to flush the data when the buffer is full.
      */
     public void recycle(final byte[] endOfLineSequence, final OutputStream flushOutputStream){
+        recycle(endOfLineSequence, flushOutputStream, false);
+    }
+
+    /**
+     * <p> Recycles the buffer, enabling or disabling the pass-through mode.
+     *     In pass-through mode the data written via {@link #write(byte[], int, int)} that is not part of the end of line sequence
+     *     is written directly to the {@code OutputStream} instead of being copied into the buffer first.
+     *     Ranges written via {@link #write(ByteBuffer, int, int)} that are not backed by an array are still copied into the buffer,
+     *     because an {@code OutputStream} can only be written from a {@code byte[]}.
+     *
+     * @param endOfLineSequence The new end of line sequence.
+     * @param flushOutputStream The new {@code OutputStream} where to flush the data.
+     * @param passThrough true to enable the pass-through mode, false otherwise.
+     */
+    public void recycle(final byte[] endOfLineSequence, final OutputStream flushOutputStream, final boolean passThrough){
+        if (endOfLineSequence.length >= circularBuffer.getBufferSize()){
+            throw new IllegalArgumentException("The end of line sequence cannot be larger than the buffer size. End of line sequence length: " + endOfLineSequence.length + ", buffer size: " + circularBuffer.getBufferSize());
+        }
         this.circularBuffer.reset();
         this.flushOutputStream = flushOutputStream;
         this.endOfLineSequence = endOfLineSequence;
+        this.endOfLineSequenceMatcher = matcherFor(endOfLineSequence);
         this.endOfLineSequenceMatchingLength = 0;
+        this.passThrough = passThrough;
     }
 
     /**
@@ -100,6 +142,78 @@ public class EndOfLineBuffer {
         return isEndOfLine;
     }
 
+    /**
+     * <p> Writes a range of data in the buffer. The write stops right after the end of line sequence, if one is encountered.
+     *     If the buffer already encountered an end of line sequence, and exception will be thrown.
+     *
+     * @param data The data.
+     * @param offset The index of the first byte to write.
+     * @param length The number of bytes available for writing.
+     * @return the number of bytes actually written. If the end of line sequence has been encountered ({@link #isEndOfLine()} returns true)
+     *         it can be lower than the length.
+     */
+    public int write(final byte[] data, final int offset, final int length){
+
+        if (isEndOfLine()){
+            throw new IllegalStateException("Buffer is in an end of line state. You need to recycle it before writing.");
+        }
+
+        if (length <= 0){
+            return 0;
+        }
+
+        final int end = offset + length;
+        final int endOfLineIndex = endOfLineSequenceMatcher.indexOf(data, offset, end, endOfLineSequenceMatchingLength);
+        if (endOfLineIndex != -1){
+            return writeRange(data, null, offset, endOfLineIndex, endOfLineSequence.length);
+        }else{
+            return writeRange(data, null, offset, end, endOfLineSequenceMatcher.partialMatchLength(data, offset, end, endOfLineSequenceMatchingLength));
+        }
+    }
+
+    /**
+     * <p> Writes a range of data held by a {@code ByteBuffer} (heap or direct) in the buffer. The data is scanned in place and the
+     *     position and limit of the {@code ByteBuffer} are not modified. The write stops right after the end of line sequence, if one is encountered.
+     *     If the buffer already encountered an end of line sequence, and exception will be thrown.
+     *
+     * @param data The data.
+     * @param offset The absolute index of the first byte to write.
+     * @param length The number of bytes available for writing.
+     * @return the number of bytes actually written. If the end of line sequence has been encountered ({@link #isEndOfLine()} returns true)
+     *         it can be lower than the length.
+     */
+    public int write(final ByteBuffer data, final int offset, final int length){
+
+        if (isEndOfLine()){
+            throw new IllegalStateException("Buffer is in an end of line state. You need to recycle it before writing.");
+        }
+
+        if (length <= 0){
+            return 0;
+        }
+
+        if (data.hasArray()){
+            return write(data.array(), data.arrayOffset() + offset, length);
+        }
+
+        final int end = offset + length;
+        final int endOfLineIndex = endOfLineSequenceMatcher.indexOf(data, offset, end, endOfLineSequenceMatchingLength);
+        if (endOfLineIndex != -1){
+            return writeRange(null, data, offset, endOfLineIndex, endOfLineSequence.length);
+        }else{
+            return writeRange(null, data, offset, end, endOfLineSequenceMatcher.partialMatchLength(data, offset, end, endOfLineSequenceMatchingLength));
+        }
+    }
+
+    /**
+     * <p> Returns the buffer capacity
+     *
+     * @return The buffer capacity
+     */
+    public int getBufferSize() {
+        return circularBuffer.getBufferSize();
+    }
+
     /**
      * <p> Returns if an end of line has been encountered.
      *
@@ -110,16 +224,103 @@ public class EndOfLineBuffer {
     }
 
     boolean updateEndOfLineMatchingStatus(final byte b){
-        if (endOfLineSequence[endOfLineSequenceMatchingLength] == b){
-            endOfLineSequenceMatchingLength++;
-        }else if (endOfLineSequence[0] == b){
-            endOfLineSequenceMatchingLength = 1;
-        }else{
-            endOfLineSequenceMatchingLength = 0;
-        }
+        endOfLineSequenceMatchingLength = endOfLineSequenceMatcher.match(endOfLineSequenceMatchingLength, b);
         return isEndOfLine();
     }
 
+    // Copies the range (held by either the array or the byte buffer) into the circular buffer, flushing the data preceding the
+    // (partially) matching end of line sequence every time the circular buffer fills up.
+    int writeRange(final byte[] array, final ByteBuffer byteBuffer, final int offset, final int writeEnd, final int newMatchingLength){
+
+        if (passThrough && array != null && flushOutputStream != null){
+            return passThroughRange(array, offset, writeEnd, newMatchingLength);
+        }
+
+        // Bytes (already buffered or about to be) that are not part of the end of line sequence and can be flushed
+        int flushable = circularBuffer.getAvailableDataLength() + (writeEnd - offset) - newMatchingLength;
+
+        int position = offset;
+        while (position < writeEnd){
+            int chunkSize = writeEnd - position;
+            if (flushOutputStream != null){
+                if (circularBuffer.isFull()){
+                    flushable = flushable - flush(Math.min(flushable, circularBuffer.getAvailableDataLength()));
+                }
+                chunkSize = Math.min(chunkSize, circularBuffer.getAvailableWriteLength());
+            }
+            if (array != null){
+                circularBuffer.write(array, position, chunkSize);
+            }else{
+                circularBuffer.write(byteBuffer, position, chunkSize);
+            }
+            position = position + chunkSize;
+        }
+
+        endOfLineSequenceMatchingLength = newMatchingLength;
+        if (isEndOfLine()){
+            flushIfNeeded();
+        }
+
+        return writeEnd - offset;
+    }
+
+    // Flushes the buffered data and the range preceding the (partially) matching end of line sequence, then keeps the matching bytes in the
+    // circular buffer. They are at most as many as the end of line sequence length, so they always fit.
+    int passThroughRange(final byte[] array, final int offset, final int writeEnd, final int newMatchingLength){
+
+        final int buffered = circularBuffer.getAvailableDataLength();
+        final int flushable = buffered + (writeEnd - offset) - newMatchingLength;
+
+        int position = offset;
+        final int flushableFromBuffer = Math.min(flushable, buffered);
+        if (flushableFromBuffer > 0){
+            flush(flushableFromBuffer);
+        }
+        final int flushableFromRange = flushable - flushableFromBuffer;
+        if (flushableFromRange > 0){
+            try {
+                flushOutputStream.write(array, position, flushableFromRange);
+                flushOutputStream.flush();
+            } catch (Exception e) {
+                throw new IllegalStateException("Error flushing the buffer data.", e);
+            }
+            position = position + flushableFromRange;
+        }
+        circularBuffer.write(array, position, writeEnd - position);
+
+        endOfLineSequenceMatchingLength = newMatchingLength;
+        if (isEndOfLine()){
+            flushIfNeeded();
+        }
+
+        return writeEnd - offset;
+    }
+
+    int flush(final int chunkSize){
+        if (chunkSize <= 0){
+            throw new IllegalStateException("Unexpected error. Buffer is full after a flush.");
+        }
+        try {
+            circularBuffer.readChunk(flushOutputStream, chunkSize);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error flushing the buffer data.", e);
+        }
+        return chunkSize;
+    }
+
+    EndOfLineSequenceMatcher matcherFor(final byte[] endOfLineSequence){
+        final EndOfLineSequenceMatcher current = endOfLineSequenceMatcher;
+        if (Arrays.equals(current.getSequence(), endOfLineSequence)){
+            return current;
+        }
+        final EndOfLineSequenceMatcher previous = previousEndOfLineSequenceMatcher;
+        previousEndOfLineSequenceMatcher = current;
+        if (previous != null && Arrays.equals(previous.getSequence(), endOfLineSequence)){
+            return previous;
+        }
+        return new EndOfLineSequenceMatcher(endOfLineSequence);
+    }
+
     void flushIfNeeded(){
         if (flushOutputStream == null){
             return;
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p> Finds an end of line sequence in a stream of data delivered in chunks.
+ *
+ * <p> The stream is scanned one range at a time. The state carried between two ranges is the number of bytes at the end of
+ *     the previous range that are matching the beginning of the end of line sequence (the matching length).
+ *     The first bytes of a range, where a match started in the previous range could complete, are matched one by one.
+ *     The rest of the range is searched using the Boyer-Moore-Horspool algorithm, which allows to skip over most of the bytes
+ *     when the end of line sequence is long (like a multipart delimiter).
+ *
+ * <p> The data can be a {@code byte[]} or a {@code ByteBuffer} (heap or direct). {@code ByteBuffer}s are scanned in place using absolute indexes
+ *     and their position and limit are never modified.
+ *
+ * <p> The matcher is immutable and can be shared.
+ *
+ * @author Silvano Riz.
+ */
+public class EndOfLineSequenceMatcher {
+
+    // The end of line sequence
+    final byte[] sequence;
+
+    // Boyer-Moore-Horspool bad character shifts, indexed by the unsigned value of a byte
+    final int[] skipTable = new int[256];
+
+    // Knuth-Morris-Pratt failure function used to match byte by byte across the edges of the ranges
+    final int[] failureTable;
+
+    /**
+     * <p> Constructor.
+     *
+     * @param sequence The end of line sequence. Must contain at least one byte.
+     */
+    public EndOfLineSequenceMatcher(final byte[] sequence) {
+
+        if (sequence == null || sequence.length == 0){
+            throw new IllegalArgumentException("The end of line sequence cannot be null or empty");
+        }
+
+        this.sequence = sequence;
+        final int length = sequence.length;
+
+        for (int i = 0; i < skipTable.length; i++){
+            skipTable[i] = length;
+        }
+        for (int i = 0; i < length - 1; i++){
+            skipTable[sequence[i] & 0xff] = length - 1 - i;
+        }
+
+        this.failureTable = new int[length];
+        int matching = 0;
+        for (int i = 1; i < length; i++){
+            while (matching > 0 && sequence[i] != sequence[matching]){
+                matching = failureTable[matching - 1];
+            }
+            if (sequence[i] == sequence[matching]){
+                matching++;
+            }
+            failureTable[i] = matching;
+        }
+    }
+
+    /**
+     * <p> Returns the end of line sequence.
+     *
+     * @return the end of line sequence.
+     */
+    public byte[] getSequence() {
+        return sequence;
+    }
+
+    /**
+     * <p> Returns the length of the end of line sequence.
+     *
+     * @return the length of the end of line sequence.
+     */
+    public int getSequenceLength() {
+        return sequence.length;
+    }
+
+    /**
+     * <p> Updates the matching length with a single byte of data.
+     *
+     * @param matchingLength The number of bytes currently matching the beginning of the end of line sequence. Must be lower than the sequence length.
+     * @param data The byte of data.
+     * @return The new matching length. If it is equal to the sequence length, the end of line sequence has been found.
+     */
+    public int match(int matchingLength, final byte data) {
+        while (matchingLength > 0 && sequence[matchingLength] != data){
+            matchingLength = failureTable[matchingLength - 1];
+        }
+        if (sequence[matchingLength] == data){
+            matchingLength++;
+        }
+        return matchingLength;
+    }
+
+    /**
+     * <p> Searches the end of line sequence in a range of data.
+     *     The sequence can start in the previous ranges (if the matching length is greater than zero) and end in this range.
+     *
+     * @param data The data
+     * @param offset The index of the first byte of the range (inclusive)
+     * @param end The index of the last byte of the range (exclusive)
+     * @param matchingLength The number of bytes at the end of the previous ranges matching the beginning of the end of line sequence.
+     * @return The index (exclusive) where the first end of line sequence ends or -1 if the sequence has not been found.
+     */
+    public int indexOf(final byte[] data, final int offset, final int end, final int matchingLength) {
+
+        final int length = sequence.length;
+        int position = offset;
+
+        if (matchingLength > 0) {
+            // A match started in a previous range can only complete in the first (length - 1) bytes.
+            final int edgeEnd = Math.min(end, offset + length - 1);
+            int matching = matchingLength;
+            while (position < edgeEnd) {
+                matching = match(matching, data[position++]);
+                if (matching == length) {
+                    return position;
+                }
+                if (matching == 0) {
+                    break;
+                }
+            }
+            // Alignments before the current partial match have been ruled out.
+            position -= matching;
+        }
+
+        final byte last = sequence[length - 1];
+        while (position + length <= end) {
+            final byte candidate = data[position + length - 1];
+            if (candidate == last) {
+                int i = length - 2;
+                while (i >= 0 && data[position + i] == sequence[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return position + length;
+                }
+            }
+            position += skipTable[candidate & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * <p> Computes the matching length at the end of a range of data that does not contain the end of line sequence.
+     *     That is the length of the longest suffix of the data (including the data matching in the previous ranges) that is also a prefix of the end of line sequence.
+     *
+     * @param data The data
+     * @param offset The index of the first byte of the range (inclusive)
+     * @param end The index of the last byte of the range (exclusive)
+     * @param matchingLength The number of bytes at the end of the previous ranges matching the beginning of the end of line sequence.
+     * @return The matching length at the end of the range.
+     */
+    public int partialMatchLength(final byte[] data, final int offset, final int end, final int matchingLength) {
+
+        int from = end - (sequence.length - 1);
+        int matching = 0;
+        if (from <= offset) {
+            from = offset;
+            matching = matchingLength;
+        }
+        for (int i = from; i < end; i++) {
+            matching = match(matching, data[i]);
+        }
+        return matching;
+    }
+
+    /**
+     * <p> Same as {@link #indexOf(byte[], int, int, int)} but for data held in a {@code ByteBuffer}.
+     *
+     * @param data The data
+     * @param offset The absolute index of the first byte of the range (inclusive)
+     * @param end The absolute index of the last byte of the range (exclusive)
+     * @param matchingLength The number of bytes at the end of the previous ranges matching the beginning of the end of line sequence.
+     * @return The absolute index (exclusive) where the first end of line sequence ends or -1 if the sequence has not been found.
+     */
+    public int indexOf(final ByteBuffer data, final int offset, final int end, final int matchingLength) {
+
+        final int length = sequence.length;
+        int position = offset;
+
+        if (matchingLength > 0) {
+            final int edgeEnd = Math.min(end, offset + length - 1);
+            int matching = matchingLength;
+            while (position < edgeEnd) {
+                matching = match(matching, data.get(position++));
+                if (matching == length) {
+                    return position;
+                }
+                if (matching == 0) {
+                    break;
+                }
+            }
+            position -= matching;
+        }
+
+        final byte last = sequence[length - 1];
+        while (position + length <= end) {
+            final byte candidate = data.get(position + length - 1);
+            if (candidate == last) {
+                int i = length - 2;
+                while (i >= 0 && data.get(position + i) == sequence[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return position + length;
+                }
+            }
+            position += skipTable[candidate & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * <p> Same as {@link #partialMatchLength(byte[], int, int, int)} but for data held in a {@code ByteBuffer}.
+     *
+     * @param data The data
+     * @param offset The absolute index of the first byte of the range (inclusive)
+     * @param end The absolute index of the last byte of the range (exclusive)
+     * @param matchingLength The number of bytes at the end of the previous ranges matching the beginning of the end of line sequence.
+     * @return The matching length at the end of the range.
+     */
+    public int partialMatchLength(final ByteBuffer data, final int offset, final int end, final int matchingLength) {
+
+        int from = end - (sequence.length - 1);
+        int matching = 0;
+        if (from <= offset) {
+            from = offset;
+            matching = matchingLength;
+        }
+        for (int i = from; i < end; i++) {
+            matching = match(matching, data.get(i));
+        }
+        return matching;
+    }
+
+}
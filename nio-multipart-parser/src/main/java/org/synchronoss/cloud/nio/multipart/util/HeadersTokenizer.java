@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.util;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p> Incremental parser of a part headers section.
+ *     The headers section is written into the tokenizer as the bytes arrive (for example flushed by an {@code EndOfLineBuffer} watching for
+ *     the headers delimiter) and the header lines are tokenized in the same pass, without collecting the whole section and re-reading it.
+ *     Once the whole section has been written, {@link #finish()} processes the last line and returns the headers.
+ *
+ * <p> The parsing rules are the same as {@link HeadersParser#parseHeaders(java.io.InputStream, String)}: header names are lower case,
+ *     names and values are trimmed, folded values are joined with a space and the section ends at the first empty line.
+ *     Well known header names (like {@code content-type}) are not allocated for every part, the interned constants are used instead.
+ *
+ * <p> The tokenizer is reusable. {@link #reset()} must be called before parsing a new headers section.
+ *
+ * @author Silvano Riz.
+ */
+public class HeadersTokenizer extends OutputStream {
+
+    /**
+     * Header names that are present in almost all the parts.
+     */
+    static final String[] WELL_KNOWN_HEADER_NAMES = {"content-disposition", "content-type", "content-length", "content-transfer-encoding"};
+
+    static final byte[][] WELL_KNOWN_HEADER_NAMES_BYTES = new byte[WELL_KNOWN_HEADER_NAMES.length][];
+    static {
+        for (int i = 0; i < WELL_KNOWN_HEADER_NAMES.length; i++) {
+            WELL_KNOWN_HEADER_NAMES_BYTES[i] = WELL_KNOWN_HEADER_NAMES[i].getBytes(Charset.forName("US-ASCII"));
+        }
+    }
+
+    // Resolved charsets, by name.
+    static final ConcurrentMap<String, Charset> CHARSETS = new ConcurrentHashMap<String, Charset>();
+
+    // The charset used to decode the header names and values
+    Charset charset;
+
+    // Max size of the headers section. -1 means no limit
+    final int maxSize;
+
+    // The current (incomplete) line
+    byte[] line = new byte[256];
+    int lineLength = 0;
+
+    // The number of bytes written since the last reset
+    int size = 0;
+
+    // True if an empty line has been encountered. Everything after is ignored.
+    boolean endOfHeaders = false;
+
+    // The header being parsed. It is added to the headers when the next header starts, since the value might be folded
+    String name;
+    String value;
+
+    // The error encountered parsing the section. Reported when the tokenizer is finished.
+    IllegalStateException error;
+
+    Map<String, List<String>> headers = new HashMap<String, List<String>>();
+
+    /**
+     * <p> Constructor.
+     *
+     * @param charset The name of the charset used to decode the headers. If null, empty or not supported the platform default charset is used.
+     * @param maxSize The max size in bytes of the headers section or -1 for no limit.
+     */
+    public HeadersTokenizer(final String charset, final int maxSize) {
+        this.charset = forName(charset);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * <p> Returns the {@code Charset} for a charset name. The charsets are resolved once and then cached.
+     *
+     * @param charset The charset name
+     * @return The {@code Charset} or the platform default charset if the name is null, empty or not supported.
+     */
+    public static Charset forName(final String charset) {
+        if (charset == null || charset.length() == 0) {
+            return Charset.defaultCharset();
+        }
+        Charset resolved = CHARSETS.get(charset);
+        if (resolved == null) {
+            try {
+                resolved = Charset.forName(charset);
+            } catch (Exception e) {
+                // Failed using the charset provided
+                resolved = Charset.defaultCharset();
+            }
+            CHARSETS.putIfAbsent(charset, resolved);
+        }
+        return resolved;
+    }
+
+    @Override
+    public void write(final int b) {
+        checkSize(1);
+        tokenize((byte) b);
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) {
+        checkSize(length);
+        final int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n') { // be tolerant (RFC-2616 Section 19.3)
+                append(data, lineStart, i - lineStart);
+                endOfLine();
+                lineStart = i + 1;
+            }
+        }
+        append(data, lineStart, end - lineStart);
+    }
+
+    /**
+     * <p> Processes the last line of the headers section and returns the headers.
+     *
+     * @return The {@link Map} having as keys the header names and as values a list of the header values.
+     * @throws IllegalStateException if the headers section is malformed.
+     */
+    public Map<String, List<String>> finish() {
+        if (lineLength > 0) {
+            endOfLine();
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (name != null) {
+            addHeader();
+        }
+        return headers;
+    }
+
+    /**
+     * <p> Returns the max size in bytes of the headers section.
+     *
+     * @return the max size in bytes of the headers section or -1 for no limit.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * <p> Resets the tokenizer so that it can parse a new headers section encoded with a different charset.
+     *
+     * @param charset The name of the charset used to decode the headers. If null, empty or not supported the platform default charset is used.
+     */
+    public void reset(final String charset) {
+        this.charset = forName(charset);
+        reset();
+    }
+
+    /**
+     * <p> Resets the tokenizer so that it can parse a new headers section.
+     */
+    public void reset() {
+        lineLength = 0;
+        size = 0;
+        endOfHeaders = false;
+        name = null;
+        value = null;
+        error = null;
+        headers = new HashMap<String, List<String>>();
+    }
+
+    void checkSize(final int length) {
+        if (maxSize != -1 && size + length > maxSize) {
+            throw new IllegalStateException("Cannot write. Headers section too big. Available space " + (maxSize - size) + "/" + maxSize);
+        }
+        size = size + length;
+    }
+
+    void tokenize(final byte b) {
+        if (b == '\n') {
+            endOfLine();
+        } else {
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+    }
+
+    void append(final byte[] data, final int offset, final int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(data, offset, line, lineLength, length);
+        lineLength = lineLength + length;
+    }
+
+    void endOfLine() {
+        final int length = lineLength;
+        lineLength = 0;
+
+        if (endOfHeaders || error != null) {
+            return;
+        }
+
+        final int start = trimStart(0, length);
+        final int end = trimEnd(start, length);
+        if (start == end) {
+            endOfHeaders = true;
+            return;
+        }
+
+        if (line[0] == ' ' || line[0] == '\t') {
+            // we have continuation folded header so append value
+            if (value != null) {
+                value = value + ' ' + decode(start, end);
+            }
+            return;
+        }
+
+        // make sure we save the previous name,value pair if present
+        if (name != null) {
+            addHeader();
+        }
+
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (line[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon < 0) {
+            error = new IllegalStateException("Unable to parse header: " + decode(0, length));
+            return;
+        }
+        name = headerName(start, trimEnd(start, colon));
+        value = decode(trimStart(colon + 1, end), end);
+    }
+
+    void addHeader() {
+        List<String> headerValues = headers.get(name);
+        if (headerValues == null) {
+            headerValues = new ArrayList<String>(1);
+            headers.put(name, headerValues);
+        }
+        headerValues.add(value);
+        name = null;
+        value = null;
+    }
+
+    String headerName(final int start, final int end) {
+        final int length = end - start;
+        for (int i = 0; i < WELL_KNOWN_HEADER_NAMES_BYTES.length; i++) {
+            final byte[] wellKnownHeaderName = WELL_KNOWN_HEADER_NAMES_BYTES[i];
+            if (wellKnownHeaderName.length == length && equalsIgnoreCase(wellKnownHeaderName, start)) {
+                return WELL_KNOWN_HEADER_NAMES[i];
+            }
+        }
+        return decode(start, end).toLowerCase();
+    }
+
+    boolean equalsIgnoreCase(final byte[] lowerCaseName, final int start) {
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            byte b = line[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b = (byte) (b + ('a' - 'A'));
+            }
+            if (b != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String decode(final int start, final int end) {
+        if (start >= end) {
+            return HeadersParser.EMPTY_STRING;
+        }
+        return new String(line, start, end - start, charset);
+    }
+
+    // Same as String.trim(), all the characters lower or equal than a space are removed
+    int trimStart(int start, final int end) {
+        while (start < end && (line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    int trimEnd(final int start, int end) {
+        while (end > start && (line[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.FileStreamStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link ChannelFileStreamStorage}
+ *
+ * @author Silvano Riz.
+ */
+public class ChannelFileStreamStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndTransfer() throws Exception {
+
+        File file = new File(tempFolder.newFolder(), "test.tmp");
+        ChannelFileStreamStorage storage = new ChannelFileStreamStorage(file);
+        storage.deleteFilesOnDispose();
+        assertFalse(storage.isInMemory());
+
+        storage.write('A');
+        storage.write("BC".getBytes());
+        storage.write("xDEx".getBytes(), 1, 2);
+
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream("FGHIJ".getBytes()));
+        assertEquals(3, storage.transferFrom(channel, 3));
+        storage.write("-".getBytes());
+        assertEquals(2, storage.transferFrom(channel, 10));
+        assertEquals(0, storage.transferFrom(channel, 10));
+
+        storage.flush();
+        storage.close();
+        assertEquals("ABCDEFGH-IJ", IOUtils.inputStreamAsString(storage.getInputStream(), "UTF-8"));
+
+        Exception expected = null;
+        try {
+            storage.write('A');
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        assertTrue(storage.dispose());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testPreallocate_notPossible() throws Exception {
+        File file = new File(tempFolder.newFolder(), "test.tmp");
+        // More than the usable space, the file is written without preallocation
+        ChannelFileStreamStorage storage = new ChannelFileStreamStorage(file).preallocate(Long.MAX_VALUE);
+        storage.deleteFilesOnDispose();
+        storage.write("ABCDE".getBytes());
+        assertEquals(0, storage.expectedLength);
+        assertEquals(5, file.length());
+        storage.close();
+        assertEquals("ABCDE", IOUtils.inputStreamAsString(storage.getInputStream(), "UTF-8"));
+        assertTrue(storage.dispose());
+
+        // The file system refuses the length
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.close();
+        assertFalse(ChannelFileStreamStorage.preallocate(randomAccessFile, file, 10));
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testDisposeBeforeClose() throws Exception {
+        File file = new File(tempFolder.newFolder(), "test.tmp");
+        ChannelFileStreamStorage storage = new ChannelFileStreamStorage(file).preallocate(10);
+        storage.deleteFilesOnDispose();
+        storage.write("ABCDE".getBytes());
+        assertTrue(storage.fileChannel.isOpen());
+
+        assertTrue(storage.dispose());
+        assertFalse(storage.fileChannel.isOpen());
+        assertFalse(file.exists());
+
+        Exception expected = null;
+        try {
+            storage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        File file = new File(tempFolder.newFolder(), "test.tmp");
+        ChannelFileStreamStorage storage = new ChannelFileStreamStorage(file).deleteFilesOnClose();
+        assertFalse(file.exists());
+        storage.close();
+        assertFalse(storage.fileChannel.isOpen());
+        InputStream inputStream = storage.getInputStream();
+        assertEquals("", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testSingleFileHandle() throws Exception {
+        File fds = new File("/proc/self/fd");
+        Assume.assumeTrue(fds.isDirectory());
+
+        File file = new File(tempFolder.newFolder(), "test.tmp");
+        ChannelFileStreamStorage storage = new ChannelFileStreamStorage(file);
+        assertTrue(storage instanceof FileStreamStorage);
+        assertEquals(0, openHandles(fds, file));
+        storage.write("ABCDE".getBytes());
+        assertEquals(1, openHandles(fds, file));
+        assertTrue(storage.deleteFilesOnDispose().dispose());
+        assertEquals(0, openHandles(fds, file));
+    }
+
+    static int openHandles(final File fds, final File file) throws Exception {
+        int handles = 0;
+        File[] links = fds.listFiles();
+        if (links != null) {
+            for (File link : links) {
+                try {
+                    if (Files.readSymbolicLink(link.toPath()).toString().startsWith(file.getAbsolutePath())) {
+                        handles++;
+                    }
+                } catch (Exception e) {
+                    // The descriptor has been closed in the meantime
+                }
+            }
+        }
+        return handles;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link CompressingPartBodyStreamStorageFactory}
+ *
+ * @author Silvano Riz.
+ */
+public class CompressingPartBodyStreamStorageFactoryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testNewStreamStorageForPartBody() throws Exception {
+        CompressingPartBodyStreamStorageFactory factory = new CompressingPartBodyStreamStorageFactory(new DefaultPartBodyStreamStorageFactory(tempFolder.getRoot().getAbsolutePath()));
+
+        StreamStorage text = factory.newStreamStorageForPartBody(headers("content-type", "text/csv; charset=UTF-8"), 1);
+        assertTrue(text instanceof CompressingStreamStorage);
+        text.dispose();
+
+        StreamStorage unknown = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 2);
+        assertTrue(unknown instanceof CompressingStreamStorage);
+        unknown.dispose();
+
+        StreamStorage jpeg = factory.newStreamStorageForPartBody(headers("content-type", "image/JPEG"), 3);
+        assertFalse(jpeg instanceof CompressingStreamStorage);
+        jpeg.dispose();
+
+        StreamStorage gzipEncoded = factory.newStreamStorageForPartBody(headers("content-encoding", "gzip"), 4);
+        assertFalse(gzipEncoded instanceof CompressingStreamStorage);
+        gzipEncoded.dispose();
+    }
+
+    @Test
+    public void testIsCompressed() {
+        assertTrue(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-type", "application/zip")));
+        assertTrue(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-type", "application/pdf")));
+        assertTrue(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-type", "video/mp4")));
+        assertFalse(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-type", "image/svg+xml")));
+        assertFalse(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-type", "application/json")));
+        assertFalse(CompressingPartBodyStreamStorageFactory.isCompressed(headers("content-encoding", "identity")));
+    }
+
+    static Map<String, List<String>> headers(final String name, final String value) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put(name, Collections.singletonList(value));
+        return headers;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.io.CompressionPool;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link CompressingStreamStorage}
+ *
+ * @author Silvano Riz.
+ */
+public class CompressingStreamStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    final CompressionPool compressionPool = new CompressionPool();
+
+    @Test
+    public void testCompressed() throws Exception {
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        StreamStorage fileStreamStorage = new ChannelFileStreamStorage(file).deleteFilesOnDispose();
+        CompressingStreamStorage streamStorage = new CompressingStreamStorage(fileStreamStorage, compressionPool);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = "id,name,value\n" + i + ",name-" + i + "," + (i * 10) + "\n";
+            expected.append(line);
+            streamStorage.write(line.getBytes("UTF-8"));
+        }
+        streamStorage.close();
+
+        assertTrue(streamStorage.isCompressed());
+        assertTrue(file.length() < expected.length() / 2);
+        assertEquals(1, compressionPool.getPooledDeflaters());
+
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals(expected.toString(), IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertEquals(1, compressionPool.getPooledInflaters());
+        assertTrue(streamStorage.dispose());
+    }
+
+    @Test
+    public void testAlreadyCompressed() throws Exception {
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        CompressingStreamStorage streamStorage = new CompressingStreamStorage(new ChannelFileStreamStorage(file), compressionPool);
+
+        byte[] jpeg = new byte[100];
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[2] = (byte) 0xFF;
+        // Written byte by byte, to sniff across writes
+        for (byte b : jpeg) {
+            streamStorage.write(b);
+        }
+        streamStorage.close();
+
+        assertFalse(streamStorage.isCompressed());
+        assertEquals(jpeg.length, file.length());
+        assertEquals(0, compressionPool.getPooledDeflaters());
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals(jpeg.length, org.apache.commons.io.IOUtils.toByteArray(inputStream).length);
+        inputStream.close();
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testShorterThanSniffSize() throws Exception {
+        CompressingStreamStorage streamStorage = new CompressingStreamStorage(new TrackedFileStreamStorage(new File(tempFolder.getRoot(), "test.tmp"), 100, null, null), compressionPool);
+        streamStorage.write("abc".getBytes("UTF-8"));
+        streamStorage.close();
+        assertTrue(streamStorage.isCompressed());
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals("abc", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+    }
+
+    @Test
+    public void testDisposeBeforeClose() throws Exception {
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        CompressingStreamStorage streamStorage = new CompressingStreamStorage(new ChannelFileStreamStorage(file).deleteFilesOnDispose(), compressionPool);
+        streamStorage.write("Some text that is compressed".getBytes("UTF-8"));
+        streamStorage.dispose();
+        assertFalse(file.exists());
+        assertEquals(1, compressionPool.getPooledDeflaters());
+
+        Exception expected = null;
+        try {
+            streamStorage.write(1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testIsCompressedFormat() {
+        assertTrue(CompressingStreamStorage.isCompressedFormat("%PDF-1.4".getBytes(), 8));
+        assertTrue(CompressingStreamStorage.isCompressedFormat(new byte[]{'P', 'K', 3, 4}, 4));
+        assertTrue(CompressingStreamStorage.isCompressedFormat(new byte[]{0x1F, (byte) 0x8B}, 2));
+        assertTrue(CompressingStreamStorage.isCompressedFormat("RIFF1234WEBP".getBytes(), 12));
+        assertFalse(CompressingStreamStorage.isCompressedFormat("RIFF1234WAVE".getBytes(), 12));
+        assertFalse(CompressingStreamStorage.isCompressedFormat("{\"a\":1}".getBytes(), 7));
+        assertFalse(CompressingStreamStorage.isCompressedFormat("%PDF".getBytes(), 3));
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.synchronoss.cloud.nio.multipart;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -25,6 +26,7 @@ import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -111,9 +113,100 @@ public class DefaultPartBodyStreamStorageFactoryTest {
         assertTrue(streamStorage instanceof FileStreamStorage);
         FileStreamStorage = (FileStreamStorage) streamStorage;
         assertFalse(FileStreamStorage.isInMemory());
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
 
     }
 
+    @Test
+    public void testNewPartIOStreams_memoryBudget() throws IOException {
+
+        MemoryBudget memoryBudget = new MemoryBudget(250);
+        DefaultPartBodyStreamStorageFactory defaultPartIOStreamsFactory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder("testMemoryBudget").getAbsolutePath(), 100, memoryBudget);
+
+        // Memory available. Should go in memory first and reserve the threshold
+        FileStreamStorage streamStorage1 = (FileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        FileStreamStorage streamStorage2 = (FileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 2);
+        assertTrue(streamStorage1.isInMemory());
+        assertTrue(streamStorage2.isInMemory());
+        assertEquals(200, memoryBudget.getReservedBytes());
+
+        // Budget exhausted. Should go directly to file...
+        FileStreamStorage streamStorage3 = (FileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 3);
+        assertFalse(streamStorage3.isInMemory());
+        assertEquals(200, memoryBudget.getReservedBytes());
+        streamStorage3.dispose();
+
+        // Switching to file releases the memory
+        streamStorage1.write(new byte[101]);
+        assertFalse(streamStorage1.isInMemory());
+        assertEquals(100, memoryBudget.getReservedBytes());
+        streamStorage1.dispose();
+        assertEquals(100, memoryBudget.getReservedBytes());
+
+        // Reading the data does not release the memory, the storage still holds it until disposed
+        streamStorage2.write(new byte[10]);
+        streamStorage2.close();
+        streamStorage2.getInputStream().close();
+        assertEquals(100, memoryBudget.getReservedBytes());
+        streamStorage2.dispose();
+        assertEquals(0, memoryBudget.getReservedBytes());
+        assertEquals(200, memoryBudget.getPeakReservedBytes());
+
+        // Moving the data releases the memory
+        TrackedFileStreamStorage streamStorage4 = (TrackedFileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 4);
+        assertEquals(100, memoryBudget.getReservedBytes());
+        streamStorage4.write(new byte[10]);
+        streamStorage4.close();
+        streamStorage4.moveTo(tempFolder.newFolder("testMemoryBudgetMove").toPath().resolve("moved"));
+        assertEquals(0, memoryBudget.getReservedBytes());
+        streamStorage4.dispose();
+        assertEquals(0, memoryBudget.getReservedBytes());
+    }
+
+    @Test
+    public void testNewPartIOStreams_contentLengthSizing() throws IOException {
+
+        DefaultPartBodyStreamStorageFactory defaultPartIOStreamsFactory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder("testSizing").getAbsolutePath(), 100);
+
+        // Content length smaller than the threshold. The memory is allocated upfront
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("10"));
+        TrackedFileStreamStorage inMemory = (TrackedFileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(headers, 1);
+        assertEquals(10, inMemory.presized.length);
+        inMemory.write("0123456789".getBytes());
+        ByteBuffer view = inMemory.memoryViews().get(0);
+        assertEquals(10, view.remaining());
+        assertEquals('0', view.get(0));
+        assertTrue(inMemory.isInMemory());
+
+        // More data than declared, the data is handed over to the FileStreamStorage
+        inMemory.write('A');
+        assertNull(inMemory.presized);
+        assertTrue(inMemory.isInMemory());
+        inMemory.close();
+        assertEquals("0123456789A", IOUtils.toString(inMemory.getInputStream(), "UTF-8"));
+        inMemory.dispose();
+
+        // Content length greater than the threshold. The file is preallocated and trimmed when closed
+        headers.put("content-length", Collections.singletonList("140"));
+        ChannelFileStreamStorage onFile = (ChannelFileStreamStorage) defaultPartIOStreamsFactory.newStreamStorageForPartBody(headers, 2);
+        onFile.write(new byte[50]);
+        assertEquals(140, onFile.file.length());
+        onFile.close();
+        assertEquals(50, onFile.file.length());
+        onFile.dispose();
+
+        Exception expected = null;
+        try {
+            ChannelFileStreamStorage written = new ChannelFileStreamStorage(tempFolder.newFile());
+            written.write(1);
+            written.preallocate(140);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
     @Test
     public void testNewPartIOStreams_error() throws IOException {
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * <p> Unit tests for {@link DurableNioMultipartParserListener}
+ *
+ * @author Silvano Riz.
+ */
+public class DurableNioMultipartParserListenerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+
+    @Test
+    public void testNotificationsDeferredUntilCommitted() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(10, 1, false);
+        NioMultipartParserListener delegate = mock(NioMultipartParserListener.class);
+        DurableNioMultipartParserListener listener = new DurableNioMultipartParserListener(delegate, groupCommitter);
+
+        StreamStorage inMemory = new TrackedFileStreamStorage(new File(tempFolder.getRoot(), "memory.tmp"), 100, null, null);
+        inMemory.write("in memory".getBytes());
+        inMemory.close();
+        StreamStorage onFile = newStreamStorageOnFile();
+
+        listener.onPartFinished(inMemory, headers);
+        verify(delegate).onPartFinished(inMemory, headers);
+
+        listener.onPartFinished(onFile, headers);
+        listener.onPartFinished(inMemory, headers);
+        listener.onAllPartsFinished();
+        verify(delegate, never()).onPartFinished(onFile, headers);
+        verify(delegate, never()).onAllPartsFinished();
+
+        // Commits the pending file
+        groupCommitter.close();
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).onPartFinished(onFile, headers);
+        inOrder.verify(delegate).onPartFinished(inMemory, headers);
+        inOrder.verify(delegate).onAllPartsFinished();
+        assertEquals(1, groupCommitter.getCommittedFiles());
+    }
+
+    @Test
+    public void testCommitFailed() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(10, 1, false);
+        NioMultipartParserListener delegate = mock(NioMultipartParserListener.class);
+        DurableNioMultipartParserListener listener = new DurableNioMultipartParserListener(delegate, groupCommitter);
+
+        ChannelFileStreamStorage onFile = newStreamStorageOnFile();
+        listener.onPartFinished(onFile, headers);
+        listener.onAllPartsFinished();
+        assertTrue(onFile.file.delete());
+
+        groupCommitter.close();
+        verify(delegate).onError(anyString(), any(IOException.class));
+        verify(delegate, never()).onPartFinished(onFile, headers);
+        verify(delegate, never()).onAllPartsFinished();
+    }
+
+    @Test
+    public void testSpilledFile() throws Exception {
+        ChannelFileStreamStorage onFile = newStreamStorageOnFile();
+        assertEquals(onFile.file, DurableNioMultipartParserListener.spilledFile(onFile));
+
+        File file = new File(tempFolder.getRoot(), "tracked.tmp");
+        TrackedFileStreamStorage tracked = new TrackedFileStreamStorage(file, 5, null, null);
+        tracked.write("12345".getBytes());
+        assertNull(DurableNioMultipartParserListener.spilledFile(tracked));
+        tracked.write("6".getBytes());
+        assertEquals(file, DurableNioMultipartParserListener.spilledFile(tracked));
+        tracked.dispose();
+
+        assertNull(DurableNioMultipartParserListener.spilledFile(mock(StreamStorage.class)));
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter();
+        try {
+            NioMultipartParser parser = Multipart.multipart(new MultipartContext("multipart/mixed;boundary=gc0p4Jq0M2Yt08jU534c0p", 560, "UTF-8")).withGroupCommit(groupCommitter).forNIO(mock(NioMultipartParserListener.class));
+            assertTrue(parser.nioMultipartParserListener instanceof DurableNioMultipartParserListener);
+        } finally {
+            groupCommitter.close();
+        }
+    }
+
+    ChannelFileStreamStorage newStreamStorageOnFile() throws IOException {
+        ChannelFileStreamStorage streamStorage = new ChannelFileStreamStorage(tempFolder.newFile());
+        streamStorage.write("on file".getBytes());
+        streamStorage.close();
+        return streamStorage;
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Test;
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.Part;
+import org.synchronoss.cloud.nio.multipart.BlockingIOAdapter.ParserToken;
+import org.synchronoss.cloud.nio.multipart.FlowAdapter.Processor;
+import org.synchronoss.cloud.nio.multipart.FlowAdapter.Subscriber;
+import org.synchronoss.cloud.nio.multipart.FlowAdapter.Subscription;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> Unit tests for {@link FlowAdapter}
+ *
+ * @author Silvano Riz.
+ */
+public class FlowAdapterTest {
+
+    static final String MULTIPART = "--AAA\r\nContent-Type: text/plain\r\n\r\nFirst\r\n" +
+            "--AAA\r\nContent-Type: text/plain\r\n\r\nSecond\r\n" +
+            "--AAA--\r\n";
+
+    @Test
+    public void testDemandDrivenParsing() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = FlowAdapter.processor(context());
+        ChunksPublisher upstream = new ChunksPublisher(MULTIPART, 5);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+
+        processor.subscribe(downstream);
+        upstream.subscribe(processor);
+
+        // No demand, no data pulled
+        assertEquals(0, upstream.requested);
+
+        downstream.subscription.request(1);
+        assertEquals(1, downstream.tokens.size());
+        assertEquals(ParserToken.Type.PART, downstream.tokens.get(0).getType());
+        assertEquals("First", IOUtils.inputStreamAsString(((Part) downstream.tokens.get(0)).getPartBody(), "UTF-8"));
+
+        // The first part has been delivered and there is no demand, the upstream is not asked for more data
+        final int requestedAfterFirstPart = upstream.requested;
+        assertTrue(requestedAfterFirstPart < upstream.chunks.size());
+        assertFalse(downstream.completed);
+
+        downstream.subscription.request(Long.MAX_VALUE);
+        assertEquals(2, downstream.tokens.size());
+        assertEquals("Second", IOUtils.inputStreamAsString(((Part) downstream.tokens.get(1)).getPartBody(), "UTF-8"));
+        assertTrue(downstream.completed);
+        assertNull(downstream.error);
+    }
+
+    @Test
+    public void testForFlow() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = Multipart.multipart(context()).withBufferSize(10).forFlow();
+        ChunksPublisher upstream = new ChunksPublisher(MULTIPART, MULTIPART.length());
+        RecordingSubscriber downstream = new RecordingSubscriber();
+
+        upstream.subscribe(processor);
+        processor.subscribe(downstream);
+        downstream.subscription.request(10);
+
+        assertEquals(2, downstream.tokens.size());
+        assertTrue(downstream.completed);
+        assertEquals(1, upstream.requested);
+    }
+
+    @Test
+    public void testStreamEndedUnexpectedly() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = FlowAdapter.processor(context());
+        ChunksPublisher upstream = new ChunksPublisher("--AAA\r\nContent-Type: text/plain\r\n\r\nFirst", 7);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+
+        processor.subscribe(downstream);
+        upstream.subscribe(processor);
+        downstream.subscription.request(1);
+
+        assertEquals(0, downstream.tokens.size());
+        assertFalse(downstream.completed);
+        assertNotNull(downstream.error);
+        assertTrue(downstream.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = FlowAdapter.processor(context());
+        ChunksPublisher upstream = new ChunksPublisher(MULTIPART, 5);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+
+        processor.subscribe(downstream);
+        upstream.subscribe(processor);
+        downstream.subscription.request(1);
+        downstream.subscription.cancel();
+
+        assertTrue(upstream.cancelled);
+        downstream.subscription.request(1);
+        assertEquals(1, downstream.tokens.size());
+        assertFalse(downstream.completed);
+        assertNull(downstream.error);
+    }
+
+    @Test
+    public void testInvalidRequest() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = FlowAdapter.processor(context());
+        ChunksPublisher upstream = new ChunksPublisher(MULTIPART, 5);
+        RecordingSubscriber downstream = new RecordingSubscriber();
+
+        processor.subscribe(downstream);
+        upstream.subscribe(processor);
+        downstream.subscription.request(0);
+
+        assertTrue(downstream.error instanceof IllegalArgumentException);
+        assertTrue(upstream.cancelled);
+    }
+
+    @Test
+    public void testSubscribeTwice() throws Exception {
+
+        Processor<ByteBuffer, ParserToken> processor = FlowAdapter.processor(context());
+        RecordingSubscriber downstream = new RecordingSubscriber();
+        RecordingSubscriber anotherDownstream = new RecordingSubscriber();
+
+        processor.subscribe(downstream);
+        processor.subscribe(anotherDownstream);
+
+        assertNull(downstream.error);
+        assertNotNull(anotherDownstream.subscription);
+        assertTrue(anotherDownstream.error instanceof IllegalStateException);
+    }
+
+    static MultipartContext context() {
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+        return context;
+    }
+
+    /*
+     * Publishes the data in chunks, synchronously on request.
+     */
+    static class ChunksPublisher implements Subscription {
+
+        final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        Subscriber<? super ByteBuffer> subscriber;
+        int requested = 0;
+        int next = 0;
+        boolean cancelled = false;
+
+        ChunksPublisher(final String data, final int chunkSize) {
+            final byte[] bytes = data.getBytes();
+            for (int i = 0; i < bytes.length; i += chunkSize) {
+                chunks.add(ByteBuffer.wrap(Arrays.copyOfRange(bytes, i, Math.min(i + chunkSize, bytes.length))));
+            }
+        }
+
+        void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            for (long i = 0; i < n && !cancelled; i++) {
+                requested++;
+                if (next < chunks.size()) {
+                    subscriber.onNext(chunks.get(next++));
+                }
+                if (next == chunks.size() && !cancelled) {
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    static class RecordingSubscriber implements Subscriber<ParserToken> {
+
+        final List<ParserToken> tokens = new ArrayList<ParserToken>();
+        Subscription subscription;
+        Throwable error;
+        boolean completed = false;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ParserToken item) {
+            tokens.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -44,6 +45,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -119,6 +121,76 @@ public class FunctionalTest {
 
     }
 
+    @Test
+    public void nioParserFunctionalTest_bodyPassThrough() throws Exception {
+
+        log.info("NIO PARSER FUNCTIONAL TEST (BODY PASS-THROUGH) [ " + testCase.getDescription() + " ]");
+
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final FileUpload fileUpload = new FileUpload();
+        final FileItemIterator fileItemIterator = fileUpload.getItemIterator(testCase.getRequestContext());
+        final NioMultipartParserListener nioMultipartParserListener = nioMultipartParserListenerVerifier(fileItemIterator, finished);
+
+        final MultipartContext multipartContext = testCase.getMultipartContext();
+        final ChunksFileReader chunksFileReader = new ChunksFileReader(testCase.getBodyInputStream(), 5, 500);
+        final NioMultipartParser parser = Multipart.multipart(multipartContext).withBodyPassThrough().forNIO(nioMultipartParserListener);
+
+        byte[] chunk;
+        while (true) {
+
+            chunk = chunksFileReader.readChunk();
+            if (chunk.length <= 0) {
+                break;
+            }
+            parser.write(chunk, 0, chunk.length);
+        }
+
+        assertTrue("Parser didn't come back with all the parts", finished.get());
+    }
+
+    @Test
+    public void nioParserFunctionalTest_byteBuffers() throws Exception {
+
+        log.info("NIO PARSER FUNCTIONAL TEST (BYTE BUFFERS) [ " + testCase.getDescription() + " ]");
+
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final FileUpload fileUpload = new FileUpload();
+        final FileItemIterator fileItemIterator = fileUpload.getItemIterator(testCase.getRequestContext());
+        final NioMultipartParserListener nioMultipartParserListener = nioMultipartParserListenerVerifier(fileItemIterator, finished);
+
+        final MultipartContext multipartContext = testCase.getMultipartContext();
+        final ChunksFileReader chunksFileReader = new ChunksFileReader(testCase.getBodyInputStream(), 5, 10);
+        final NioMultipartParser parser = new NioMultipartParser(multipartContext, nioMultipartParserListener);
+
+        // Alternate direct and heap buffers. Heap buffers are slices with a non zero array offset.
+        boolean direct = true;
+        byte[] chunk;
+        while (true) {
+
+            chunk = chunksFileReader.readChunk();
+            if (chunk.length <= 0) {
+                break;
+            }
+            final ByteBuffer byteBuffer;
+            if (direct) {
+                byteBuffer = ByteBuffer.allocateDirect(chunk.length);
+                byteBuffer.put(chunk);
+                byteBuffer.flip();
+            } else {
+                final ByteBuffer wrapper = ByteBuffer.allocate(chunk.length + 3);
+                wrapper.position(3);
+                byteBuffer = wrapper.slice();
+                byteBuffer.put(chunk);
+                byteBuffer.flip();
+            }
+            parser.write(byteBuffer);
+            assertFalse(byteBuffer.hasRemaining());
+            direct = !direct;
+        }
+
+        assertTrue("Parser didn't come back with all the parts", finished.get());
+    }
+
     @Test
     public void blockingIOAdapterFunctionalTest() throws Exception {
 
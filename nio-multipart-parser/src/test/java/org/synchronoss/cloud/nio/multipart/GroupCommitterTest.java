@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link GroupCommitter}
+ *
+ * @author Silvano Riz.
+ */
+public class GroupCommitterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new GroupCommitter(0, 1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            new GroupCommitter(1, -1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        // The committer thread is not started, so all the files end up in the same batch when closing
+        GroupCommitter groupCommitter = new GroupCommitter(10, 1, false);
+        RecordingCallback callback = new RecordingCallback(3);
+        for (int i = 0; i < 3; i++) {
+            groupCommitter.commit(tempFolder.newFile(), callback);
+        }
+        assertEquals(0, callback.committed.size());
+
+        groupCommitter.close();
+        assertEquals(3, callback.committed.size());
+        assertEquals(3, groupCommitter.getCommittedFiles());
+        assertEquals(1, groupCommitter.getCommittedBatches());
+        assertTrue(groupCommitter.getMaxCommitLatencyNanos() > 0);
+        assertTrue(groupCommitter.getAverageCommitLatencyNanos() > 0);
+        assertTrue(groupCommitter.getAverageCommitLatencyNanos() <= groupCommitter.getMaxCommitLatencyNanos());
+    }
+
+    @Test
+    public void testCommitterThread() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(2, 10);
+        try {
+            RecordingCallback callback = new RecordingCallback(5);
+            for (int i = 0; i < 5; i++) {
+                groupCommitter.commit(tempFolder.newFile(), callback);
+            }
+            assertTrue(callback.latch.await(10, TimeUnit.SECONDS));
+            assertEquals(5, callback.committed.size());
+            assertEquals(5, groupCommitter.getCommittedFiles());
+            // At most 2 files per batch
+            assertTrue(groupCommitter.getCommittedBatches() >= 3);
+        } finally {
+            groupCommitter.close();
+        }
+    }
+
+    @Test
+    public void testCommitFailed() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(10, 1, false);
+        RecordingCallback callback = new RecordingCallback(2);
+        File missing = new File(tempFolder.getRoot(), "missing.tmp");
+        File existing = tempFolder.newFile();
+        groupCommitter.commit(missing, callback);
+        groupCommitter.commit(existing, callback);
+        groupCommitter.close();
+
+        assertEquals(Collections.singletonList(missing), callback.failed);
+        assertEquals(Collections.singletonList(existing), callback.committed);
+        assertEquals(1, groupCommitter.getCommittedFiles());
+    }
+
+    @Test
+    public void testCommitAfterClose() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter();
+        groupCommitter.close();
+        RecordingCallback callback = new RecordingCallback(1);
+        groupCommitter.commit(tempFolder.newFile(), callback);
+        assertEquals(1, callback.committed.size());
+    }
+
+    static class RecordingCallback implements GroupCommitter.Callback {
+
+        final List<File> committed = new CopyOnWriteArrayList<File>();
+        final List<File> failed = new CopyOnWriteArrayList<File>();
+        final CountDownLatch latch;
+
+        RecordingCallback(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onCommitted(final File file) {
+            committed.add(file);
+            latch.countDown();
+        }
+
+        @Override
+        public void onCommitFailed(final File file, final IOException cause) {
+            failed.add(file);
+            latch.countDown();
+        }
+    }
+
+}
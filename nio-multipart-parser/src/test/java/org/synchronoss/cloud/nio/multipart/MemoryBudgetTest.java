@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> Unit tests for {@link MemoryBudget}
+ *
+ * @author Silvano Riz.
+ */
+public class MemoryBudgetTest {
+
+    @Test
+    public void testReserveAndRelease() {
+
+        MemoryBudget memoryBudget = new MemoryBudget(100);
+        assertEquals(100, memoryBudget.getMaxBytes());
+
+        assertTrue(memoryBudget.tryReserve(60));
+        assertFalse(memoryBudget.tryReserve(50));
+        assertTrue(memoryBudget.tryReserve(40));
+        assertEquals(100, memoryBudget.getReservedBytes());
+
+        // Forced reservations can exceed the budget
+        memoryBudget.reserve(20);
+        assertEquals(120, memoryBudget.getReservedBytes());
+        assertFalse(memoryBudget.tryReserve(1));
+
+        memoryBudget.release(70);
+        assertEquals(50, memoryBudget.getReservedBytes());
+        assertEquals(120, memoryBudget.getPeakReservedBytes());
+        assertTrue(memoryBudget.tryReserve(50));
+    }
+
+    @Test
+    public void testParserReservation() throws Exception {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        MemoryBudget memoryBudget = new MemoryBudget(0);
+        NioMultipartParser parser = Multipart.multipart(context).withBufferSize(100).withHeadersSizeLimit(50).withMemoryBudget(memoryBudget).forNIO(mock(NioMultipartParserListener.class));
+        long reserved = memoryBudget.getReservedBytes();
+        assertEquals(parser.endOfLineBuffer.getBufferSize() + 50, reserved);
+
+        parser.close();
+        assertEquals(0, memoryBudget.getReservedBytes());
+        parser.close();
+        assertEquals(0, memoryBudget.getReservedBytes());
+
+        parser.reset(context, mock(NioMultipartParserListener.class));
+        assertEquals(reserved, memoryBudget.getReservedBytes());
+        parser.dispose();
+        assertEquals(0, memoryBudget.getReservedBytes());
+        assertEquals(reserved, memoryBudget.getPeakReservedBytes());
+    }
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new MemoryBudget(-1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+}
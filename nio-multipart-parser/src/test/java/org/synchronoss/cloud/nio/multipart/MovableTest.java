@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for the {@link Movable} part body {@code StreamStorage}s.
+ *
+ * @author Silvano Riz.
+ */
+public class MovableTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testMoveTo_spilled() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 5);
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        streamStorage.write("More than five bytes".getBytes());
+        streamStorage.close();
+        File tempFile = ((TrackedFileStreamStorage) streamStorage).file;
+        assertTrue(tempFile.exists());
+
+        File destination = new File(tempFolder.getRoot(), "destination.txt");
+        ((Movable) streamStorage).moveTo(destination.toPath());
+        assertEquals("More than five bytes", FileUtils.readFileToString(destination, "UTF-8"));
+        assertFalse(tempFile.exists());
+
+        Exception expected = null;
+        try {
+            streamStorage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            ((Movable) streamStorage).moveTo(destination.toPath());
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        streamStorage.dispose();
+        assertTrue(destination.exists());
+    }
+
+    @Test
+    public void testMoveTo_inMemory() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 100);
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        streamStorage.write("In memory".getBytes());
+
+        File destination = tempFolder.newFile("destination.txt");
+        Exception expected = null;
+        try {
+            ((Movable) streamStorage).moveTo(destination.toPath());
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        streamStorage.close();
+        ((Movable) streamStorage).moveTo(destination.toPath());
+        assertEquals("In memory", FileUtils.readFileToString(destination, "UTF-8"));
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testMoveTo_contentLength() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 5);
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("20"));
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(headers, 1);
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
+        streamStorage.write("More than five bytes".getBytes());
+        streamStorage.close();
+
+        File destination = new File(tempFolder.getRoot(), "destination.txt");
+        ((Movable) streamStorage).moveTo(destination.toPath());
+        assertEquals("More than five bytes", FileUtils.readFileToString(destination, "UTF-8"));
+        assertFalse(((ChannelFileStreamStorage) streamStorage).file.exists());
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testMoveTo_pooled() throws Exception {
+        TempFilePoolTest.ManualExecutor refiller = new TempFilePoolTest.ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.newFolder().getAbsolutePath()), 1, refiller);
+        refiller.runAll();
+        PooledFilePartBodyStreamStorageFactory factory = new PooledFilePartBodyStreamStorageFactory(tempFilePool, 0);
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("6"));
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(headers, 1);
+        assertTrue(streamStorage instanceof PooledFileStreamStorage);
+        streamStorage.write("Pooled".getBytes());
+        streamStorage.close();
+
+        File destination = new File(tempFolder.getRoot(), "destination.txt");
+        ((Movable) streamStorage).moveTo(destination.toPath());
+        assertEquals("Pooled", FileUtils.readFileToString(destination, "UTF-8"));
+        // The file is copied and given back to the pool
+        File pooledFile = ((PooledFileStreamStorage) streamStorage).file;
+        assertTrue(pooledFile.exists());
+        assertEquals(1, tempFilePool.size());
+        assertFalse(streamStorage.dispose());
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        File source = tempFolder.newFile();
+        FileUtils.writeStringToFile(source, "Copied channel to channel", "UTF-8");
+        File destination = new File(tempFolder.getRoot(), "destination.txt");
+        FileUtils.writeStringToFile(destination, "Replaced, it is longer than the source", "UTF-8");
+
+        FileChannel fileChannel = new RandomAccessFile(source, "r").getChannel();
+        try {
+            FileMover.copy(fileChannel, destination.toPath());
+        } finally {
+            fileChannel.close();
+        }
+        assertEquals("Copied channel to channel", FileUtils.readFileToString(destination, "UTF-8"));
+    }
+
+}
@@ -26,6 +26,8 @@ import java.io.InputStream;
 
 import static org.synchronoss.cloud.nio.multipart.Multipart.multipart;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -78,6 +80,22 @@ public class MultipartTest {
 
         assertNotNull(parser3);
 
+        NioMultipartParser parser4 = multipart(context)
+                .withBufferSize(500)
+                .withBodyPassThrough()
+                .forNIO(listener);
+
+        assertNotNull(parser4);
+        assertTrue(parser4.bodyPassThrough);
+
+        NioMultipartParserPool pool = new NioMultipartParserPool(1);
+        NioMultipartParser parser5 = multipart(context)
+                .usePool(pool)
+                .forNIO(listener);
+
+        assertNotNull(parser5);
+        assertSame(pool, parser5.pool);
+
     }
 
     @Test
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Test;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> Unit tests for {@link NioMultipartParserPool}
+ *
+ * @author Silvano Riz.
+ */
+public class NioMultipartParserPoolTest {
+
+    @Test
+    public void testConstructor() throws Exception {
+        Exception expected = null;
+        try {
+            new NioMultipartParserPool(0);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+
+        NioMultipartParserPool pool = new NioMultipartParserPool(1);
+        assertEquals(0, pool.getIdleParsers());
+
+        NioMultipartParser parser1 = pool.acquire(context("AAA"), mock(NioMultipartParserListener.class));
+        NioMultipartParser parser2 = pool.acquire(context("AAA"), mock(NioMultipartParserListener.class));
+        assertNotSame(parser1, parser2);
+
+        parser1.dispose();
+        assertEquals(1, pool.getIdleParsers());
+
+        // Disposing twice does not give back the parser twice
+        parser1.dispose();
+        assertEquals(1, pool.getIdleParsers());
+
+        // The pool is full, the parser is discarded
+        parser2.dispose();
+        assertEquals(1, pool.getIdleParsers());
+
+        NioMultipartParser parser3 = pool.acquire(context("AAA"), mock(NioMultipartParserListener.class));
+        assertSame(parser1, parser3);
+        assertEquals(0, pool.getIdleParsers());
+    }
+
+    @Test
+    public void testAcquire_invalidContext() throws Exception {
+
+        NioMultipartParserPool pool = new NioMultipartParserPool(1);
+        pool.acquire(context("AAA"), mock(NioMultipartParserListener.class)).dispose();
+
+        MultipartContext invalidContext = mock(MultipartContext.class);
+        when(invalidContext.getContentType()).thenReturn("multipart/form-data");
+        Exception expected = null;
+        try {
+            pool.acquire(invalidContext, mock(NioMultipartParserListener.class));
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertEquals(1, pool.getIdleParsers());
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+
+        NioMultipartParserPool pool = new NioMultipartParserPool(1, null, 10, NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, 1, false);
+
+        final List<String> bodies = new ArrayList<String>();
+        final NioMultipartParserListener listener = new AbstractNioMultipartListener() {
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                try {
+                    bodies.add(IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        NioMultipartParser parser = pool.acquire(context("AAA"), listener);
+        parser.write("--AAA\r\nContent-Type: text/plain\r\n\r\nFirst body\r\n--AAA--".getBytes());
+        parser.dispose();
+
+        // A longer boundary, the buffer must be reallocated
+        NioMultipartParser reused = pool.acquire(context("A_MUCH_LONGER_BOUNDARY"), listener);
+        assertSame(parser, reused);
+        reused.write("--A_MUCH_LONGER_BOUNDARY\r\nContent-Type: text/plain\r\n\r\nSecond body\r\n--A_MUCH_LONGER_BOUNDARY--".getBytes());
+        reused.dispose();
+
+        assertEquals(2, bodies.size());
+        assertEquals("First body", bodies.get(0));
+        assertEquals("Second body", bodies.get(1));
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+
+        MemoryBudget memoryBudget = new MemoryBudget(1000);
+        NioMultipartParserPool pool = new NioMultipartParserPool(1, null, 100, 50, 1, false, true, memoryBudget);
+
+        NioMultipartParser parser = pool.acquire(context("AAA"), mock(NioMultipartParserListener.class));
+        assertTrue(parser.trustContentLength);
+        long reserved = memoryBudget.getReservedBytes();
+        assertTrue(reserved > 0);
+
+        // The idle parser does not hold memory
+        parser.dispose();
+        assertEquals(0, memoryBudget.getReservedBytes());
+
+        // Reused, the memory is reserved again
+        assertSame(parser, pool.acquire(context("AAA"), mock(NioMultipartParserListener.class)));
+        assertEquals(reserved, memoryBudget.getReservedBytes());
+        parser.dispose();
+        assertEquals(0, memoryBudget.getReservedBytes());
+        assertEquals(reserved, memoryBudget.getPeakReservedBytes());
+    }
+
+    static MultipartContext context(final String boundary) {
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=" + boundary);
+        return context;
+    }
+}
@@ -20,14 +20,32 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
 import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -189,6 +207,409 @@ public class NioMultipartParserTest {
 
     }
 
+    @Test
+    public void testWrite_byteBuffer() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        final List<String> bodies = new ArrayList<String>();
+        NioMultipartParserListener listener = new AbstractNioMultipartListener(){
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                try {
+                    bodies.add(IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+                }catch (Exception e){
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener);
+
+        byte[] multipart = "--AAA\r\nContent-Type: text/plain\r\n\r\nFirst body\r\n--AAA\r\nContent-Type: text/plain\r\n\r\nSecond body\r\n--AAA--\r\nEpilogue".getBytes();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(50);
+        direct.put(multipart, 0, 50);
+        direct.flip();
+        parser.write(direct);
+        assertEquals(50, direct.position());
+
+        ByteBuffer heap = ByteBuffer.wrap(multipart, 50, multipart.length - 50);
+        parser.write(heap);
+        assertEquals(multipart.length, heap.position());
+
+        parser.write(ByteBuffer.allocate(0));
+
+        assertEquals(2, bodies.size());
+        assertEquals("First body", bodies.get(0));
+        assertEquals("Second body", bodies.get(1));
+
+        Exception expected = null;
+        try {
+            parser.write((ByteBuffer) null);
+        }catch (Exception e){
+            expected = e;
+        }
+        Assert.assertNotNull(expected);
+    }
+
+    @Test
+    public void testWrite_partHeaders() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        final List<Map<String, List<String>>> partsHeaders = new ArrayList<Map<String, List<String>>>();
+        final List<String> errors = new ArrayList<String>();
+        NioMultipartParserListener listener = new AbstractNioMultipartListener(){
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                partsHeaders.add(headersFromPart);
+            }
+
+            @Override
+            public void onError(String message, Throwable cause) {
+                errors.add(message);
+            }
+        };
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener);
+        parser.write("--AAA\r\nContent-Disposition: form-data; name=\"field\"\r\n\r\nvalue\r\n--AAA\r\nmalformed header\r\n\r\n".getBytes());
+
+        assertEquals(1, partsHeaders.size());
+        assertTrue(partsHeaders.get(0) instanceof PartHeaders);
+        assertEquals("field", ((PartHeaders) partsHeaders.get(0)).getFieldName());
+        assertEquals(1, errors.size());
+        assertEquals("Error parsing the part headers", errors.get(0));
+    }
+
+    @Test
+    public void testWrite_trustedContentLength() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        final List<String> bodies = new ArrayList<String>();
+        final List<String> errors = new ArrayList<String>();
+        NioMultipartParserListener listener = new AbstractNioMultipartListener(){
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                try {
+                    bodies.add(IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void onError(String message, Throwable cause) {
+                errors.add(message);
+            }
+        };
+
+        // The body of the first part contains the delimiter, it is not scanned so it is preserved
+        final String trustedBody = "Body with\r\n--AAA\r\ninside";
+        byte[] multipart = ("--AAA\r\nContent-Type: text/plain\r\nContent-Length: " + trustedBody.length() + "\r\n\r\n" + trustedBody + "\r\n" +
+                "--AAA\r\nContent-Type: text/plain\r\n\r\nNot sized\r\n" +
+                "--AAA\r\nContent-Type: text/plain\r\nContent-Length: 0\r\n\r\n\r\n" +
+                "--AAA--\r\n").getBytes();
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener, null, 10,
+                NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, false, true);
+        parser.write(multipart);
+        assertEquals(Arrays.asList(trustedBody, "Not sized", ""), bodies);
+
+        // Byte by byte
+        bodies.clear();
+        parser.reset(context, listener);
+        for (byte b : multipart) {
+            parser.write(b);
+        }
+        assertEquals(Arrays.asList(trustedBody, "Not sized", ""), bodies);
+
+        // Direct buffer
+        bodies.clear();
+        parser.reset(context, listener);
+        ByteBuffer direct = ByteBuffer.allocateDirect(multipart.length);
+        direct.put(multipart);
+        direct.flip();
+        parser.write(direct);
+        assertEquals(Arrays.asList(trustedBody, "Not sized", ""), bodies);
+        assertEquals(0, errors.size());
+
+        // The Content-Length is wrong, the delimiter does not follow the body
+        bodies.clear();
+        parser.reset(context, listener);
+        parser.write("--AAA\r\nContent-Type: text/plain\r\nContent-Length: 3\r\n\r\nBody\r\n--AAA--\r\n".getBytes());
+        assertEquals(0, bodies.size());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("Content-Length"));
+
+        // Without the trusted mode the Content-Length is ignored
+        bodies.clear();
+        parser = new NioMultipartParser(context, listener, null, 10,
+                NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, false);
+        parser.write("--AAA\r\nContent-Type: text/plain\r\nContent-Length: 3\r\n\r\nBody\r\n--AAA--\r\n".getBytes());
+        assertEquals(Collections.singletonList("Body"), bodies);
+    }
+
+    @Test
+    public void testReadFrom_transfer() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        final long[] transferred = new long[1];
+        final File tempFolder = Files.createTempDirectory("nio-multipart-test").toFile();
+        PartBodyStreamStorageFactory partBodyStreamStorageFactory = new DefaultPartBodyStreamStorageFactory(tempFolder.getAbsolutePath(), 5) {
+            @Override
+            public StreamStorage newStreamStorageForPartBody(Map<String, List<String>> partHeaders, int partIndex) {
+                return new ChannelFileStreamStorage(getTempFile(partIndex)) {
+                    @Override
+                    public long transferFrom(ReadableByteChannel source, long count) throws IOException {
+                        long transferredNow = super.transferFrom(source, count);
+                        transferred[0] += transferredNow;
+                        return transferredNow;
+                    }
+                }.deleteFilesOnDispose();
+            }
+        };
+
+        final List<String> bodies = new ArrayList<String>();
+        NioMultipartParserListener listener = new AbstractNioMultipartListener(){
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                try {
+                    bodies.add(IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                partBodyStreamStorage.dispose();
+            }
+        };
+
+        final String body = "A body transferred from the channel to the file, with a --AAA inside";
+        byte[] multipart = ("--AAA\r\nContent-Type: text/plain\r\nContent-Length: " + body.length() + "\r\n\r\n" + body + "\r\n" +
+                "--AAA\r\nContent-Type: text/plain\r\nContent-Length: 6\r\n\r\nSecond\r\n" +
+                "--AAA--\r\n").getBytes();
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener, partBodyStreamStorageFactory, 10,
+                NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, false, true);
+
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(multipart));
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        while (parser.readFrom(channel, buffer) != -1) {
+            // Keep reading
+        }
+
+        assertEquals(Arrays.asList(body, "Second"), bodies);
+        assertTrue(transferred[0] > 0);
+        parser.close();
+        tempFolder.delete();
+    }
+
+    @Test
+    public void testReset() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+        NioMultipartParserListener listener = mock(NioMultipartParserListener.class);
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener, 10);
+        parser.write("--AAA\r\nContent-Type: text/plain\r\n\r\nbody\r\n--AAA--\r\n".getBytes());
+        verify(listener).onAllPartsFinished();
+        parser.close();
+
+        MultipartContext newContext = mock(MultipartContext.class);
+        when(newContext.getContentType()).thenReturn("multipart/form-data;boundary=BBBBBBBBBBBBBBBBBBBB");
+        NioMultipartParserListener newListener = mock(NioMultipartParserListener.class);
+
+        parser.reset(newContext, newListener);
+        assertSame(newContext, parser.multipartContext);
+        assertSame(newListener, parser.nioMultipartParserListener);
+        assertEquals(1, parser.partIndex);
+        assertEquals(1, parser.delimiterPrefixes.size());
+        assertTrue(parser.endOfLineBuffer.getBufferSize() >= 10 + "\r\n--BBBBBBBBBBBBBBBBBBBB".length());
+
+        parser.write("--BBBBBBBBBBBBBBBBBBBB\r\nContent-Type: text/plain\r\n\r\nbody\r\n--BBBBBBBBBBBBBBBBBBBB--\r\n".getBytes());
+        verify(newListener).onPartFinished(any(StreamStorage.class), anyMap());
+        verify(newListener).onAllPartsFinished();
+    }
+
+    @Test
+    public void testWrite_streamingListener() throws IOException {
+        testWrite_streamingListener(false);
+        testWrite_streamingListener(true);
+    }
+
+    void testWrite_streamingListener(final boolean bodyPassThrough) throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+        PartBodyStreamStorageFactory partBodyStreamStorageFactory = mock(PartBodyStreamStorageFactory.class);
+
+        final List<String> events = new ArrayList<String>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        NioMultipartParserStreamingListener listener = new NioMultipartParserStreamingListener() {
+            @Override
+            public void onPartStarted(Map<String, List<String>> headersFromPart) {
+                events.add("started " + MultipartUtils.getFieldName(headersFromPart));
+            }
+
+            @Override
+            public void onPartData(byte[] data, int offset, int length) {
+                body.write(data, offset, length);
+            }
+
+            @Override
+            public void onPartEnd() {
+                events.add("end " + new String(body.toByteArray()));
+                body.reset();
+            }
+
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+                events.add("finished");
+            }
+
+            @Override
+            public void onAllPartsFinished() {
+                events.add("all finished");
+            }
+
+            @Override
+            public void onNestedPartStarted(Map<String, List<String>> headersFromParentPart) {
+            }
+
+            @Override
+            public void onNestedPartFinished() {
+            }
+
+            @Override
+            public void onError(String message, Throwable cause) {
+                events.add("error");
+            }
+        };
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener, partBodyStreamStorageFactory, 10,
+                NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART, bodyPassThrough);
+
+        byte[] multipart = ("--AAA\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nA body longer than the buffer\r\n" +
+                "--AAA\r\nContent-Disposition: form-data; name=\"b\"\r\n\r\n\r\n" +
+                "--AAA--\r\n").getBytes();
+        for (int i = 0; i < multipart.length; i += 7) {
+            parser.write(multipart, i, Math.min(i + 7, multipart.length));
+        }
+
+        assertEquals(Arrays.asList("started a", "end A body longer than the buffer", "started b", "end ", "all finished"), events);
+        verify(partBodyStreamStorageFactory, never()).newStreamStorageForPartBody(anyMap(), anyInt());
+        parser.close();
+    }
+
+    @Test
+    public void testOffer_pauseAndResume() throws IOException {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+
+        final NioMultipartParser[] parserHolder = new NioMultipartParser[1];
+        final List<String> bodies = new ArrayList<String>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        NioMultipartParserStreamingListener listener = new NioMultipartParserStreamingListener() {
+            @Override
+            public void onPartStarted(Map<String, List<String>> headersFromPart) {
+            }
+
+            @Override
+            public void onPartData(byte[] data, int offset, int length) {
+                body.write(data, offset, length);
+                // Simulates a slow consumer
+                parserHolder[0].pause();
+            }
+
+            @Override
+            public void onPartEnd() {
+                bodies.add(new String(body.toByteArray()));
+                body.reset();
+            }
+
+            @Override
+            public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+            }
+
+            @Override
+            public void onAllPartsFinished() {
+            }
+
+            @Override
+            public void onNestedPartStarted(Map<String, List<String>> headersFromParentPart) {
+            }
+
+            @Override
+            public void onNestedPartFinished() {
+            }
+
+            @Override
+            public void onError(String message, Throwable cause) {
+            }
+        };
+
+        NioMultipartParser parser = new NioMultipartParser(context, listener, null, 10,
+                NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, NioMultipartParser.DEFAULT_MAX_LEVEL_OF_NESTED_MULTIPART);
+        parserHolder[0] = parser;
+
+        final int[] demands = new int[1];
+        parser.setDemandCallback(new Runnable() {
+            @Override
+            public void run() {
+                demands[0]++;
+            }
+        });
+
+        byte[] multipart = ("--AAA\r\nContent-Type: text/plain\r\n\r\nA body much longer than the buffer of the parser\r\n" +
+                "--AAA\r\nContent-Type: text/plain\r\n\r\nSecond\r\n--AAA--\r\n").getBytes();
+
+        assertTrue(parser.isWritable());
+        int offset = 0;
+        int pauses = 0;
+        while (offset < multipart.length) {
+            int accepted = parser.offer(multipart, offset, multipart.length - offset);
+            offset += accepted;
+            if (!parser.isWritable()) {
+                pauses++;
+                // No data is accepted while paused
+                assertEquals(0, parser.offer(multipart, offset, multipart.length - offset));
+                parser.resume();
+            }
+        }
+
+        assertTrue(pauses > 1);
+        assertEquals(pauses, demands[0]);
+        assertEquals(Arrays.asList("A body much longer than the buffer of the parser", "Second"), bodies);
+
+        // The ByteBuffer variant advances the position by the bytes accepted
+        parser.reset(context, listener);
+        bodies.clear();
+        ByteBuffer buffer = ByteBuffer.wrap(multipart);
+        while (buffer.hasRemaining()) {
+            int position = buffer.position();
+            int accepted = parser.offer(buffer);
+            assertEquals(position + accepted, buffer.position());
+            parser.resume();
+        }
+        assertEquals(Arrays.asList("A body much longer than the buffer of the parser", "Second"), bodies);
+
+        // The blocking write ignores the pause
+        parser.reset(context, listener);
+        bodies.clear();
+        parser.pause();
+        parser.write(multipart);
+        assertEquals(Arrays.asList("A body much longer than the buffer of the parser", "Second"), bodies);
+        parser.close();
+        assertTrue(!parser.isWritable());
+    }
+
     @Test
     public void testClose() throws IOException {
 
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> Unit tests for {@link ParallelMultipartParser}
+ *
+ * @author Silvano Riz.
+ */
+public class ParallelMultipartParserTest {
+
+    static final String MULTIPART = "This is the preamble\r\n" +
+            "--AAA\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nFirst body\r\n" +
+            "--AAA\r\nContent-Type: multipart/mixed; boundary=BBB\r\n\r\n" +
+                "--BBB\r\nContent-Type: text/plain\r\n\r\nNested 1\r\n" +
+                "--BBB\r\nContent-Type: text/plain\r\n\r\nNested 2\r\n" +
+                "--BBB--\r\n" +
+            "--AAA\r\nContent-Type: text/plain\r\n\r\n\r\n" +
+            "--AAA\r\n\r\nNo headers with --AAA\r\n" +
+            "--AAA--\r\nThis is the epilogue";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testParse_sameEventsAsNioParser() throws Exception {
+
+        // The nio parser needs at least a header line, so the part without headers is removed
+        final String multipart = MULTIPART.replace("--AAA\r\n\r\nNo headers with --AAA\r\n", "");
+
+        final EventsListener nioEvents = new EventsListener();
+        NioMultipartParser nioParser = new NioMultipartParser(context(), nioEvents);
+        nioParser.write(multipart.getBytes());
+
+        for (int segmentSize : new int[]{1, 7, 64, ParallelMultipartParser.DEFAULT_SEGMENT_SIZE}) {
+            final EventsListener parallelEvents = new EventsListener();
+            new ParallelMultipartParser(context(), null, NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, 1, new ForkJoinPool(4), segmentSize)
+                    .parse(ByteBuffer.wrap(multipart.getBytes()), parallelEvents);
+            assertEquals(nioEvents.events, parallelEvents.events);
+        }
+    }
+
+    @Test
+    public void testParse_partIndexes() throws Exception {
+
+        final String multipart = MULTIPART.replace("--AAA\r\n\r\nNo headers with --AAA\r\n", "");
+
+        final IndexRecordingFactory nioFactory = new IndexRecordingFactory();
+        final EventsListener nioEvents = new IndexEventsListener(nioFactory);
+        new NioMultipartParser(context(), nioEvents, nioFactory).write(multipart.getBytes());
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("part 1 First body");
+        expected.add("nested start");
+        expected.add("part 2 Nested 1");
+        expected.add("part 3 Nested 2");
+        expected.add("nested end");
+        expected.add("part 4 ");
+        expected.add("all finished");
+        assertEquals(expected, nioEvents.events);
+
+        for (int i = 0; i < 20; i++) {
+            final IndexRecordingFactory parallelFactory = new IndexRecordingFactory();
+            final EventsListener parallelEvents = new IndexEventsListener(parallelFactory);
+            new ParallelMultipartParser(context(), parallelFactory, NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, 1, new ForkJoinPool(4), 7)
+                    .parse(ByteBuffer.wrap(multipart.getBytes()), parallelEvents);
+            assertEquals(expected, parallelEvents.events);
+        }
+    }
+
+    @Test
+    public void testParse_fileChannel() throws Exception {
+
+        File file = tempFolder.newFile();
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(MULTIPART.getBytes());
+        fileOutputStream.close();
+
+        final EventsListener events = new EventsListener();
+        FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+        Multipart.multipart(context()).forParallel().parse(fileChannel, events);
+        fileChannel.close();
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("part First body");
+        expected.add("nested start");
+        expected.add("part Nested 1");
+        expected.add("part Nested 2");
+        expected.add("nested end");
+        expected.add("part ");
+        expected.add("part No headers with --AAA");
+        expected.add("all finished");
+        assertEquals(expected, events.events);
+    }
+
+    @Test
+    public void testParse_errors() throws Exception {
+
+        ParallelMultipartParser parser = new ParallelMultipartParser(context());
+
+        EventsListener events = new EventsListener();
+        parser.parse(ByteBuffer.wrap("--AAA\r\nContent-Type: text/plain\r\n\r\nFirst\r\n--AAA\r\nContent-Type: text/plain\r\n\r\nSecond".getBytes()), events);
+        assertEquals(2, events.events.size());
+        assertEquals("part First", events.events.get(0));
+        assertEquals("error Error parsing the multipart stream. Stream ended unexpectedly", events.events.get(1));
+
+        events = new EventsListener();
+        parser.parse(ByteBuffer.wrap("--AAA\r\nContent-Type: text/plain\r\n\r\nFirst\r\n--AAAXX".getBytes()), events);
+        assertEquals(2, events.events.size());
+        assertEquals("part First", events.events.get(0));
+        assertEquals("error Unexpected characters follow a boundary", events.events.get(1));
+
+        events = new EventsListener();
+        parser.parse(ByteBuffer.wrap("--AAA\r\nmalformed header\r\n\r\nFirst\r\n--AAA--".getBytes()), events);
+        assertEquals(1, events.events.size());
+        assertEquals("error Error parsing the part headers", events.events.get(0));
+
+        events = new EventsListener();
+        parser = new ParallelMultipartParser(context(), null, NioMultipartParser.DEFAULT_HEADERS_SECTION_SIZE, 0, null, 10);
+        parser.parse(ByteBuffer.wrap(MULTIPART.getBytes()), events);
+        assertEquals(2, events.events.size());
+        assertEquals("error Reached maximum number of nested multiparts: 0", events.events.get(1));
+    }
+
+    @Test
+    public void testConstructor_error() throws Exception {
+        Exception expected = null;
+        try {
+            new ParallelMultipartParser(context(), null, -1, 1, null, 0);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
+    static MultipartContext context() {
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn("multipart/form-data;boundary=AAA");
+        return context;
+    }
+
+    static class IndexRecordingFactory extends DefaultPartBodyStreamStorageFactory {
+
+        final Map<StreamStorage, Integer> indexes = new ConcurrentHashMap<StreamStorage, Integer>();
+
+        @Override
+        public StreamStorage newStreamStorageForPartBody(Map<String, List<String>> headers, int partIndex) {
+            final StreamStorage streamStorage = super.newStreamStorageForPartBody(headers, partIndex);
+            indexes.put(streamStorage, partIndex);
+            return streamStorage;
+        }
+    }
+
+    static class IndexEventsListener extends EventsListener {
+
+        final IndexRecordingFactory factory;
+
+        IndexEventsListener(final IndexRecordingFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+            try {
+                events.add("part " + factory.indexes.get(partBodyStreamStorage) + " " + IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            partBodyStreamStorage.dispose();
+        }
+    }
+
+    static class EventsListener implements NioMultipartParserListener {
+
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onPartFinished(StreamStorage partBodyStreamStorage, Map<String, List<String>> headersFromPart) {
+            try {
+                events.add("part " + IOUtils.inputStreamAsString(partBodyStreamStorage.getInputStream(), "UTF-8"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            partBodyStreamStorage.dispose();
+        }
+
+        @Override
+        public void onAllPartsFinished() {
+            events.add("all finished");
+        }
+
+        @Override
+        public void onNestedPartStarted(Map<String, List<String>> headersFromParentPart) {
+            events.add("nested start");
+        }
+
+        @Override
+        public void onNestedPartFinished() {
+            events.add("nested end");
+        }
+
+        @Override
+        public void onError(String message, Throwable cause) {
+            events.add("error " + message);
+        }
+    }
+}
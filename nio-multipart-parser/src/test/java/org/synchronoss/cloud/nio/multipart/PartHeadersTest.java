@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p> Unit tests for {@link PartHeaders}
+ *
+ * @author Silvano Riz.
+ */
+public class PartHeadersTest {
+
+    @Test
+    public void testConstructor() throws Exception {
+        Exception expected = null;
+        try {
+            new PartHeaders(null);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testFrom() throws Exception {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        PartHeaders partHeaders = PartHeaders.from(headers);
+        assertNotNull(partHeaders);
+        assertSame(partHeaders, PartHeaders.from(partHeaders));
+    }
+
+    @Test
+    public void testGetHeaders() throws Exception {
+        PartHeaders partHeaders = new PartHeaders(headers(
+                "content-type", "text/plain",
+                "x-custom", "a",
+                "x-custom", "b"));
+
+        assertEquals(Collections.singletonList("text/plain"), partHeaders.getHeaders("content-type"));
+        assertEquals(Collections.singletonList("text/plain"), partHeaders.getHeaders("Content-Type"));
+        assertEquals(Collections.singletonList("text/plain"), partHeaders.get("CONTENT-TYPE"));
+        assertEquals(Arrays.asList("a", "b"), partHeaders.getHeaders("X-Custom"));
+        assertEquals("a", partHeaders.getHeader("X-Custom"));
+        assertNull(partHeaders.getHeaders("x-missing"));
+        assertNull(partHeaders.getHeader("x-missing"));
+        assertNull(partHeaders.get(1));
+        assertTrue(partHeaders.containsKey("X-CUSTOM"));
+        assertFalse(partHeaders.containsKey("x-missing"));
+        assertEquals(2, partHeaders.size());
+        assertEquals(partHeaders.headers, partHeaders);
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        PartHeaders partHeaders = new PartHeaders(headers("content-type", "text/plain"));
+        Exception expected = null;
+        try {
+            partHeaders.put("x-custom", Collections.singletonList("a"));
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void testContentDisposition() throws Exception {
+
+        PartHeaders partHeaders = new PartHeaders(headers("content-disposition", "form-data; name=\" field \"; filename=\"file.txt\""));
+        assertEquals("field", partHeaders.getFieldName());
+        assertEquals("file.txt", partHeaders.getFileName());
+
+        partHeaders = new PartHeaders(headers("content-disposition", "attachment; name=\"field\"; filename"));
+        assertNull(partHeaders.getFieldName());
+        assertEquals("", partHeaders.getFileName());
+
+        partHeaders = new PartHeaders(headers("content-disposition", "inline; name=\"field\"; filename=\"file.txt\""));
+        assertNull(partHeaders.getFieldName());
+        assertNull(partHeaders.getFileName());
+
+        partHeaders = new PartHeaders(headers());
+        assertNull(partHeaders.getFieldName());
+        assertNull(partHeaders.getFileName());
+    }
+
+    @Test
+    public void testContentType() throws Exception {
+
+        PartHeaders partHeaders = new PartHeaders(headers("content-type", "text/plain; Charset=UTF-8"));
+        assertEquals("text/plain; Charset=UTF-8", partHeaders.getContentType());
+        assertEquals("UTF-8", partHeaders.getCharEncoding());
+
+        partHeaders = new PartHeaders(headers());
+        assertNull(partHeaders.getContentType());
+        assertNull(partHeaders.getCharEncoding());
+    }
+
+    @Test
+    public void testContentLengthAndTransferEncoding() throws Exception {
+
+        PartHeaders partHeaders = new PartHeaders(headers("content-length", "123", "content-transfer-encoding", "base64"));
+        assertEquals(123, partHeaders.getContentLength());
+        assertEquals("base64", partHeaders.getContentTransferEncoding());
+
+        partHeaders = new PartHeaders(headers("content-length", "abc"));
+        assertEquals(-1, partHeaders.getContentLength());
+        assertNull(partHeaders.getContentTransferEncoding());
+    }
+
+    @Test
+    public void testMultipartUtils() throws Exception {
+
+        MultipartContext context = mock(MultipartContext.class);
+        when(context.getContentType()).thenReturn(MultipartUtils.MULTIPART_FORM_DATA);
+
+        Map<String, List<String>> headers = headers(
+                "content-disposition", "form-data; name=\"field\"",
+                "content-type", "text/plain; charset=ISO-8859-1",
+                "content-length", "3",
+                "content-transfer-encoding", "BASE64");
+        PartHeaders partHeaders = new PartHeaders(headers);
+
+        assertEquals(MultipartUtils.getFieldName(headers), MultipartUtils.getFieldName(partHeaders));
+        assertEquals(MultipartUtils.getFileName(headers), MultipartUtils.getFileName(partHeaders));
+        assertEquals(MultipartUtils.getContentType(headers), MultipartUtils.getContentType(partHeaders));
+        assertEquals(MultipartUtils.getCharEncoding(headers), MultipartUtils.getCharEncoding(partHeaders));
+        assertEquals(MultipartUtils.getContentLength(headers), MultipartUtils.getContentLength(partHeaders));
+        assertEquals(MultipartUtils.getHeaders(MultipartUtils.CONTENT_TYPE, headers), MultipartUtils.getHeaders(MultipartUtils.CONTENT_TYPE, partHeaders));
+        assertEquals(MultipartUtils.isFormField(headers, context), MultipartUtils.isFormField(partHeaders, context));
+        assertEquals(MultipartUtils.isContentTransferEncodingBase64Encoded(headers), MultipartUtils.isContentTransferEncodingBase64Encoded(partHeaders));
+        assertTrue(MultipartUtils.isFormField(partHeaders, context));
+    }
+
+    static Map<String, List<String>> headers(final String... namesAndValues) {
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            List<String> values = headers.get(namesAndValues[i]);
+            if (values == null) {
+                values = new ArrayList<String>();
+                headers.put(namesAndValues[i], values);
+            }
+            values.add(namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+}
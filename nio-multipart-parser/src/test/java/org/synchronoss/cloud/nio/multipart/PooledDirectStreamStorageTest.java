@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.io.ByteBufferPool;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link PooledDirectStreamStorage}
+ *
+ * @author Silvano Riz.
+ */
+public class PooledDirectStreamStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testInMemory() throws Exception {
+
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        PooledDirectStreamStorage storage = new PooledDirectStreamStorage(file, 10, pool);
+
+        storage.write('A');
+        storage.write("BCDEF".getBytes());
+        storage.write("xGHIJx".getBytes(), 1, 4);
+        storage.flush();
+        storage.close();
+
+        assertTrue(storage.isInMemory());
+        assertFalse(file.exists());
+        assertEquals(3, storage.slabs.size());
+        InputStream inputStream = storage.getInputStream();
+        assertEquals(10, inputStream.available());
+        assertEquals("ABCDEFGHIJ", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        // The input stream has been closed, the slabs are back in the pool
+        assertEquals(3, pool.getPooledSlabs());
+        assertFalse(storage.dispose());
+    }
+
+    @Test
+    public void testSwitchToFile() throws Exception {
+
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        PooledDirectStreamStorage storage = new PooledDirectStreamStorage(file, 10, pool);
+
+        storage.write("ABCDEF".getBytes());
+        assertTrue(storage.isInMemory());
+        storage.write("GHIJK".getBytes());
+        assertFalse(storage.isInMemory());
+        assertEquals(2, pool.getPooledSlabs());
+        storage.write('L');
+        storage.close();
+
+        assertTrue(file.exists());
+        InputStream inputStream = storage.getInputStream();
+        assertEquals("ABCDEFGHIJKL", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        PooledDirectStreamStorage storage = new PooledDirectStreamStorage(new File(tempFolder.getRoot(), "test.tmp"), 10, pool);
+        storage.write("ABCDEF".getBytes());
+        storage.close();
+
+        InputStream inputStream = storage.getInputStream();
+        assertEquals('A', inputStream.read());
+        assertTrue(storage.dispose());
+        assertEquals(2, pool.getPooledSlabs());
+
+        Exception expected = null;
+        try {
+            inputStream.read();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        storage = new PooledDirectStreamStorage(new File(tempFolder.getRoot(), "test2.tmp"), 2, pool);
+        storage.write("ABCDEF".getBytes());
+        assertTrue(storage.dispose());
+        assertFalse(new File(tempFolder.getRoot(), "test2.tmp").exists());
+    }
+
+    @Test
+    public void testChannelAfterRelease() throws Exception {
+
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        PooledDirectStreamStorage storage = new PooledDirectStreamStorage(new File(tempFolder.getRoot(), "test.tmp"), 10, pool);
+        storage.write("ABCDEF".getBytes());
+        storage.close();
+
+        ReadableByteChannel channel = storage.getReadableChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        assertEquals(2, channel.read(buffer));
+
+        // Closing an InputStream taken earlier gives back the slabs
+        storage.getInputStream().close();
+        assertEquals(2, pool.getPooledSlabs());
+
+        buffer.clear();
+        Exception expected = null;
+        try {
+            channel.read(buffer);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IOException);
+        assertEquals(0, buffer.position());
+
+        expected = null;
+        try {
+            ChannelTransfers.write(storage.slabViews(), Channels.newChannel(new ByteArrayOutputStream()), storage.released);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testNotClosed_error() throws Exception {
+
+        PooledDirectStreamStorage storage = new PooledDirectStreamStorage(new File(tempFolder.getRoot(), "test.tmp"), 10, new ByteBufferPool(4, 10));
+        storage.write("ABC".getBytes());
+
+        Exception expected = null;
+        try {
+            storage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        storage.close();
+        expected = null;
+        try {
+            storage.write('A');
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+        storage.dispose();
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+
+        PooledDirectPartBodyStreamStorageFactory factory = new PooledDirectPartBodyStreamStorageFactory(tempFolder.getRoot().getAbsolutePath(), 100, new ByteBufferPool());
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(headers, 1);
+        assertTrue(streamStorage instanceof PooledDirectStreamStorage);
+        streamStorage.dispose();
+
+        List<String> contentLength = new ArrayList<String>();
+        contentLength.add("101");
+        headers.put("content-length", contentLength);
+        streamStorage = factory.newStreamStorageForPartBody(headers, 2);
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
+        streamStorage.dispose();
+    }
+}
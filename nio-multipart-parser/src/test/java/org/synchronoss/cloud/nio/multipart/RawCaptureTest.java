@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link RawCapture} and {@link RawPartStreamStorage}
+ *
+ * @author Silvano Riz.
+ */
+public class RawCaptureTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    static final String BOUNDARY = "gc0p4Jq0M2Yt08jU534c0p";
+
+    static final String BODY = "preamble\r\n" +
+            "--" + BOUNDARY + "\r\n" +
+            "Content-Disposition: form-data; name=\"field\"\r\n" +
+            "\r\n" +
+            "value\r\n" +
+            "--" + BOUNDARY + "\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "The content of the file\r\n" +
+            "on two lines\r\n" +
+            "--" + BOUNDARY + "--\r\n";
+
+    final MultipartContext context = new MultipartContext("multipart/form-data;boundary=" + BOUNDARY, BODY.length(), "UTF-8");
+
+    @Test
+    public void testRawCapture() throws Exception {
+        File file = tempFolder.newFile();
+        RawCapture rawCapture = new RawCapture(file);
+        CollectingListener listener = new CollectingListener(null);
+        NioMultipartParser parser = Multipart.multipart(context).withRawCapture(rawCapture).forNIO(listener);
+
+        byte[] data = BODY.getBytes("UTF-8");
+        for (int i = 0; i < data.length; i += 7) {
+            parser.write(ByteBuffer.wrap(data, i, Math.min(7, data.length - i)));
+        }
+        parser.close();
+
+        assertTrue(listener.allPartsFinished);
+        assertEquals(BODY, FileUtils.readFileToString(file, "UTF-8"));
+        assertEquals(data.length, rawCapture.size());
+
+        assertEquals(2, listener.parts.size());
+        assertEquals("value", read(listener.parts.get(0)));
+        assertEquals("The content of the file\r\non two lines", read(listener.parts.get(1)));
+
+        List<RawPartStreamStorage> parts = rawCapture.getParts();
+        assertEquals(2, parts.size());
+        RawPartStreamStorage part = parts.get(1);
+        assertSame(listener.parts.get(1), part);
+        assertTrue(BODY.substring((int) part.getHeadersOffset()).startsWith("Content-Disposition: form-data; name=\"file\""));
+        assertEquals("The content of the file\r\non two lines", BODY.substring((int) part.getBodyOffset(), (int) (part.getBodyOffset() + part.getBodyLength())));
+
+        assertTrue(part.dispose());
+        assertFalse(part.dispose());
+        rawCapture.close();
+    }
+
+    @Test
+    public void testRawCapture_offer() throws Exception {
+        File file = tempFolder.newFile();
+        RawCapture rawCapture = new RawCapture(file);
+        NioMultipartParser parser = new NioMultipartParser(context, null);
+        CollectingListener listener = new CollectingListener(parser);
+        parser.reset(context, listener);
+        parser.setRawCapture(rawCapture);
+
+        // The parser pauses after each part, the data not accepted is offered again and must not be captured twice
+        byte[] data = BODY.getBytes("UTF-8");
+        int offset = 0;
+        while (offset < data.length) {
+            offset += parser.offer(data, offset, data.length - offset);
+            parser.resume();
+        }
+        parser.close();
+
+        assertEquals(BODY, FileUtils.readFileToString(file, "UTF-8"));
+        assertEquals(2, listener.parts.size());
+        assertEquals("value", read(listener.parts.get(0)));
+        assertEquals("The content of the file\r\non two lines", read(listener.parts.get(1)));
+        rawCapture.close();
+    }
+
+    @Test
+    public void testRawCapture_preallocated() throws Exception {
+        File file = tempFolder.newFile();
+        RawCapture rawCapture = new RawCapture(file);
+        MultipartContext declaringMore = new MultipartContext(context.getContentType(), BODY.length() + 100, "UTF-8");
+        CollectingListener listener = new CollectingListener(null);
+        NioMultipartParser parser = Multipart.multipart(declaringMore).withRawCapture(rawCapture).forNIO(listener);
+        assertEquals(BODY.length() + 100, file.length());
+
+        parser.write(ByteBuffer.wrap(BODY.getBytes("UTF-8")));
+        assertEquals("The content of the file\r\non two lines", read(listener.parts.get(1)));
+        parser.close();
+        assertEquals(BODY, FileUtils.readFileToString(file, "UTF-8"));
+
+        // Already trimmed by the parser
+        rawCapture.close();
+        assertEquals(BODY.length(), file.length());
+    }
+
+    @Test
+    public void testSetRawCapture_afterWrite() throws Exception {
+        NioMultipartParser parser = new NioMultipartParser(context, new CollectingListener(null));
+        parser.write("pre".getBytes());
+        Exception expected = null;
+        try {
+            parser.setRawCapture(new RawCapture(tempFolder.newFile()));
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    static String read(final StreamStorage streamStorage) throws Exception {
+        assertTrue(streamStorage instanceof RawPartStreamStorage);
+        InputStream inputStream = streamStorage.getInputStream();
+        try {
+            return IOUtils.inputStreamAsString(inputStream, "UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    static class CollectingListener implements NioMultipartParserListener {
+
+        final NioMultipartParser parserToPause;
+        final List<StreamStorage> parts = new ArrayList<StreamStorage>();
+        boolean allPartsFinished = false;
+
+        CollectingListener(final NioMultipartParser parserToPause) {
+            this.parserToPause = parserToPause;
+        }
+
+        @Override
+        public void onPartFinished(final StreamStorage partBodyStreamStorage, final Map<String, List<String>> headersFromPart) {
+            parts.add(partBodyStreamStorage);
+            if (parserToPause != null) {
+                parserToPause.pause();
+            }
+        }
+
+        @Override
+        public void onAllPartsFinished() {
+            allPartsFinished = true;
+        }
+
+        @Override
+        public void onNestedPartStarted(final Map<String, List<String>> headersFromParentPart) {
+        }
+
+        @Override
+        public void onNestedPartFinished() {
+        }
+
+        @Override
+        public void onError(final String message, final Throwable cause) {
+            fail(message);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.SegmentStore.Segment;
+
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link SegmentStore}
+ *
+ * @author Silvano Riz.
+ */
+public class SegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 0);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testLeaseAndRecycle() throws Exception {
+        SegmentStore segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 10);
+
+        // Two concurrent writers get different segments
+        Segment segment1 = segmentStore.lease();
+        Segment segment2 = segmentStore.lease();
+        assertNotSame(segment1, segment2);
+        assertEquals(2, segmentStore.getSegments());
+
+        segment1.writePosition = 4;
+        segmentStore.release(segment1, true);
+        segmentStore.release(segment2, false);
+        assertEquals(1, segmentStore.getLiveExtents());
+
+        // The released segment is reused, appending after the previous data
+        Segment segment = segmentStore.lease();
+        assertSame(segment2, segment);
+        segmentStore.release(segment, false);
+        segment = segmentStore.lease();
+        assertSame(segment2, segment);
+        segment.writePosition = 10;
+        segmentStore.release(segment, true);
+
+        // Full, not available anymore
+        assertSame(segment1, segmentStore.lease());
+        segmentStore.release(segment1, false);
+        assertEquals(4, segment1.writePosition);
+
+        // Freeing all the extents recycles the segments
+        segmentStore.free(segment1);
+        assertEquals(0, segment1.writePosition);
+        segmentStore.free(segment2);
+        assertEquals(0, segment2.writePosition);
+        assertEquals(0, segmentStore.getLiveExtents());
+        assertSame(segment2, segmentStore.lease());
+        assertEquals(2, segmentStore.getSegments());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        SegmentStore segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 10);
+        Segment segment = segmentStore.lease();
+        File file = segment.file;
+        assertTrue(file.exists());
+        segmentStore.close();
+        assertFalse(file.exists());
+        assertEquals(0, segmentStore.getSegments());
+
+        Exception expected = null;
+        try {
+            segmentStore.lease();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testTwoStoresSameFolder() throws Exception {
+        SegmentStore segmentStore1 = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        SegmentStore segmentStore2 = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        try {
+            SegmentStreamStorage streamStorage1 = new SegmentStreamStorage(segmentStore1, 0);
+            streamStorage1.write("AAAAAAAA".getBytes());
+            streamStorage1.close();
+            SegmentStreamStorage streamStorage2 = new SegmentStreamStorage(segmentStore2, 0);
+            streamStorage2.write("BBBBBBBB".getBytes());
+            streamStorage2.close();
+
+            File file1 = segmentStore1.segments.get(0).file;
+            File file2 = segmentStore2.segments.get(0).file;
+            assertNotEquals(file1, file2);
+
+            InputStream inputStream1 = streamStorage1.getInputStream();
+            assertEquals("AAAAAAAA", IOUtils.inputStreamAsString(inputStream1, "UTF-8"));
+            inputStream1.close();
+
+            // Closing one store does not delete the files of the other
+            segmentStore1.close();
+            assertFalse(file1.exists());
+            assertTrue(file2.exists());
+            InputStream inputStream2 = streamStorage2.getInputStream();
+            assertEquals("BBBBBBBB", IOUtils.inputStreamAsString(inputStream2, "UTF-8"));
+            inputStream2.close();
+        } finally {
+            segmentStore1.close();
+            segmentStore2.close();
+        }
+    }
+
+    @Test
+    public void testNewSegment_clash() throws Exception {
+        SegmentStore segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        File clash = new File(tempFolder.getRoot(), String.format("nio-segment-%s-%d-0.seg", TempFileManager.PROCESS_PREFIX, segmentStore.storeId));
+        assertTrue(clash.createNewFile());
+
+        Exception expected = null;
+        try {
+            segmentStore.lease();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        segmentStore.close();
+        assertTrue(clash.exists());
+    }
+
+}
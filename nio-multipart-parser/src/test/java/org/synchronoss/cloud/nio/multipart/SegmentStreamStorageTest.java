@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link SegmentStreamStorage} and {@link SegmentPartBodyStreamStorageFactory}
+ *
+ * @author Silvano Riz.
+ */
+public class SegmentStreamStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    SegmentStore segmentStore;
+
+    @After
+    public void closeSegmentStore() {
+        if (segmentStore != null) {
+            segmentStore.close();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        SegmentStreamStorage streamStorage = new SegmentStreamStorage(segmentStore, 10);
+        streamStorage.write("ABCDE".getBytes());
+        streamStorage.write("FGHIJ".getBytes());
+        streamStorage.close();
+        assertTrue(streamStorage.isInMemory());
+        assertEquals(0, segmentStore.getSegments());
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals("ABCDEFGHIJ", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertFalse(streamStorage.dispose());
+    }
+
+    @Test
+    public void testSharedSegments() throws Exception {
+        segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+
+        // The first part spans two segments, the second continues in the second segment
+        SegmentStreamStorage streamStorage1 = new SegmentStreamStorage(segmentStore, 10);
+        String data1 = repeat("0123456789", 12);
+        streamStorage1.write(data1.getBytes());
+        streamStorage1.close();
+        assertFalse(streamStorage1.isInMemory());
+        assertEquals(2, streamStorage1.extents.size());
+
+        SegmentStreamStorage streamStorage2 = new SegmentStreamStorage(segmentStore, 0);
+        streamStorage2.write("abcdefghij".getBytes());
+        streamStorage2.close();
+        assertEquals(1, streamStorage2.extents.size());
+        assertSame(streamStorage1.extents.get(1).segment, streamStorage2.extents.get(0).segment);
+        assertEquals(20, streamStorage2.extents.get(0).offset);
+        assertEquals(2, segmentStore.getSegments());
+        assertEquals(3, segmentStore.getLiveExtents());
+
+        InputStream inputStream1 = streamStorage1.getInputStream();
+        InputStream inputStream2 = streamStorage2.getInputStream();
+        assertEquals("abcdefghij", IOUtils.inputStreamAsString(inputStream2, "UTF-8"));
+        assertEquals(data1, IOUtils.inputStreamAsString(inputStream1, "UTF-8"));
+        inputStream1.close();
+        inputStream2.close();
+        assertEquals(0, segmentStore.getLiveExtents());
+
+        // The segments are recycled, no new file is created
+        SegmentStreamStorage streamStorage3 = new SegmentStreamStorage(segmentStore, 0);
+        streamStorage3.write(repeat("x", 150).getBytes());
+        streamStorage3.close();
+        assertEquals(2, segmentStore.getSegments());
+        assertEquals(0, streamStorage3.extents.get(0).offset);
+        assertTrue(streamStorage3.dispose());
+    }
+
+    @Test
+    public void testDisposeBeforeClose() throws Exception {
+        segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        SegmentStreamStorage streamStorage = new SegmentStreamStorage(segmentStore, 0);
+        streamStorage.write("ABCDE".getBytes());
+        assertEquals(1, segmentStore.getLiveExtents());
+        assertTrue(streamStorage.dispose());
+        assertEquals(0, segmentStore.getLiveExtents());
+
+        Exception expected = null;
+        try {
+            streamStorage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        segmentStore = new SegmentStore(tempFolder.getRoot().getAbsolutePath(), 100);
+        SegmentPartBodyStreamStorageFactory factory = new SegmentPartBodyStreamStorageFactory(segmentStore, 10);
+
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        assertEquals(10, ((SegmentStreamStorage) streamStorage).threshold);
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("50"));
+        streamStorage = factory.newStreamStorageForPartBody(headers, 2);
+        assertEquals(0, ((SegmentStreamStorage) streamStorage).threshold);
+    }
+
+    static String repeat(final String value, final int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link TempFileManager}
+ *
+ * @author Silvano Riz.
+ */
+public class TempFileManagerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testNewTempFile_singleFolder() throws Exception {
+
+        File folder = new File(tempFolder.getRoot(), "single");
+        TempFileManager tempFileManager = new TempFileManager(folder.getAbsolutePath());
+        assertTrue(folder.isDirectory());
+
+        File file1 = tempFileManager.newTempFile(1);
+        File file2 = tempFileManager.newTempFile(1);
+        assertEquals(folder.getAbsoluteFile(), file1.getParentFile().getAbsoluteFile());
+        assertTrue(file1.getName().startsWith("nio-body-1-" + TempFileManager.PROCESS_PREFIX));
+        assertTrue(file1.getName().endsWith(".tmp"));
+        assertNotEquals(file1, file2);
+        assertFalse(file1.exists());
+    }
+
+    @Test
+    public void testNewTempFile_stripedAndSharded() throws Exception {
+
+        final File folder1 = new File(tempFolder.getRoot(), "disk1");
+        final File folder2 = new File(tempFolder.getRoot(), "disk2");
+        final TempFileManager tempFileManager = new TempFileManager(4, folder1.getAbsolutePath(), folder2.getAbsolutePath());
+        assertTrue(new File(folder1, "00").isDirectory());
+        assertTrue(new File(folder2, "03").isDirectory());
+
+        final Set<File> files = new HashSet<File>();
+        final Map<File, Integer> filesPerFolder = new HashMap<File, Integer>();
+        final Set<File> shards = new HashSet<File>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        File file = tempFileManager.newTempFile(i);
+                        synchronized (files) {
+                            assertTrue(files.add(file));
+                            shards.add(file.getParentFile());
+                            File root = file.getParentFile().getParentFile();
+                            filesPerFolder.put(root, filesPerFolder.containsKey(root) ? filesPerFolder.get(root) + 1 : 1);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, files.size());
+        assertEquals(8, shards.size());
+        assertEquals(200, (int) filesPerFolder.get(folder1.getAbsoluteFile()));
+        assertEquals(200, (int) filesPerFolder.get(folder2.getAbsoluteFile()));
+    }
+
+    @Test
+    public void testConstructor_error() throws Exception {
+
+        Exception expected = null;
+        try {
+            new TempFileManager(0);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+
+        expected = null;
+        try {
+            new TempFileManager(257, tempFolder.getRoot().getAbsolutePath());
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+}
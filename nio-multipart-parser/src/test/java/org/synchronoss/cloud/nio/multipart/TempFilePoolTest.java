@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link TempFilePool}
+ *
+ * @author Silvano Riz.
+ */
+public class TempFilePoolTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+
+        ManualExecutor refiller = new ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.getRoot().getAbsolutePath()), 2, refiller);
+        assertEquals(0, tempFilePool.size());
+        refiller.runAll();
+        assertEquals(2, tempFilePool.size());
+        assertEquals(2, tempFolder.getRoot().list().length);
+
+        TempFilePool.PooledFile pooledFile = tempFilePool.acquire();
+        assertNotNull(pooledFile);
+        assertTrue(pooledFile.getFile().exists());
+        assertEquals(1, tempFilePool.size());
+
+        // Given back truncated
+        pooledFile.fileChannel.write(ByteBuffer.wrap("data".getBytes()));
+        tempFilePool.release(pooledFile);
+        assertEquals(2, tempFilePool.size());
+        assertTrue(pooledFile.getFile().exists());
+        assertEquals(0, pooledFile.getFile().length());
+
+        // The pool is refilled, the file given back is deleted
+        pooledFile = tempFilePool.acquire();
+        refiller.runAll();
+        assertEquals(2, tempFilePool.size());
+        tempFilePool.release(pooledFile);
+        assertEquals(2, tempFilePool.size());
+        assertFalse(pooledFile.getFile().exists());
+
+        tempFilePool.close();
+        assertEquals(0, tempFilePool.size());
+        assertEquals(0, tempFolder.getRoot().list().length);
+        assertNull(tempFilePool.acquire());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+
+        ManualExecutor refiller = new ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.newFolder().getAbsolutePath()), 1, refiller);
+        refiller.runAll();
+        PooledFilePartBodyStreamStorageFactory factory = new PooledFilePartBodyStreamStorageFactory(tempFilePool, 100);
+
+        // Small part, not from the pool
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        assertFalse(streamStorage instanceof PooledFileStreamStorage);
+        streamStorage.dispose();
+        assertEquals(1, tempFilePool.size());
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("140"));
+        streamStorage = factory.newStreamStorageForPartBody(headers, 2);
+        assertTrue(streamStorage instanceof PooledFileStreamStorage);
+        assertEquals(0, tempFilePool.size());
+        File file = ((PooledFileStreamStorage) streamStorage).pooledFile.getFile();
+        assertFalse(((PooledFileStreamStorage) streamStorage).isInMemory());
+
+        streamStorage.write("Part ".getBytes());
+        assertEquals(4, ((PooledFileStreamStorage) streamStorage).transferFrom(Channels.newChannel(new ByteArrayInputStream("body".getBytes())), 10));
+        streamStorage.flush();
+        streamStorage.close();
+
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals("Part body", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertEquals(1, tempFilePool.size());
+        assertTrue(file.exists());
+        assertEquals(0, file.length());
+        assertFalse(streamStorage.dispose());
+
+        // Empty pool, a file is created
+        TempFilePool emptyPool = new TempFilePool(new TempFileManager(tempFolder.newFolder().getAbsolutePath()), 1, new ManualExecutor());
+        streamStorage = new PooledFilePartBodyStreamStorageFactory(emptyPool, 100).newStreamStorageForPartBody(headers, 3);
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
+        assertFalse(streamStorage instanceof PooledFileStreamStorage);
+        streamStorage.dispose();
+
+        emptyPool.close();
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testStorage_reuse() throws Exception {
+
+        ManualExecutor refiller = new ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.getRoot().getAbsolutePath()), 1, refiller);
+        refiller.runAll();
+        TempFilePool.PooledFile pooledFile = tempFilePool.acquire();
+
+        PooledFileStreamStorage storage = new PooledFileStreamStorage(tempFilePool, pooledFile);
+        storage.write("first".getBytes());
+        Exception expected = null;
+        try {
+            storage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        // Dispose gives back the truncated file
+        assertTrue(storage.dispose());
+        assertSame(pooledFile, tempFilePool.acquire());
+        assertEquals(0, pooledFile.getFile().length());
+
+        storage = new PooledFileStreamStorage(tempFilePool, pooledFile);
+        storage.write("second".getBytes());
+        storage.close();
+        assertEquals("second", IOUtils.inputStreamAsString(storage.getInputStream(), "UTF-8"));
+        assertTrue(storage.dispose());
+        assertFalse(storage.dispose());
+
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testStorage_channelAfterRelease() throws Exception {
+
+        ManualExecutor refiller = new ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.getRoot().getAbsolutePath()), 1, refiller);
+        refiller.runAll();
+        TempFilePool.PooledFile pooledFile = tempFilePool.acquire();
+
+        PooledFileStreamStorage storage = new PooledFileStreamStorage(tempFilePool, pooledFile);
+        storage.write("first".getBytes());
+        storage.close();
+        ReadableByteChannel channel = storage.getReadableChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        assertEquals(2, channel.read(buffer));
+
+        // The file goes back to the pool and is written by the next owner
+        assertTrue(storage.dispose());
+        assertSame(pooledFile, tempFilePool.acquire());
+        pooledFile.fileChannel.write(ByteBuffer.wrap("other".getBytes()));
+
+        buffer.clear();
+        Exception expected = null;
+        try {
+            channel.read(buffer);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IOException);
+        assertEquals(0, buffer.position());
+
+        expected = null;
+        try {
+            ChannelTransfers.transfer(pooledFile.fileChannel, 0, 5, Channels.newChannel(new ByteArrayOutputStream()), storage.released);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        tempFilePool.release(pooledFile);
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testRefill_rejected() throws Exception {
+
+        final boolean[] reject = {true};
+        final ManualExecutor manualExecutor = new ManualExecutor();
+        Executor refiller = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException("Rejected");
+                }
+                manualExecutor.execute(command);
+            }
+        };
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.getRoot().getAbsolutePath()), 1, refiller);
+        assertFalse(tempFilePool.refilling.get());
+
+        // acquire() does not fail and the next refill is not blocked
+        assertNull(tempFilePool.acquire());
+        assertFalse(tempFilePool.refilling.get());
+        reject[0] = false;
+        tempFilePool.refill();
+        manualExecutor.runAll();
+        assertEquals(1, tempFilePool.size());
+
+        // Closed while the owned executor is shut down
+        TempFilePool ownedPool = new TempFilePool(new TempFileManager(tempFolder.newFolder().getAbsolutePath()), 1);
+        ownedPool.ownedExecutorService.shutdown();
+        ownedPool.refilling.set(false);
+        ownedPool.acquire();
+        assertFalse(ownedPool.refilling.get());
+        ownedPool.close();
+
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testDefaultRefiller() throws Exception {
+
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.getRoot().getAbsolutePath()), 3);
+        for (int i = 0; i < 500 && tempFilePool.size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, tempFilePool.size());
+        tempFilePool.close();
+        assertEquals(0, tempFolder.getRoot().list().length);
+    }
+
+    static class ManualExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
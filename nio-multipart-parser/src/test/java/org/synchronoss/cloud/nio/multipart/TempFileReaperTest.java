@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link TempFileReaper}
+ *
+ * @author Silvano Riz.
+ */
+public class TempFileReaperTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testDelete() throws Exception {
+
+        TempFileReaper tempFileReaper = new TempFileReaper(10, 2);
+        File[] files = new File[5];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = newFile(100);
+            tempFileReaper.delete(files[i]);
+        }
+        for (File file : files) {
+            awaitDeleted(file);
+        }
+        for (int i = 0; i < 500 && tempFileReaper.getPendingFiles() != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tempFileReaper.getPendingFiles());
+        assertEquals(0, tempFileReaper.getPendingBytes());
+        tempFileReaper.close();
+    }
+
+    @Test
+    public void testDelete_pendingAndClose() throws Exception {
+
+        // The reaper thread is not started, the files stay in the queue
+        TempFileReaper tempFileReaper = new TempFileReaper(2, 2, false);
+        File file1 = newFile(100);
+        File file2 = newFile(50);
+        tempFileReaper.delete(file1);
+        tempFileReaper.delete(file2);
+        assertEquals(2, tempFileReaper.getPendingFiles());
+        assertEquals(150, tempFileReaper.getPendingBytes());
+        assertTrue(file1.exists());
+
+        // Queue full, deleted synchronously
+        File file3 = newFile(10);
+        tempFileReaper.delete(file3);
+        assertFalse(file3.exists());
+        assertEquals(2, tempFileReaper.getPendingFiles());
+        assertEquals(150, tempFileReaper.getPendingBytes());
+
+        tempFileReaper.close();
+        assertEquals(0, tempFileReaper.getPendingFiles());
+        assertEquals(0, tempFileReaper.getPendingBytes());
+        assertEquals(0, tempFolder.getRoot().list().length);
+
+        // Closed, deleted synchronously
+        File file = newFile(10);
+        tempFileReaper.delete(file);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+
+        TempFileReaper tempFileReaper = new TempFileReaper();
+        File folder = tempFolder.newFolder();
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(new TempFileManager(folder.getAbsolutePath()), 10, null, tempFileReaper);
+
+        // Direct to file, deleted on dispose
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("20"));
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(headers, 1);
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
+        streamStorage.write(new byte[20]);
+        streamStorage.close();
+        assertEquals(1, folder.list().length);
+        assertTrue(streamStorage.dispose());
+
+        // Deferred, deleted when the input stream is closed
+        streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 2);
+        streamStorage.write("More than ten bytes".getBytes());
+        streamStorage.close();
+        InputStream inputStream = streamStorage.getInputStream();
+        assertEquals("More than ten bytes", IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+
+        for (int i = 0; i < 500 && folder.list().length != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, folder.list().length);
+        tempFileReaper.close();
+    }
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new TempFileReaper(0, 1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
+    File newFile(final int size) throws Exception {
+        File file = tempFolder.newFile();
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(new byte[size]);
+        fileOutputStream.close();
+        return file;
+    }
+
+    static void awaitDeleted(final File file) throws InterruptedException {
+        for (int i = 0; i < 500 && file.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(file.exists());
+    }
+}
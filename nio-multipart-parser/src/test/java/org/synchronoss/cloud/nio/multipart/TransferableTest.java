@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.io.ByteBufferPool;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for the {@link Transferable} part body {@code StreamStorage}s.
+ *
+ * @author Silvano Riz.
+ */
+public class TransferableTest {
+
+    static final String DATA = "The content of the part body";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testTracked_inMemory() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 100);
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        assertTransferable(streamStorage);
+        assertTrue(((TrackedFileStreamStorage) streamStorage).isInMemory());
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testTracked_spilled() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 5);
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        assertTransferable(streamStorage);
+        assertFalse(((TrackedFileStreamStorage) streamStorage).isInMemory());
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testChannelFile() throws Exception {
+        DefaultPartBodyStreamStorageFactory factory = new DefaultPartBodyStreamStorageFactory(tempFolder.newFolder().getAbsolutePath(), 5);
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("content-length", Collections.singletonList("28"));
+        StreamStorage streamStorage = factory.newStreamStorageForPartBody(headers, 1);
+        assertTrue(streamStorage instanceof ChannelFileStreamStorage);
+        assertTransferable(streamStorage);
+        assertTrue(streamStorage.dispose());
+    }
+
+    @Test
+    public void testPooledFile() throws Exception {
+        TempFilePoolTest.ManualExecutor refiller = new TempFilePoolTest.ManualExecutor();
+        TempFilePool tempFilePool = new TempFilePool(new TempFileManager(tempFolder.newFolder().getAbsolutePath()), 1, refiller);
+        refiller.runAll();
+        StreamStorage streamStorage = new PooledFileStreamStorage(tempFilePool, tempFilePool.acquire());
+        assertTransferable(streamStorage);
+        assertTrue(streamStorage.dispose());
+        assertNotNull(transferError(streamStorage));
+        tempFilePool.close();
+    }
+
+    @Test
+    public void testPooledDirect() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        StreamStorage streamStorage = new PooledDirectStreamStorage(tempFolder.newFile(), 100, pool);
+        assertTransferable(streamStorage);
+        assertTrue(((PooledDirectStreamStorage) streamStorage).isInMemory());
+        streamStorage.dispose();
+        assertNotNull(transferError(streamStorage));
+
+        streamStorage = new PooledDirectStreamStorage(tempFolder.newFile(), 8, pool);
+        assertTransferable(streamStorage);
+        assertFalse(((PooledDirectStreamStorage) streamStorage).isInMemory());
+        streamStorage.dispose();
+    }
+
+    @Test
+    public void testRawPart() throws Exception {
+        RawCapture rawCapture = new RawCapture(tempFolder.newFile());
+        rawCapture.append(ByteBuffer.wrap(("headers\r\n\r\n" + DATA + "\r\n--boundary").getBytes("UTF-8")));
+        StreamStorage streamStorage = new RawPartStreamStorage(rawCapture, 0, 11);
+        assertTransferable(streamStorage);
+        assertEquals(DATA, read(((Transferable) streamStorage).getReadableChannel()));
+        streamStorage.dispose();
+        rawCapture.close();
+    }
+
+    void assertTransferable(final StreamStorage streamStorage) throws Exception {
+        assertTrue(streamStorage instanceof Transferable);
+        final Transferable transferable = (Transferable) streamStorage;
+        streamStorage.write(DATA.getBytes("UTF-8"));
+        streamStorage.flush();
+
+        // Not closed yet
+        assertNotNull(transferError(streamStorage));
+
+        streamStorage.close();
+        final File target = tempFolder.newFile();
+        final FileOutputStream fileOutputStream = new FileOutputStream(target);
+        try {
+            assertEquals(DATA.length(), transferable.transferTo(fileOutputStream.getChannel()));
+        } finally {
+            fileOutputStream.close();
+        }
+        assertEquals(DATA, FileUtils.readFileToString(target, "UTF-8"));
+
+        // The data can be transferred again and read via the channel
+        assertEquals(DATA, read(transferable.getReadableChannel()));
+        final FileChannel fileChannel = new FileOutputStream(tempFolder.newFile()).getChannel();
+        try {
+            assertEquals(DATA.length(), transferable.transferTo(fileChannel));
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    static Exception transferError(final StreamStorage streamStorage) {
+        Exception expected = null;
+        try {
+            ((Transferable) streamStorage).transferTo(Channels.newChannel(new ByteArrayOutputStream()));
+        } catch (Exception e) {
+            expected = e;
+        }
+        return expected;
+    }
+
+    static String read(final ReadableByteChannel channel) throws Exception {
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return new String(buffer.array(), 0, buffer.limit(), "UTF-8");
+        } finally {
+            channel.close();
+        }
+    }
+}
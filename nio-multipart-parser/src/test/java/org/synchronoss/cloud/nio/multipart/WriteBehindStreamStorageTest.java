@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.synchronoss.cloud.nio.multipart.util.IOUtils;
+import org.synchronoss.cloud.nio.stream.storage.StreamStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link WriteBehindStreamStorage}
+ *
+ * @author Silvano Riz.
+ */
+public class WriteBehindStreamStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    final SpillWriter spillWriter = new SpillWriter("test-spill-writer");
+
+    @After
+    public void closeSpillWriter() {
+        spillWriter.close();
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        WriteBehindStreamStorage storage = new WriteBehindStreamStorage(file, 10, 4, 1, spillWriter);
+        storage.write('A');
+        storage.write("BCDEF".getBytes());
+        storage.write("xGHIJx".getBytes(), 1, 4);
+        storage.flush();
+        storage.close();
+
+        assertTrue(storage.isInMemory());
+        assertFalse(file.exists());
+        assertEquals("ABCDEFGHIJ", IOUtils.inputStreamAsString(storage.getInputStream(), "UTF-8"));
+        assertTrue(storage.dispose());
+        assertFalse(storage.dispose());
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        WriteBehindStreamStorage storage = new WriteBehindStreamStorage(file, 10, 4, 1, spillWriter);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String chunk = "chunk-" + i + ";";
+            expected.append(chunk);
+            storage.write(chunk.getBytes());
+        }
+        assertFalse(storage.isInMemory());
+        storage.close();
+
+        // The data is in the file when close returns
+        assertEquals(expected.length(), file.length());
+        InputStream inputStream = storage.getInputStream();
+        assertEquals(expected.toString(), IOUtils.inputStreamAsString(inputStream, "UTF-8"));
+        inputStream.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+
+        File file = new File(tempFolder.getRoot(), "test.tmp");
+        WriteBehindStreamStorage storage = new WriteBehindStreamStorage(file, 0, 4, 2, spillWriter);
+        storage.write("ABCDEFGHIJ".getBytes());
+        assertTrue(storage.dispose());
+        assertFalse(file.exists());
+
+        Exception expected = null;
+        try {
+            storage.getInputStream();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testWriteError() throws Exception {
+
+        File file = new File(new File(tempFolder.getRoot(), "missing"), "test.tmp");
+        WriteBehindStreamStorage storage = new WriteBehindStreamStorage(file, 0, 4, 2, spillWriter);
+        Exception expected = null;
+        try {
+            // The error of a background write is reported by the next write or by the close
+            storage.write("ABCDEFGHIJ".getBytes());
+            storage.close();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IOException);
+        storage.dispose();
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+
+        File folder1 = tempFolder.newFolder();
+        File folder2 = tempFolder.newFolder();
+        WriteBehindPartBodyStreamStorageFactory factory = new WriteBehindPartBodyStreamStorageFactory(new TempFileManager(2, folder1.getAbsolutePath(), folder2.getAbsolutePath()), 100);
+        assertEquals(2, factory.spillWriters.length);
+
+        StreamStorage streamStorage1 = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 1);
+        StreamStorage streamStorage2 = factory.newStreamStorageForPartBody(new HashMap<String, List<String>>(), 2);
+        assertTrue(streamStorage1 instanceof WriteBehindStreamStorage);
+        assertSame(factory.spillWriters[0], ((WriteBehindStreamStorage) streamStorage1).spillWriter);
+        assertSame(factory.spillWriters[1], ((WriteBehindStreamStorage) streamStorage2).spillWriter);
+        streamStorage1.dispose();
+        streamStorage2.dispose();
+        factory.close();
+    }
+}
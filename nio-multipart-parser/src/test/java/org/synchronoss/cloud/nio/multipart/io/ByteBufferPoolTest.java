@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link ByteBufferPool}
+ *
+ * @author Silvano Riz.
+ */
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        ByteBufferPool pool = new ByteBufferPool(16, 1);
+
+        ByteBuffer slab1 = pool.acquire();
+        assertTrue(slab1.isDirect());
+        assertEquals(16, slab1.capacity());
+        ByteBuffer slab2 = pool.acquire();
+        assertNotSame(slab1, slab2);
+        assertEquals(0, pool.getPooledSlabs());
+
+        slab1.put((byte) 1);
+        pool.release(slab1);
+        pool.release(slab2);
+        assertEquals(1, pool.getPooledSlabs());
+
+        ByteBuffer slab3 = pool.acquire();
+        assertSame(slab1, slab3);
+        assertEquals(0, slab3.position());
+        assertEquals(16, slab3.remaining());
+        assertEquals(0, pool.getPooledSlabs());
+    }
+
+    @Test
+    public void testRelease_foreignBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(16, 1);
+        Exception expected = null;
+        try {
+            pool.release(ByteBuffer.allocate(16));
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new ByteBufferPool(0, 1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io;
+
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link CompressionPool}
+ *
+ * @author Silvano Riz.
+ */
+public class CompressionPoolTest {
+
+    @Test
+    public void testConstructor_error() {
+        Exception expected = null;
+        try {
+            new CompressionPool(10, 1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            new CompressionPool(1, -1);
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+    }
+
+    @Test
+    public void testDeflaters() {
+        CompressionPool compressionPool = new CompressionPool(Deflater.BEST_SPEED, 1);
+        Deflater deflater1 = compressionPool.acquireDeflater();
+        Deflater deflater2 = compressionPool.acquireDeflater();
+        assertNotSame(deflater1, deflater2);
+
+        deflater1.setInput(new byte[]{1, 2, 3});
+        deflater1.finish();
+        compressionPool.releaseDeflater(deflater1);
+        compressionPool.releaseDeflater(deflater2);
+        assertEquals(1, compressionPool.getPooledDeflaters());
+
+        // Reused and reset
+        Deflater deflater = compressionPool.acquireDeflater();
+        assertSame(deflater1, deflater);
+        assertFalse(deflater.finished());
+        assertTrue(deflater.needsInput());
+        assertEquals(0, compressionPool.getPooledDeflaters());
+    }
+
+    @Test
+    public void testInflaters() {
+        CompressionPool compressionPool = new CompressionPool(Deflater.BEST_SPEED, 1);
+        Inflater inflater1 = compressionPool.acquireInflater();
+        Inflater inflater2 = compressionPool.acquireInflater();
+        assertNotSame(inflater1, inflater2);
+
+        compressionPool.releaseInflater(inflater1);
+        compressionPool.releaseInflater(inflater2);
+        assertEquals(1, compressionPool.getPooledInflaters());
+        assertSame(inflater1, compressionPool.acquireInflater());
+        assertEquals(0, compressionPool.getPooledInflaters());
+    }
+
+}
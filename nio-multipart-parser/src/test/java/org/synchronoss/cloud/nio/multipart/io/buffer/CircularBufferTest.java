@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 import static org.junit.Assert.*;
 
@@ -127,6 +128,67 @@ public class CircularBufferTest {
 
     }
 
+    @Test
+    public void testWrite_range() throws Exception {
+
+        final CircularBuffer buffer = new CircularBuffer(10);
+
+        buffer.write(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06}, 1, 4);
+        log.info("Buffer after writing 4 bytes:\n" + circularBufferToString(buffer) + "\n");
+        assertEquals(0, buffer.startValidDataIndex);
+        assertEquals(4, buffer.nextAvailablePosition);
+        assertEquals(4, buffer.availableReadLength);
+        assertEquals(6, buffer.getAvailableWriteLength());
+
+        buffer.write(new byte[]{0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12}, 0, 7);
+        log.info("Buffer after writing 11 bytes:\n" + circularBufferToString(buffer) + "\n");
+        assertEquals(1, buffer.startValidDataIndex);
+        assertEquals(1, buffer.nextAvailablePosition);
+        assertEquals(10, buffer.availableReadLength);
+        assertEquals(0, buffer.getAvailableWriteLength());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        buffer.readAll(baos);
+        assertArrayEquals(new byte[]{0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12}, baos.toByteArray());
+
+        // Bigger than the buffer, only the last 10 bytes are kept
+        buffer.write(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13}, 0, 13);
+        assertEquals(10, buffer.availableReadLength);
+        baos.reset();
+        buffer.readAll(baos);
+        assertArrayEquals(new byte[]{0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13}, baos.toByteArray());
+
+        // Zero length writes are ignored
+        buffer.write(new byte[]{0x01}, 0, 0);
+        assertTrue(buffer.isEmpty());
+
+    }
+
+    @Test
+    public void testWrite_byteBuffer() throws Exception {
+
+        final CircularBuffer buffer = new CircularBuffer(10);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(7);
+        direct.put(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07});
+        direct.flip();
+
+        buffer.write(direct, 1, 4);
+        assertEquals(4, buffer.availableReadLength);
+        assertEquals(0, direct.position());
+        assertEquals(7, direct.limit());
+
+        buffer.write(direct, 0, 7);
+        assertEquals(1, buffer.startValidDataIndex);
+        assertEquals(1, buffer.nextAvailablePosition);
+        assertEquals(10, buffer.availableReadLength);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        buffer.readAll(baos);
+        assertArrayEquals(new byte[]{0x03, 0x04, 0x05, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, baos.toByteArray());
+
+    }
+
     @Test
     public void testReadAll() throws Exception {
 
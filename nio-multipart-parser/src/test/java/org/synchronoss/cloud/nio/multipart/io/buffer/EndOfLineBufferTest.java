@@ -24,6 +24,8 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -158,6 +160,227 @@ public class EndOfLineBufferTest {
     }
 
 
+    @Test
+    public void testWrite_range() throws Exception {
+
+        ByteArrayOutputStream flush = new ByteArrayOutputStream();
+        EndOfLineBuffer endOfLineBuffer = new EndOfLineBuffer(10, new byte[]{0x0D, 0x0A}, flush);
+
+        byte[] data = new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x0D, 0x0A, 0x08, 0x09, 0x10};
+        int writtenBytes = endOfLineBuffer.write(data, 0, data.length);
+        assertEquals(9, writtenBytes);
+        assertTrue(endOfLineBuffer.isEndOfLine());
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, flush.toByteArray());
+
+        Exception expected = null;
+        try{
+            endOfLineBuffer.write(data, 9, 3);
+        }catch (Exception e){
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        flush.reset();
+        endOfLineBuffer.recycle(new byte[]{0x0D, 0x0A}, flush);
+
+        // End of line sequence split across two writes
+        assertEquals(8, endOfLineBuffer.write(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x0D}, 0, 8));
+        assertFalse(endOfLineBuffer.isEndOfLine());
+        assertEquals(1, endOfLineBuffer.endOfLineSequenceMatchingLength);
+        assertEquals(1, endOfLineBuffer.write(new byte[]{0x0A, 0x09}, 0, 2));
+        assertTrue(endOfLineBuffer.isEndOfLine());
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, flush.toByteArray());
+
+    }
+
+    @Test
+    public void testWrite_range_flush() throws Exception {
+
+        ByteArrayOutputStream flush = new ByteArrayOutputStream();
+        EndOfLineBuffer endOfLineBuffer = new EndOfLineBuffer(10, new byte[]{0x13, 0x14, 0x15}, flush);
+
+        assertEquals(9, endOfLineBuffer.write(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09}, 0, 9));
+        assertEquals(0, flush.size());
+        assertEquals(13, endOfLineBuffer.write(new byte[]{0x10, 0x11, 0x12, 0x13, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x13, 0x14}, 0, 13));
+        // The buffer filled up twice. The last two bytes are matching the end of line sequence and must not be flushed
+        assertEquals(20, flush.size());
+        assertEquals(1, endOfLineBuffer.write(new byte[]{0x15}, 0, 1));
+        assertTrue(endOfLineBuffer.isEndOfLine());
+
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07}, flush.toByteArray());
+    }
+
+    @Test
+    public void testWrite_range_sameAsSingleBytes() throws Exception {
+
+        final byte[] endOfLineSequence = "\r\n--AaB03x".getBytes("ISO-8859-1");
+        final Random random = new Random(42);
+
+        for (int run = 0; run < 200; run++) {
+
+            // Data made of an alphabet close to the end of line sequence, so that there are many partial matches
+            final byte[] alphabet = "\r\n-aAB0".getBytes("ISO-8859-1");
+            final byte[] data = new byte[random.nextInt(200) + 1];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            if (random.nextBoolean()) {
+                final int index = random.nextInt(data.length);
+                System.arraycopy(endOfLineSequence, 0, data, index, Math.min(endOfLineSequence.length, data.length - index));
+            }
+
+            final ByteArrayOutputStream expectedFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer expectedBuffer = new EndOfLineBuffer(16, endOfLineSequence, expectedFlush);
+            final int expectedWritten = writeDataToEndOfLineBuffer(expectedBuffer, data);
+
+            final ByteArrayOutputStream actualFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer actualBuffer = new EndOfLineBuffer(16, endOfLineSequence, actualFlush);
+            int actualWritten = 0;
+            while (actualWritten < data.length && !actualBuffer.isEndOfLine()) {
+                final int chunkSize = Math.min(random.nextInt(20) + 1, data.length - actualWritten);
+                actualWritten += actualBuffer.write(data, actualWritten, chunkSize);
+            }
+
+            assertEquals(expectedWritten, actualWritten);
+            assertEquals(expectedBuffer.isEndOfLine(), actualBuffer.isEndOfLine());
+            assertEquals(expectedBuffer.endOfLineSequenceMatchingLength, actualBuffer.endOfLineSequenceMatchingLength);
+
+            // Flushing happens in different moments, so the not yet flushed data must be compared as well
+            expectedBuffer.circularBuffer.readAll(expectedFlush);
+            actualBuffer.circularBuffer.readAll(actualFlush);
+            assertArrayEquals(expectedFlush.toByteArray(), actualFlush.toByteArray());
+        }
+    }
+
+    @Test
+    public void testWrite_byteBuffer_sameAsSingleBytes() throws Exception {
+
+        final byte[] endOfLineSequence = "\r\n--AaB03x".getBytes("ISO-8859-1");
+        final Random random = new Random(43);
+
+        for (int run = 0; run < 200; run++) {
+
+            final byte[] alphabet = "\r\n-aAB0".getBytes("ISO-8859-1");
+            final byte[] data = new byte[random.nextInt(200) + 1];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            if (random.nextBoolean()) {
+                final int index = random.nextInt(data.length);
+                System.arraycopy(endOfLineSequence, 0, data, index, Math.min(endOfLineSequence.length, data.length - index));
+            }
+
+            final ByteArrayOutputStream expectedFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer expectedBuffer = new EndOfLineBuffer(16, endOfLineSequence, expectedFlush);
+            final int expectedWritten = writeDataToEndOfLineBuffer(expectedBuffer, data);
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data);
+            direct.flip();
+
+            final ByteArrayOutputStream actualFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer actualBuffer = new EndOfLineBuffer(16, endOfLineSequence, actualFlush);
+            int actualWritten = 0;
+            while (actualWritten < data.length && !actualBuffer.isEndOfLine()) {
+                final int chunkSize = Math.min(random.nextInt(20) + 1, data.length - actualWritten);
+                actualWritten += actualBuffer.write(direct, actualWritten, chunkSize);
+            }
+
+            assertEquals(0, direct.position());
+            assertEquals(expectedWritten, actualWritten);
+            assertEquals(expectedBuffer.isEndOfLine(), actualBuffer.isEndOfLine());
+            assertEquals(expectedBuffer.endOfLineSequenceMatchingLength, actualBuffer.endOfLineSequenceMatchingLength);
+
+            expectedBuffer.circularBuffer.readAll(expectedFlush);
+            actualBuffer.circularBuffer.readAll(actualFlush);
+            assertArrayEquals(expectedFlush.toByteArray(), actualFlush.toByteArray());
+        }
+    }
+
+    @Test
+    public void testWrite_range_passThrough() throws Exception {
+
+        final byte[] endOfLineSequence = "\r\n--AaB03x".getBytes("ISO-8859-1");
+        final Random random = new Random(44);
+
+        for (int run = 0; run < 200; run++) {
+
+            final byte[] alphabet = "\r\n-aAB0".getBytes("ISO-8859-1");
+            final byte[] data = new byte[random.nextInt(200) + 1];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            if (random.nextBoolean()) {
+                final int index = random.nextInt(data.length);
+                System.arraycopy(endOfLineSequence, 0, data, index, Math.min(endOfLineSequence.length, data.length - index));
+            }
+
+            final ByteArrayOutputStream expectedFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer expectedBuffer = new EndOfLineBuffer(16, endOfLineSequence, expectedFlush);
+            final int expectedWritten = writeDataToEndOfLineBuffer(expectedBuffer, data);
+
+            final ByteArrayOutputStream actualFlush = new ByteArrayOutputStream();
+            final EndOfLineBuffer actualBuffer = new EndOfLineBuffer(16, endOfLineSequence, null);
+            actualBuffer.recycle(endOfLineSequence, actualFlush, true);
+            int actualWritten = 0;
+            while (actualWritten < data.length && !actualBuffer.isEndOfLine()) {
+                final int chunkSize = Math.min(random.nextInt(20) + 1, data.length - actualWritten);
+                actualWritten += actualBuffer.write(data, actualWritten, chunkSize);
+                // Only the bytes matching the end of line sequence are kept in the buffer
+                assertEquals(actualBuffer.endOfLineSequenceMatchingLength, actualBuffer.circularBuffer.getAvailableDataLength());
+            }
+
+            assertEquals(expectedWritten, actualWritten);
+            assertEquals(expectedBuffer.isEndOfLine(), actualBuffer.isEndOfLine());
+            assertEquals(expectedBuffer.endOfLineSequenceMatchingLength, actualBuffer.endOfLineSequenceMatchingLength);
+
+            expectedBuffer.circularBuffer.readAll(expectedFlush);
+            actualBuffer.circularBuffer.readAll(actualFlush);
+            assertArrayEquals(expectedFlush.toByteArray(), actualFlush.toByteArray());
+        }
+    }
+
+    @Test
+    public void testWrite_range_skip() throws Exception {
+
+        EndOfLineBuffer endOfLineBuffer = new EndOfLineBuffer(10, new byte[]{0x22, 0x23}, null);
+
+        byte[] data = new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18, 0x19, 0x20, 0x21, 0x22};
+        assertEquals(data.length, endOfLineBuffer.write(data, 0, data.length));
+        assertFalse(endOfLineBuffer.isEndOfLine());
+        assertEquals(1, endOfLineBuffer.write(new byte[]{0x23, 0x24}, 0, 2));
+        assertTrue(endOfLineBuffer.isEndOfLine());
+
+    }
+
+    @Test
+    public void testRecycle_switchSequences() throws Exception {
+
+        ByteArrayOutputStream flush = new ByteArrayOutputStream();
+        EndOfLineBuffer endOfLineBuffer = new EndOfLineBuffer(10, new byte[]{0x0D, 0x0A}, flush);
+        EndOfLineSequenceMatcher first = endOfLineBuffer.endOfLineSequenceMatcher;
+
+        endOfLineBuffer.recycle(new byte[]{0x0D, 0x0A, 0x0D, 0x0A}, flush);
+        EndOfLineSequenceMatcher second = endOfLineBuffer.endOfLineSequenceMatcher;
+        assertNotSame(first, second);
+
+        // Alternating between the same two sequences reuses the matchers
+        endOfLineBuffer.recycle(new byte[]{0x0D, 0x0A}, flush);
+        assertSame(first, endOfLineBuffer.endOfLineSequenceMatcher);
+        endOfLineBuffer.recycle(new byte[]{0x0D, 0x0A, 0x0D, 0x0A}, flush);
+        assertSame(second, endOfLineBuffer.endOfLineSequenceMatcher);
+
+        Exception expected = null;
+        try{
+            endOfLineBuffer.recycle(new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x10}, flush);
+        }catch (Exception e){
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+    }
+
 
     @Test
     public void testReset() throws Exception {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.io.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link EndOfLineSequenceMatcher}
+ *
+ * @author Silvano Riz.
+ */
+public class EndOfLineSequenceMatcherTest {
+
+    @Test
+    public void testConstruct_invalidSequence() throws Exception {
+
+        Exception expected = null;
+        try{
+            new EndOfLineSequenceMatcher(null);
+        }catch (Exception e){
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+
+        expected = null;
+        try{
+            new EndOfLineSequenceMatcher(new byte[0]);
+        }catch (Exception e){
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalArgumentException);
+
+    }
+
+    @Test
+    public void testIndexOf() throws Exception {
+
+        EndOfLineSequenceMatcher matcher = new EndOfLineSequenceMatcher(bytes("--AAA"));
+        assertEquals(5, matcher.getSequenceLength());
+
+        assertEquals(8, matcher.indexOf(bytes("xyz--AAAxyz"), 0, 11, 0));
+        assertEquals(-1, matcher.indexOf(bytes("xyz--AAAxyz"), 4, 11, 0));
+        assertEquals(-1, matcher.indexOf(bytes("xyz--AAAxyz"), 0, 7, 0));
+
+        // Repeated prefix. A byte by byte matcher without backtracking would miss it.
+        assertEquals(6, matcher.indexOf(bytes("---AAA"), 0, 6, 0));
+
+        // Sequence started in the previous range
+        assertEquals(3, matcher.indexOf(bytes("AAAxyz"), 0, 6, 2));
+        assertEquals(-1, matcher.indexOf(bytes("ABAxyz"), 0, 6, 2));
+        assertEquals(2, matcher.indexOf(bytes("AA"), 0, 2, 3));
+    }
+
+    @Test
+    public void testPartialMatchLength() throws Exception {
+
+        EndOfLineSequenceMatcher matcher = new EndOfLineSequenceMatcher(bytes("--AAA"));
+
+        assertEquals(0, matcher.partialMatchLength(bytes("xyz"), 0, 3, 0));
+        assertEquals(2, matcher.partialMatchLength(bytes("xyz--"), 0, 5, 0));
+        assertEquals(4, matcher.partialMatchLength(bytes("xyz--AA"), 0, 7, 0));
+        assertEquals(3, matcher.partialMatchLength(bytes("A"), 0, 1, 2));
+        assertEquals(2, matcher.partialMatchLength(bytes("-"), 0, 1, 1));
+        assertEquals(0, matcher.partialMatchLength(bytes("x"), 0, 1, 4));
+    }
+
+    @Test
+    public void testIndexOf_sameAsNaiveSearch() throws Exception {
+
+        final Random random = new Random(7);
+        final byte[] alphabet = bytes("\r\n-ab");
+
+        for (int run = 0; run < 500; run++) {
+
+            final byte[] sequence = new byte[random.nextInt(6) + 1];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            final byte[] data = new byte[random.nextInt(50)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+
+            final EndOfLineSequenceMatcher matcher = new EndOfLineSequenceMatcher(sequence);
+            assertEquals(naiveIndexOf(sequence, data), matcher.indexOf(data, 0, data.length, 0));
+
+            // Split the data in two ranges and carry the matching length
+            final int split = data.length == 0 ? 0 : random.nextInt(data.length);
+            final int firstIndex = matcher.indexOf(data, 0, split, 0);
+            final int actual;
+            if (firstIndex != -1) {
+                actual = firstIndex;
+            } else {
+                actual = matcher.indexOf(data, split, data.length, matcher.partialMatchLength(data, 0, split, 0));
+            }
+            assertEquals(naiveIndexOf(sequence, data), actual);
+        }
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+
+        EndOfLineSequenceMatcher matcher = new EndOfLineSequenceMatcher(bytes("--AAA"));
+
+        ByteBuffer data = ByteBuffer.allocateDirect(11);
+        data.put(bytes("xyz---AAAxy"));
+        data.flip();
+        data.position(2);
+
+        assertEquals(9, matcher.indexOf(data, 2, 11, 0));
+        assertEquals(-1, matcher.indexOf(data, 2, 8, 0));
+        assertEquals(4, matcher.partialMatchLength(data, 2, 8, 0));
+        assertEquals(9, matcher.indexOf(data, 8, 11, 4));
+        assertEquals(2, data.position());
+        assertEquals(11, data.limit());
+    }
+
+    static int naiveIndexOf(final byte[] sequence, final byte[] data) {
+        outer:
+        for (int i = 0; i + sequence.length <= data.length; i++) {
+            for (int j = 0; j < sequence.length; j++) {
+                if (data[i + j] != sequence[j]) {
+                    continue outer;
+                }
+            }
+            return i + sequence.length;
+        }
+        return -1;
+    }
+
+    static byte[] bytes(final String value) {
+        try {
+            return value.getBytes("ISO-8859-1");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Synchronoss Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.synchronoss.cloud.nio.multipart.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+/**
+ * <p> Unit tests for {@link HeadersTokenizer}
+ */
+public class HeadersTokenizerTest {
+
+    private static final String CHARACTER_SET = "US-ASCII";
+
+    @Test
+    public void testTokenize() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, -1);
+        headersTokenizer.write("headerNameA: headerValueA\r\nheaderNameB: headerValueB\r\n\r\nmore stuff here".getBytes(CHARACTER_SET));
+        Map<String, List<String>> headers = headersTokenizer.finish();
+        assertEquals(2, headers.size());
+        assertEquals(singletonList("headerValueA"), headers.get("headernamea"));
+        assertEquals(singletonList("headerValueB"), headers.get("headernameb"));
+    }
+
+    @Test
+    public void testTokenize_folded() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, -1);
+        headersTokenizer.write("headerNameA: headerValueA\r\nheaderNameB: headerValueB\r\n   part of b".getBytes(CHARACTER_SET));
+        Map<String, List<String>> headers = headersTokenizer.finish();
+        assertEquals(2, headers.size());
+        assertEquals(singletonList("headerValueA"), headers.get("headernamea"));
+        assertEquals(singletonList("headerValueB part of b"), headers.get("headernameb"));
+
+        headersTokenizer.reset();
+        headersTokenizer.write("headerNameA: headerValueA\r\nheaderNameB: headerValueB\r\n\t\t\tpart of b".getBytes(CHARACTER_SET));
+        headers = headersTokenizer.finish();
+        assertEquals(2, headers.size());
+        assertEquals(singletonList("headerValueA"), headers.get("headernamea"));
+        assertEquals(singletonList("headerValueB part of b"), headers.get("headernameb"));
+    }
+
+    @Test
+    public void testTokenize_malformed() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, -1);
+        headersTokenizer.write("headerNameA: headerValueA\r\nheaderNameB headerValueB\r\n\r\nmore stuff here".getBytes(CHARACTER_SET));
+        Exception expected = null;
+        try {
+            headersTokenizer.finish();
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        // After a reset the tokenizer can be used again
+        headersTokenizer.reset();
+        headersTokenizer.write("headerNameA: headerValueA".getBytes(CHARACTER_SET));
+        assertEquals(singletonList("headerValueA"), headersTokenizer.finish().get("headernamea"));
+    }
+
+    @Test
+    public void testTokenize_lenientTerminator() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, -1);
+        headersTokenizer.write("headerNameA: headerValueA\nheaderNameB: headerValueB\r\n\r\r\nmore stuff here".getBytes(CHARACTER_SET));
+        Map<String, List<String>> headers = headersTokenizer.finish();
+        assertEquals(2, headers.size());
+        assertEquals(singletonList("headerValueA"), headers.get("headernamea"));
+        assertEquals(singletonList("headerValueB"), headers.get("headernameb"));
+    }
+
+    @Test
+    public void testTokenize_wellKnownHeaderNames() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, -1);
+        headersTokenizer.write("Content-Disposition: form-data; name=\"a\"\r\nCONTENT-TYPE: text/plain\r\nContent-Type: text/html".getBytes(CHARACTER_SET));
+        Map<String, List<String>> headers = headersTokenizer.finish();
+        assertEquals(2, headers.size());
+        assertEquals(singletonList("form-data; name=\"a\""), headers.get("content-disposition"));
+        assertEquals(Arrays.asList("text/plain", "text/html"), headers.get("content-type"));
+        for (String name : headers.keySet()) {
+            assertSame(name, name.intern());
+        }
+    }
+
+    @Test
+    public void testTokenize_sameAsHeadersParser() throws Exception {
+        final String headersSection = "Content-Disposition: form-data; name=\"file\"; filename=\"fè.txt\"\r\n" +
+                "X-Custom :  some value \r\n" +
+                "\t folded\r\n" +
+                "x-custom: another\r\n" +
+                "Content-Length:5";
+        final String charset = "UTF-8";
+        final byte[] data = headersSection.getBytes(charset);
+
+        final Map<String, List<String>> expected = HeadersParser.parseHeaders(new ByteArrayInputStream(data), charset);
+
+        // Any chunking must give the same result
+        for (int chunkSize = 1; chunkSize <= data.length; chunkSize++) {
+            HeadersTokenizer headersTokenizer = new HeadersTokenizer(charset, -1);
+            for (int i = 0; i < data.length; i += chunkSize) {
+                if (chunkSize == 1) {
+                    headersTokenizer.write(data[i]);
+                } else {
+                    headersTokenizer.write(data, i, Math.min(chunkSize, data.length - i));
+                }
+            }
+            assertEquals(expected, headersTokenizer.finish());
+        }
+    }
+
+    @Test
+    public void testTokenize_maxSize() throws Exception {
+        HeadersTokenizer headersTokenizer = new HeadersTokenizer(CHARACTER_SET, 10);
+        headersTokenizer.write("a: 1234".getBytes(CHARACTER_SET));
+        headersTokenizer.write('5');
+        Exception expected = null;
+        try {
+            headersTokenizer.write("\r\nb: c".getBytes(CHARACTER_SET));
+        } catch (Exception e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+        assertTrue(expected instanceof IllegalStateException);
+
+        headersTokenizer.reset();
+        headersTokenizer.write("a: 1234567".getBytes(CHARACTER_SET));
+        assertEquals(singletonList("1234567"), headersTokenizer.finish().get("a"));
+    }
+
+    @Test
+    public void testForName() throws Exception {
+        assertEquals(Charset.forName("UTF-8"), HeadersTokenizer.forName("UTF-8"));
+        assertSame(HeadersTokenizer.forName("UTF-8"), HeadersTokenizer.forName("UTF-8"));
+        assertEquals(Charset.defaultCharset(), HeadersTokenizer.forName(null));
+        assertEquals(Charset.defaultCharset(), HeadersTokenizer.forName(""));
+        assertEquals(Charset.defaultCharset(), HeadersTokenizer.forName("not-a-charset"));
+    }
+}